@@ -0,0 +1,141 @@
+package dict;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/**
+ * Words and definitions for the benchmarks, generated from a fixed seed so runs are comparable.
+ * <p>
+ * Words are unique lowercase strings, ending with their index in base 36. Missing words are drawn the same way
+ * but have a '-' before the index, which no word has, so they are never in the dictionary and fall between
+ * the existing words throughout the key range. Neither contains ':' or line breaks, so every implementation
+ * (including the text format) can store them.
+ */
+final class BenchmarkData {
+    private static final long SEED = 19;
+
+    /**
+     * Word and definition lengths.
+     */
+    enum Lengths {
+        /** Words of 4-12 characters, definitions of 8-32. */
+        SHORT(4, 12, 8, 32),
+        /** Words of 8-24 characters, definitions of 64-256. */
+        MEDIUM(8, 24, 64, 256),
+        /** Words of 16-64 characters, definitions of 512-2048. */
+        LONG(16, 64, 512, 2048),
+        /** Words of 4-32 characters; most definitions are short, a few are up to 4096 (heavy tail). */
+        SKEWED(4, 32, 16, 4096) {
+            @Override
+            int valueLength(SplittableRandom rnd) {
+                // Pareto-like: half are under ~40 characters
+                double length = minValue / Math.pow(1 - rnd.nextDouble(), 1.3);
+                return (int) Math.min(length, maxValue);
+            }
+        };
+
+        final int minKey;
+        final int maxKey;
+        final int minValue;
+        final int maxValue;
+
+        Lengths(int minKey, int maxKey, int minValue, int maxValue) {
+            this.minKey = minKey;
+            this.maxKey = maxKey;
+            this.minValue = minValue;
+            this.maxValue = maxValue;
+        }
+
+        int keyLength(SplittableRandom rnd) {
+            return rnd.nextInt(minKey, maxKey + 1);
+        }
+
+        int valueLength(SplittableRandom rnd) {
+            return rnd.nextInt(minValue, maxValue + 1);
+        }
+    }
+
+    final String[] words;
+    final String[] definitions;
+    final String[] missing;
+
+    BenchmarkData(int size, Lengths lengths) {
+        SplittableRandom rnd = new SplittableRandom(SEED);
+        words = new String[size];
+        definitions = new String[size];
+        missing = new String[size];
+        for (int i = 0; i < size; i++) {
+            words[i] = word(rnd, lengths.keyLength(rnd), Integer.toString(i, 36));
+            definitions[i] = definition(rnd, lengths.valueLength(rnd));
+            missing[i] = word(rnd, lengths.keyLength(rnd), "-" + Integer.toString(i, 36));
+        }
+    }
+
+    /**
+     * Create a dictionary file with all the words.
+     */
+    void fill(DictionaryImpl impl, File dictFile) throws IOException {
+        PersistentDictionary dict = impl.create(dictFile);
+        dict.open();
+        for (int i = 0; i < words.length; i++) {
+            dict.put(words[i], definitions[i]);
+        }
+        dict.close();
+    }
+
+    /**
+     * @return a step, coprime with the size, that visits the word indexes in a scattered order and every index
+     * once before repeating
+     */
+    static int stride(int size) {
+        int stride = (int) (size * 0.618) | 1;
+        while (gcd(stride, size) != 1) {
+            stride += 2;
+        }
+        return stride;
+    }
+
+    /**
+     * Delete a directory with the dictionary files in it.
+     */
+    static void delete(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * A random lowercase word that ends with a unique suffix, so words are unique.
+     */
+    private static String word(SplittableRandom rnd, int length, String suffix) {
+        StringBuilder sb = new StringBuilder(Math.max(length, suffix.length() + 1));
+        sb.append((char) ('a' + rnd.nextInt(26)));
+        while (sb.length() + suffix.length() < length) {
+            sb.append((char) ('a' + rnd.nextInt(26)));
+        }
+        return sb.append(suffix).toString();
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    private static String definition(SplittableRandom rnd, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            // Roughly one word in six characters
+            chars[i] = rnd.nextInt(6) == 0 ? ' ' : (char) ('a' + rnd.nextInt(26));
+        }
+        return new String(chars);
+    }
+}
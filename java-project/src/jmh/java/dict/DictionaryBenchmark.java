@@ -0,0 +1,144 @@
+package dict;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups and changes on an open dictionary, in average time per operation.
+ * <p>
+ * Every implementation, size and length distribution is run by default; the largest sizes need a large
+ * heap (<code>-jvmArgs -Xmx...</code>) and take a long time to set up, so narrow them with <code>-p</code>:
+ * <pre>
+ * gradle jmh -Pjmh.args='DictionaryBenchmark -p impl=LSM,BTREE -p size=1000,1000000 -p lengths=SHORT'
+ * </pre>
+ * The words are visited in a fixed pseudo-random order, so the operations don't benefit from locality
+ * that real lookups wouldn't have.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DictionaryBenchmark {
+    @Param
+    public DictionaryImpl impl;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param
+    public BenchmarkData.Lengths lengths;
+
+    private BenchmarkData data;
+    private Path dir;
+    private PersistentDictionary dict;
+    private int cursor;
+    private int stride;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        data = new BenchmarkData(size, lengths);
+        dir = Files.createTempDirectory("dict-bench");
+        File dictFile = dir.resolve("dict").toFile();
+        data.fill(impl, dictFile);
+        dict = impl.create(dictFile);
+        dict.open();
+        stride = BenchmarkData.stride(size);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        dict.close();
+        BenchmarkData.delete(dir);
+    }
+
+    @Benchmark
+    public String getHit() {
+        return dict.get(data.words[next()]);
+    }
+
+    @Benchmark
+    public String getMiss() {
+        return dict.get(data.missing[next()]);
+    }
+
+    /**
+     * Replace the definition of an existing word, so the size stays the same.
+     */
+    @Benchmark
+    public String put() {
+        int i = next();
+        return dict.put(data.words[i], data.definitions[(i + 1) % size]);
+    }
+
+    /**
+     * Remove a batch of {@link RemovalBatch#SIZE} words; they are put back between invocations, outside of
+     * the measurement, so the score is the cost of a removal alone.
+     *
+     * @return the number of words removed
+     */
+    @Benchmark
+    @OperationsPerInvocation(RemovalBatch.SIZE)
+    public int remove(RemovalBatch batch) {
+        int removed = 0;
+        for (int i : batch.indexes) {
+            if (dict.remove(data.words[i]) != null) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * The words the next {@link #remove(RemovalBatch)} invocation removes. Batches keep the per-invocation
+     * setup (and its timestamps) small next to the measured removals.
+     */
+    @State(Scope.Thread)
+    public static class RemovalBatch {
+        static final int SIZE = 100; // no more than the smallest size
+
+        final int[] indexes = new int[SIZE];
+        private boolean removed; // if true, the words of indexes were removed
+
+        @Setup(Level.Invocation)
+        public void prepare(DictionaryBenchmark benchmark) {
+            // Put back the previous batch, then pick the next one
+            if (removed) {
+                for (int i : indexes) {
+                    benchmark.dict.put(benchmark.data.words[i], benchmark.data.definitions[i]);
+                }
+            }
+            for (int k = 0; k < SIZE; k++) {
+                indexes[k] = benchmark.next();
+            }
+            removed = true;
+        }
+    }
+
+    private int next() {
+        cursor += stride;
+        if (cursor >= size) {
+            cursor -= size;
+        }
+        return cursor;
+    }
+}
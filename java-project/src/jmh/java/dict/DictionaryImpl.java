@@ -0,0 +1,115 @@
+package dict;
+
+import java.io.File;
+
+/**
+ * The {@link PersistentDictionary} implementations the benchmarks run against, each in its default
+ * configuration, except for the B-tree page size: the longest benchmark definitions don't fit in a quarter
+ * of the default page.
+ */
+public enum DictionaryImpl {
+    IN_MEMORY {
+        @Override
+        PersistentDictionary create(File dictFile) {
+            return new InMemoryDictionary(dictFile);
+        }
+    },
+    IN_MEMORY_BINARY {
+        @Override
+        PersistentDictionary create(File dictFile) {
+            return new InMemoryDictionary(dictFile, DictionaryFormat.BINARY);
+        }
+    },
+    CONCURRENT {
+        @Override
+        PersistentDictionary create(File dictFile) {
+            return new ConcurrentDictionary(dictFile);
+        }
+    },
+    COMPACT {
+        @Override
+        PersistentDictionary create(File dictFile) {
+            return new CompactDictionary(dictFile);
+        }
+    },
+    DEDUP {
+        @Override
+        PersistentDictionary create(File dictFile) {
+            return new DedupDictionary(dictFile);
+        }
+    },
+    OFF_HEAP {
+        @Override
+        PersistentDictionary create(File dictFile) {
+            return new OffHeapDictionary(dictFile);
+        }
+    },
+    VERSIONED {
+        @Override
+        PersistentDictionary create(File dictFile) {
+            return new VersionedDictionary(dictFile);
+        }
+    },
+    TRIE {
+        @Override
+        PersistentDictionary create(File dictFile) {
+            return new TrieDictionary(dictFile);
+        }
+    },
+    SEGMENTED {
+        @Override
+        PersistentDictionary create(File dictFile) {
+            return new SegmentedDictionary(dictFile);
+        }
+    },
+    SHARDED {
+        @Override
+        PersistentDictionary create(File dictFile) {
+            return new ShardedDictionary(dictFile);
+        }
+    },
+    ASYNC {
+        @Override
+        PersistentDictionary create(File dictFile) {
+            return new AsyncDictionary(dictFile);
+        }
+    },
+    LOG_STRUCTURED {
+        @Override
+        PersistentDictionary create(File dictFile) {
+            return new LogStructuredDictionary(dictFile);
+        }
+    },
+    LSM {
+        @Override
+        PersistentDictionary create(File dictFile) {
+            return new LsmDictionary(dictFile);
+        }
+    },
+    BTREE {
+        @Override
+        PersistentDictionary create(File dictFile) {
+            return new BTreeDictionary(dictFile, BTREE_PAGE_SIZE, BTreeDictionary.DEFAULT_POOL_PAGES);
+        }
+    },
+    CACHING_BTREE {
+        @Override
+        PersistentDictionary create(File dictFile) {
+            return new CachingDictionary(
+                    new BTreeDictionary(dictFile, BTREE_PAGE_SIZE, BTreeDictionary.DEFAULT_POOL_PAGES), 10_000);
+        }
+    },
+    MAPPED {
+        @Override
+        PersistentDictionary create(File dictFile) {
+            return new MappedDictionary(dictFile);
+        }
+    };
+
+    private static final int BTREE_PAGE_SIZE = 32768;
+
+    /**
+     * @return a new (not yet opened) dictionary stored in the given file
+     */
+    abstract PersistentDictionary create(File dictFile);
+}
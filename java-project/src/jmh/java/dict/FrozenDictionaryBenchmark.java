@@ -0,0 +1,95 @@
+package dict;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups in a {@link FrozenDictionary}, against the same words in an {@link InMemoryDictionary}
+ * (a TreeMap).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FrozenDictionaryBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param
+    public BenchmarkData.Lengths lengths;
+
+    private BenchmarkData data;
+    private Path dir;
+    private InMemoryDictionary inMemory;
+    private FrozenDictionary frozen;
+    private int cursor;
+    private int stride;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        data = new BenchmarkData(size, lengths);
+        dir = Files.createTempDirectory("dict-bench");
+        File source = dir.resolve("dict").toFile();
+        File frozenFile = dir.resolve("dict.frozen").toFile();
+        data.fill(DictionaryImpl.IN_MEMORY, source);
+        FrozenDictionaryBuilder.build(source, frozenFile);
+        inMemory = new InMemoryDictionary(source);
+        inMemory.open();
+        frozen = new FrozenDictionary(frozenFile);
+        frozen.open();
+        stride = BenchmarkData.stride(size);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        frozen.close();
+        BenchmarkData.delete(dir);
+    }
+
+    @Benchmark
+    public String frozenGetHit() {
+        return frozen.get(data.words[next()]);
+    }
+
+    @Benchmark
+    public String frozenGetMiss() {
+        return frozen.get(data.missing[next()]);
+    }
+
+    @Benchmark
+    public String treeMapGetHit() {
+        return inMemory.get(data.words[next()]);
+    }
+
+    @Benchmark
+    public String treeMapGetMiss() {
+        return inMemory.get(data.missing[next()]);
+    }
+
+    private int next() {
+        cursor += stride;
+        if (cursor >= size) {
+            cursor -= size;
+        }
+        return cursor;
+    }
+}
@@ -0,0 +1,97 @@
+package dict;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The write path of {@link LsmDictionary}, in average time per change of an existing word:
+ * {@link LsmDictionary#put}, which looks up the previous definition (usually in a run), against
+ * {@link LsmDictionary#write}, which doesn't, and against {@link InMemoryDictionary#put}.
+ * <p>
+ * See {@link DictionaryBenchmark} for narrowing the parameters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LsmWriteBenchmark {
+    @Param({"100000", "1000000"})
+    public int size;
+
+    @Param
+    public BenchmarkData.Lengths lengths;
+
+    private BenchmarkData data;
+    private Path dir;
+    private LsmDictionary lsm;
+    private PersistentDictionary inMemory;
+    private int cursor;
+    private int stride;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        data = new BenchmarkData(size, lengths);
+        dir = Files.createTempDirectory("dict-bench");
+        File lsmFile = dir.resolve("lsm").toFile();
+        File inMemoryFile = dir.resolve("in-memory").toFile();
+        data.fill(DictionaryImpl.LSM, lsmFile);
+        data.fill(DictionaryImpl.IN_MEMORY, inMemoryFile);
+        lsm = new LsmDictionary(lsmFile);
+        lsm.open();
+        inMemory = DictionaryImpl.IN_MEMORY.create(inMemoryFile);
+        inMemory.open();
+        stride = BenchmarkData.stride(size);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        lsm.close();
+        inMemory.close();
+        BenchmarkData.delete(dir);
+    }
+
+    @Benchmark
+    public String lsmPut() {
+        int i = next();
+        return lsm.put(data.words[i], data.definitions[(i + 1) % size]);
+    }
+
+    @Benchmark
+    public void lsmWrite() {
+        int i = next();
+        lsm.write(data.words[i], data.definitions[(i + 1) % size]);
+    }
+
+    @Benchmark
+    public String inMemoryPut() {
+        int i = next();
+        return inMemory.put(data.words[i], data.definitions[(i + 1) % size]);
+    }
+
+    private int next() {
+        cursor += stride;
+        if (cursor >= size) {
+            cursor -= size;
+        }
+        return cursor;
+    }
+}
@@ -0,0 +1,110 @@
+package dict;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PersistentDictionary#open()} and {@link PersistentDictionary#close()} of an existing dictionary,
+ * each timed once per invocation. close() is timed after changing one word, since most implementations
+ * don't write anything for a session without changes.
+ * <p>
+ * See {@link DictionaryBenchmark} for narrowing the parameters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class OpenCloseBenchmark {
+    @Param
+    public DictionaryImpl impl;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param
+    public BenchmarkData.Lengths lengths;
+
+    private BenchmarkData data;
+    private Path dir;
+    private File dictFile;
+    private int changes;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        data = new BenchmarkData(size, lengths);
+        dir = Files.createTempDirectory("dict-bench");
+        dictFile = dir.resolve("dict").toFile();
+        data.fill(impl, dictFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkData.delete(dir);
+    }
+
+    /**
+     * A new dictionary object for every invocation, so nothing is reused from the last one.
+     */
+    @State(Scope.Thread)
+    public static class Closed {
+        PersistentDictionary dict;
+
+        @Setup(Level.Invocation)
+        public void setup(OpenCloseBenchmark bench) {
+            dict = bench.impl.create(bench.dictFile);
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() throws IOException {
+            dict.close();
+        }
+    }
+
+    /**
+     * An open dictionary with one changed word.
+     */
+    @State(Scope.Thread)
+    public static class Changed {
+        PersistentDictionary dict;
+
+        @Setup(Level.Invocation)
+        public void setup(OpenCloseBenchmark bench) throws IOException {
+            dict = bench.impl.create(bench.dictFile);
+            dict.open();
+            // Alternate between two definitions of the first word, so each close has a change to write
+            String definition = bench.data.definitions[0];
+            dict.put(bench.data.words[0], bench.changes++ % 2 == 0 ? definition + " " : definition);
+        }
+    }
+
+    @Benchmark
+    public PersistentDictionary open(Closed closed) throws IOException {
+        closed.dict.open();
+        return closed.dict;
+    }
+
+    @Benchmark
+    public PersistentDictionary close(Changed changed) throws IOException {
+        changed.dict.close();
+        return changed.dict;
+    }
+}
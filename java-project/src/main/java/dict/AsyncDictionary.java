@@ -0,0 +1,335 @@
+package dict;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implements a persistent dictionary that is held in memory and written to its file in the background,
+ * so writers don't wait for the file to be rewritten.
+ * <p>
+ * {@link #flushAsync()} freezes the changes made so far and persists them, merged with the last persisted
+ * snapshot, on a background thread; new changes go on while it runs. Calls made while a flush is running are
+ * grouped into a single following flush (group commit). With a flush interval, changes are also flushed
+ * periodically. {@link #close()} flushes and waits; {@link #closeAsync()} doesn't wait.
+ * <p>
+ * The dictionary is made of three sorted maps: the last persisted snapshot, the frozen changes being
+ * persisted, and the current changes (a removed word maps to null in both). The snapshot and the frozen
+ * changes are never modified; a flush builds a new snapshot and swaps it in when the file is written.
+ * The file is written like {@link InMemoryDictionary}'s, to a temporary file that then replaces it.
+ * <p>
+ * All methods are thread-safe.
+ */
+public class AsyncDictionary implements PersistentDictionary {
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "dictionary-flush-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final ExecutorService FLUSHER = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "dictionary-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final File dictFile;
+    private final DictionaryFormat format;
+    private final long flushIntervalMillis;
+
+    private TreeMap<String, String> snapshot = new TreeMap<>(); // as persisted; never modified
+    private TreeMap<String, String> frozen; // the changes being persisted, or null; never modified
+    private boolean frozenCleared; // if true, the frozen changes apply to an empty dictionary
+    private TreeMap<String, String> changes = new TreeMap<>(); // null values are removed words
+    private boolean cleared; // if true, the current changes apply to an empty dictionary
+    private int size;
+
+    private CompletableFuture<Void> flushing; // the running flush, or null
+    private CompletableFuture<Void> queued; // the flush that starts when the running one ends, or null
+    private ScheduledFuture<?> periodic;
+    private long lastFlushBytes;
+
+    /**
+     * A dictionary that is only flushed by {@link #flushAsync()} and {@link #close()}.
+     */
+    public AsyncDictionary(File dictFile) {
+        this(dictFile, DictionaryFormat.TEXT, 0);
+    }
+
+    /**
+     * @param dictFile            the dictionary file
+     * @param format              the format the file is written in
+     * @param flushIntervalMillis the interval of the background flushes while the dictionary is open,
+     *                            or 0 for none
+     */
+    public AsyncDictionary(File dictFile, DictionaryFormat format, long flushIntervalMillis) {
+        // Throw exception if the file or format is null
+        if (dictFile == null) {
+            throw new IllegalArgumentException("Dictionary file cannot be null.");
+        }
+        if (format == null) {
+            throw new IllegalArgumentException("Dictionary format cannot be null.");
+        }
+        if (flushIntervalMillis < 0) {
+            throw new IllegalArgumentException("Flush interval cannot be negative.");
+        }
+        this.dictFile = dictFile;
+        this.format = format;
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    @Override
+    public void open() throws IOException {
+        stopPeriodicFlush();
+        // A flush that is still running would overwrite the file being read
+        awaitFlushes();
+        TreeMap<String, String> loaded = new TreeMap<>();
+        DictionaryFiles.read(dictFile, loaded::put);
+        synchronized (this) {
+            snapshot = loaded;
+            changes = new TreeMap<>();
+            cleared = false;
+            size = loaded.size();
+            if (flushIntervalMillis > 0) {
+                periodic = SCHEDULER.scheduleWithFixedDelay(this::flushAsync, flushIntervalMillis,
+                        flushIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            closeAsync().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while flushing " + dictFile);
+        } catch (ExecutionException e) {
+            throw asIOException(e.getCause());
+        }
+    }
+
+    /**
+     * Stop the periodic flushes, and flush the changes in the background.
+     *
+     * @return a future that completes when all the changes made so far are in the file
+     */
+    public CompletableFuture<Void> closeAsync() {
+        stopPeriodicFlush();
+        return flushAsync();
+    }
+
+    /**
+     * Write the changes made so far to the file in the background. Changes made while the flush runs are not
+     * included (they are left for the next flush).
+     *
+     * @return a future that completes when the changes are in the file, or completes exceptionally with the
+     * IOException that stopped the flush (the changes are then kept for the next one)
+     */
+    public synchronized CompletableFuture<Void> flushAsync() {
+        if (queued != null) {
+            // It will include the changes made until it starts
+            return queued;
+        }
+        if (flushing == null) {
+            return startFlush();
+        }
+        if (changes.isEmpty() && !cleared) {
+            // The running flush has everything
+            return flushing;
+        }
+        // One more flush, once the running one ends, covers all the changes made until then
+        queued = flushing.handle((result, error) -> null).thenCompose(ignored -> {
+            synchronized (this) {
+                queued = null;
+                return startFlush();
+            }
+        });
+        return queued;
+    }
+
+    /**
+     * @return the number of bytes the last completed flush wrote
+     */
+    @Override
+    public synchronized long lastFlushBytes() {
+        return lastFlushBytes;
+    }
+
+    @Override
+    public synchronized String get(Object key) {
+        String word = (String) Objects.requireNonNull(key);
+        if (changes.containsKey(word) || cleared) {
+            return changes.get(word);
+        }
+        if (frozen != null && (frozen.containsKey(word) || frozenCleared)) {
+            return frozen.get(word);
+        }
+        return snapshot.get(word);
+    }
+
+    @Override
+    public synchronized String put(String key, String value) {
+        Objects.requireNonNull(value, "Definitions cannot be null");
+        String old = get(key);
+        changes.put(key, value);
+        if (old == null) {
+            size++;
+        }
+        return old;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized String remove(Object key) {
+        String old = get(key);
+        if (old != null) {
+            changes.put((String) key, null);
+            size--;
+        }
+        return old;
+    }
+
+    @Override
+    public synchronized void clear() {
+        changes = new TreeMap<>();
+        cleared = true;
+        size = 0;
+    }
+
+    @Override
+    public synchronized Iterator<Map.Entry<String, String>> range(String from, String to) {
+        // Newest first; the layers under a clear are left out
+        List<Iterator<Map.Entry<String, String>>> sources = new ArrayList<>();
+        sources.add(DictionaryIterators.range(changes, from, to));
+        if (!cleared && frozen != null) {
+            sources.add(DictionaryIterators.range(frozen, from, to));
+        }
+        if (!cleared && (frozen == null || !frozenCleared)) {
+            sources.add(DictionaryIterators.range(snapshot, from, to));
+        }
+        return DictionaryIterators.live(new MergingIterator(sources), to);
+    }
+
+    /**
+     * Freeze the current changes and persist them in the background. Called with the lock held,
+     * when no flush is running.
+     */
+    private CompletableFuture<Void> startFlush() {
+        if (changes.isEmpty() && !cleared) {
+            return CompletableFuture.completedFuture(null);
+        }
+        TreeMap<String, String> base = snapshot;
+        TreeMap<String, String> delta = changes;
+        boolean deltaCleared = cleared;
+        frozen = delta;
+        frozenCleared = deltaCleared;
+        changes = new TreeMap<>();
+        cleared = false;
+        // The flush can't finish before it is recorded as running, since it needs the lock to finish
+        flushing = CompletableFuture.runAsync(() -> persist(base, delta, deltaCleared), FLUSHER);
+        return flushing;
+    }
+
+    private void persist(TreeMap<String, String> base, TreeMap<String, String> delta, boolean deltaCleared) {
+        TreeMap<String, String> merged = deltaCleared ? new TreeMap<>() : new TreeMap<>(base);
+        for (Map.Entry<String, String> change : delta.entrySet()) {
+            if (change.getValue() == null) {
+                merged.remove(change.getKey());
+            } else {
+                merged.put(change.getKey(), change.getValue());
+            }
+        }
+        long written;
+        try {
+            File tmp = DictionaryFiles.sibling(dictFile, ".tmp");
+            written = DictionaryFiles.write(tmp, merged.entrySet(), format);
+            DictionaryFiles.replace(tmp, dictFile);
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                // Keep the frozen changes under the newer ones, for the next flush
+                for (Map.Entry<String, String> change : delta.entrySet()) {
+                    if (!cleared && !changes.containsKey(change.getKey())) {
+                        changes.put(change.getKey(), change.getValue());
+                    }
+                }
+                cleared |= deltaCleared;
+                frozen = null;
+                flushing = null;
+            }
+            throw e instanceof IOException ? new UncheckedIOException((IOException) e) : (RuntimeException) e;
+        }
+        synchronized (this) {
+            snapshot = merged;
+            frozen = null;
+            lastFlushBytes = written;
+            flushing = null;
+        }
+    }
+
+    private synchronized void stopPeriodicFlush() {
+        if (periodic != null) {
+            periodic.cancel(false);
+            periodic = null;
+        }
+    }
+
+    /**
+     * Wait for the running and queued flushes, ignoring their failures (their changes are kept).
+     */
+    private void awaitFlushes() throws IOException {
+        while (true) {
+            CompletableFuture<Void> pending;
+            synchronized (this) {
+                pending = queued != null ? queued : flushing;
+            }
+            if (pending == null) {
+                return;
+            }
+            try {
+                pending.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while flushing " + dictFile);
+            } catch (ExecutionException e) {
+                // Reopening discards the changes anyway
+            }
+        }
+    }
+
+    private IOException asIOException(Throwable error) {
+        while (error instanceof CompletionException || error instanceof UncheckedIOException) {
+            if (error.getCause() == null) {
+                break;
+            }
+            error = error.getCause();
+        }
+        if (error instanceof IOException) {
+            return (IOException) error;
+        }
+        return new IOException("Flush of " + dictFile + " failed", error);
+    }
+}
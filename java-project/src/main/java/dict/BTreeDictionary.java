@@ -0,0 +1,634 @@
+package dict;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A persistent dictionary stored in a B+-tree of fixed-size pages, with a bounded buffer pool.
+ * Lookups read O(log n) pages, memory use is bounded by the buffer pool size, and {@link #close()} only
+ * writes the pages that changed.
+ * <p>
+ * Page 0 of the file is a header: int magic ("BTRE"), int version, int page size, int root page,
+ * int page count, int number of words. Every other page is a node:
+ * <pre>
+ * byte type (0 = leaf, 1 = internal), unsigned short count, int next leaf (leaf) or first child (internal),
+ * count times: unsigned short keyLength, key (UTF-8), then
+ *              unsigned short valueLength, value (UTF-8) in a leaf, or int child in an internal node
+ * </pre>
+ * In an internal node, the child after key k holds the words &gt;= k. Leaves are linked in key order.
+ * Nodes split when they overflow; removals don't merge nodes.
+ * <p>
+ * The buffer pool keeps the least recently used pages; a dirty page that is evicted is written back
+ * early. So that {@link #open()} can still undo changes made since the last close (and a crash in the
+ * middle of a close leaves a usable file), the original contents of a page are copied to a rollback
+ * journal (the dictionary file name with a <code>.journal</code> suffix) before the page is first
+ * overwritten. close() deletes the journal once all pages are written; open() rolls back any journal it finds.
+ * <p>
+ * Definitions cannot be null, and a word and its definition together must fit in a quarter of a page.
+ */
+public class BTreeDictionary implements PersistentDictionary {
+    /**
+     * Default page size, in bytes.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+    /**
+     * Default buffer pool size, in pages.
+     */
+    public static final int DEFAULT_POOL_PAGES = 1024;
+
+    private static final int MAGIC = 0x42545245; // "BTRE"
+    private static final int VERSION = 1;
+    private static final int JOURNAL_MAGIC = 0x424a524e; // "BJRN"
+    private static final int NODE_HEADER = 7;
+    private static final byte LEAF = 0;
+    private static final byte INTERNAL = 1;
+
+    /**
+     * A decoded page.
+     */
+    private static class Node {
+        final int page;
+        final boolean leaf;
+        final ArrayList<String> keys = new ArrayList<>();
+        final ArrayList<String> values = new ArrayList<>(); // leaf only
+        final ArrayList<Integer> children = new ArrayList<>(); // internal only, one more than keys
+        int next; // leaf only, 0 for the last leaf
+        int bytes = NODE_HEADER; // encoded size
+        boolean dirty;
+
+        Node(int page, boolean leaf) {
+            this.page = page;
+            this.leaf = leaf;
+        }
+    }
+
+    private final File dictFile;
+    private final File journalFile;
+    private final int newPageSize;
+    private final int poolPages;
+
+    private RandomAccessFile raf; // null until opened
+    private FileChannel channel;
+    private int pageSize;
+    private int root;
+    private int pageCount;
+    private int size;
+
+    private int committedPageCount; // the page count as of the last close
+    private DataOutputStream journal; // null until the first page is overwritten after open
+    private final BitSet journaled = new BitSet();
+    private long bytesWritten; // to the file and the journal since the last close
+    private long lastFlushBytes;
+
+    private final LinkedHashMap<Integer, Node> pool = new LinkedHashMap<Integer, Node>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Node> eldest) {
+            if (size() <= poolPages) {
+                return false;
+            }
+            if (eldest.getValue().dirty) {
+                try {
+                    writeNode(eldest.getValue());
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not write page of " + dictFile, e);
+                }
+            }
+            return true;
+        }
+    };
+
+    public BTreeDictionary(File dictFile) {
+        this(dictFile, DEFAULT_PAGE_SIZE, DEFAULT_POOL_PAGES);
+    }
+
+    /**
+     * @param dictFile  the dictionary file
+     * @param pageSize  the page size of a new file, in bytes (an existing file keeps its page size)
+     * @param poolPages the number of pages the buffer pool holds
+     */
+    public BTreeDictionary(File dictFile, int pageSize, int poolPages) {
+        // Throw exception if the file is null
+        if (dictFile == null) {
+            throw new IllegalArgumentException("Dictionary file cannot be null.");
+        }
+        if (pageSize < 256 || pageSize > 65536) {
+            throw new IllegalArgumentException("Page size must be between 256 and 65536 bytes.");
+        }
+        if (poolPages < 2) {
+            throw new IllegalArgumentException("The buffer pool must hold at least 2 pages.");
+        }
+        this.dictFile = dictFile;
+        this.journalFile = DictionaryFiles.sibling(dictFile, ".journal");
+        this.newPageSize = pageSize;
+        this.poolPages = poolPages;
+    }
+
+    @Override
+    public void open() throws IOException {
+        closeFile();
+        pool.clear();
+        journaled.clear();
+        bytesWritten = 0;
+        if (!dictFile.exists() || dictFile.length() == 0) {
+            // A journal without its dictionary file is stale
+            journalFile.delete();
+            raf = new RandomAccessFile(dictFile, "rw");
+            channel = raf.getChannel();
+            pageSize = newPageSize;
+            committedPageCount = 0;
+            pageCount = 1;
+            size = 0;
+            root = newNode(true).page;
+            return;
+        }
+        raf = new RandomAccessFile(dictFile, "rw");
+        channel = raf.getChannel();
+        if (journalFile.exists()) {
+            rollback();
+        }
+        if (raf.length() == 0) {
+            // The rollback removed a file that was never closed
+            open();
+            return;
+        }
+        raf.seek(0);
+        if (raf.readInt() != MAGIC) {
+            closeFile();
+            throw new IOException(dictFile + " is not a B-tree dictionary file");
+        }
+        int version = raf.readInt();
+        if (version != VERSION) {
+            closeFile();
+            throw new IOException("Unsupported B-tree dictionary version " + version + " in " + dictFile);
+        }
+        pageSize = raf.readInt();
+        root = raf.readInt();
+        pageCount = raf.readInt();
+        size = raf.readInt();
+        committedPageCount = pageCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        ensureOpen();
+        boolean changed = journal != null;
+        for (Node node : pool.values()) {
+            changed |= node.dirty;
+        }
+        if (!changed) {
+            // Nothing was written or changed since open()
+            closeFile();
+            pool.clear();
+            lastFlushBytes = 0;
+            return;
+        }
+        // Write the dirty pages, then the header
+        for (Node node : pool.values()) {
+            if (node.dirty) {
+                writeNode(node);
+            }
+        }
+        ByteBuffer header = ByteBuffer.allocate(pageSize);
+        header.putInt(MAGIC).putInt(VERSION).putInt(pageSize).putInt(root).putInt(pageCount).putInt(size);
+        header.flip();
+        writePage(0, header);
+        if (pageCount < committedPageCount) {
+            // Pages cut off the end must be restorable too
+            for (int page = pageCount; page < committedPageCount; page++) {
+                journalPage(page);
+            }
+            channel.truncate((long) pageCount * pageSize);
+        }
+        // Deleting the journal commits the new version
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        journalFile.delete();
+        closeFile();
+        pool.clear();
+        journaled.clear();
+        lastFlushBytes = bytesWritten;
+        bytesWritten = 0;
+    }
+
+    /**
+     * @return the number of bytes of pages (and of their journal copies) written since the close before the
+     * last one: by the last {@link #close()}, and by evictions of changed pages before it
+     */
+    @Override
+    public long lastFlushBytes() {
+        return lastFlushBytes;
+    }
+
+    @Override
+    public String get(Object key) {
+        ensureOpen();
+        String word = (String) Objects.requireNonNull(key);
+        Node node = fetch(root);
+        while (!node.leaf) {
+            node = fetch(node.children.get(childIndex(node, word)));
+        }
+        int pos = Collections.binarySearch(node.keys, word);
+        return pos >= 0 ? node.values.get(pos) : null;
+    }
+
+    @Override
+    public String put(String key, String value) {
+        ensureOpen();
+        Objects.requireNonNull(value, "Definitions cannot be null");
+        int entryBytes = 4 + utf8Length(key) + utf8Length(value);
+        if (entryBytes > (pageSize - NODE_HEADER) / 4) {
+            throw new IllegalArgumentException("Word and definition are too long for a " + pageSize + " byte page.");
+        }
+        // Go down to the leaf, remembering the path for splits
+        List<Node> path = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        Node node = fetch(root);
+        while (!node.leaf) {
+            int i = childIndex(node, key);
+            path.add(node);
+            indexes.add(i);
+            node = fetch(node.children.get(i));
+        }
+        int pos = Collections.binarySearch(node.keys, key);
+        String old = null;
+        if (pos >= 0) {
+            old = node.values.set(pos, value);
+            node.bytes += utf8Length(value) - utf8Length(old);
+        } else {
+            node.keys.add(-pos - 1, key);
+            node.values.add(-pos - 1, value);
+            node.bytes += entryBytes;
+            size++;
+        }
+        markDirty(node);
+        splitIfNeeded(node, path, indexes);
+        return old;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public String remove(Object key) {
+        ensureOpen();
+        String word = (String) Objects.requireNonNull(key);
+        Node node = fetch(root);
+        while (!node.leaf) {
+            node = fetch(node.children.get(childIndex(node, word)));
+        }
+        int pos = Collections.binarySearch(node.keys, word);
+        if (pos < 0) {
+            return null;
+        }
+        node.keys.remove(pos);
+        String old = node.values.remove(pos);
+        node.bytes -= 4 + utf8Length(word) + utf8Length(old);
+        size--;
+        markDirty(node);
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        ensureOpen();
+        // Start over with a single empty leaf; close() truncates the file
+        pool.clear();
+        pageCount = 1;
+        size = 0;
+        root = newNode(true).page;
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> range(String from, String to) {
+        ensureOpen();
+        // Go down to the leaf that may hold from, then follow the leaf links
+        Node node = fetch(root);
+        while (!node.leaf) {
+            node = fetch(node.children.get(from == null ? 0 : childIndex(node, from)));
+        }
+        int pos = from == null ? 0 : Collections.binarySearch(node.keys, from);
+        return new LeafIterator(node, pos >= 0 ? pos : -pos - 1, to);
+    }
+
+    /**
+     * Iterates the leaves in key order, reading each leaf page through the buffer pool when it is reached.
+     */
+    private class LeafIterator implements Iterator<Map.Entry<String, String>> {
+        private final String to;
+        private Node leaf;
+        private int pos;
+
+        LeafIterator(Node leaf, int pos, String to) {
+            this.leaf = leaf;
+            this.pos = pos;
+            this.to = to;
+        }
+
+        @Override
+        public boolean hasNext() {
+            // Skip to the next leaf that is not empty
+            while (leaf != null && pos >= leaf.keys.size()) {
+                leaf = leaf.next == 0 ? null : fetch(leaf.next);
+                pos = 0;
+            }
+            if (leaf != null && to != null && leaf.keys.get(pos).compareTo(to) >= 0) {
+                leaf = null;
+            }
+            return leaf != null;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, String> entry = new AbstractMap.SimpleImmutableEntry<>(leaf.keys.get(pos),
+                    leaf.values.get(pos));
+            pos++;
+            return entry;
+        }
+    }
+
+    /**
+     * Split the node, and then its ancestors, while they are larger than a page.
+     */
+    private void splitIfNeeded(Node node, List<Node> path, List<Integer> indexes) {
+        while (node.bytes > pageSize) {
+            // Find the split point: the first entry that starts past half of the node
+            int half = (node.bytes - NODE_HEADER) / 2;
+            int acc = 0;
+            int s = 0;
+            while (s < node.keys.size() - 1 && acc < half) {
+                acc += entrySize(node, s);
+                s++;
+            }
+            s = Math.max(1, Math.min(s, node.keys.size() - 1));
+
+            Node right = newNode(node.leaf);
+            String separator;
+            if (node.leaf) {
+                separator = node.keys.get(s);
+                right.keys.addAll(node.keys.subList(s, node.keys.size()));
+                right.values.addAll(node.values.subList(s, node.values.size()));
+                node.keys.subList(s, node.keys.size()).clear();
+                node.values.subList(s, node.values.size()).clear();
+                right.next = node.next;
+                node.next = right.page;
+            } else {
+                // The separator moves up to the parent
+                separator = node.keys.get(s);
+                right.keys.addAll(node.keys.subList(s + 1, node.keys.size()));
+                right.children.addAll(node.children.subList(s + 1, node.children.size()));
+                node.keys.subList(s, node.keys.size()).clear();
+                node.children.subList(s + 1, node.children.size()).clear();
+            }
+            recomputeBytes(node);
+            recomputeBytes(right);
+            markDirty(node);
+
+            if (path.isEmpty()) {
+                // The root split: grow the tree by one level
+                Node newRoot = newNode(false);
+                newRoot.keys.add(separator);
+                newRoot.children.add(node.page);
+                newRoot.children.add(right.page);
+                recomputeBytes(newRoot);
+                root = newRoot.page;
+                return;
+            }
+            Node parent = path.remove(path.size() - 1);
+            int i = indexes.remove(indexes.size() - 1);
+            parent.keys.add(i, separator);
+            parent.children.add(i + 1, right.page);
+            parent.bytes += 6 + utf8Length(separator);
+            markDirty(parent);
+            node = parent;
+        }
+    }
+
+    /**
+     * @return the index of the child that may hold the word
+     */
+    private static int childIndex(Node node, String word) {
+        int pos = Collections.binarySearch(node.keys, word);
+        return pos >= 0 ? pos + 1 : -pos - 1;
+    }
+
+    private static int entrySize(Node node, int i) {
+        if (node.leaf) {
+            return 4 + utf8Length(node.keys.get(i)) + utf8Length(node.values.get(i));
+        }
+        return 6 + utf8Length(node.keys.get(i));
+    }
+
+    private static void recomputeBytes(Node node) {
+        node.bytes = NODE_HEADER;
+        for (int i = 0; i < node.keys.size(); i++) {
+            node.bytes += entrySize(node, i);
+        }
+    }
+
+    /*======= Buffer pool  ======*/
+
+    private Node fetch(int page) {
+        Node node = pool.get(page);
+        if (node != null) {
+            return node;
+        }
+        try {
+            node = readNode(page);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read page " + page + " of " + dictFile, e);
+        }
+        pool.put(page, node);
+        return node;
+    }
+
+    /**
+     * Mark a node as changed. A node that was evicted while it was being changed goes back into the pool.
+     */
+    private void markDirty(Node node) {
+        node.dirty = true;
+        if (pool.get(node.page) != node) {
+            pool.put(node.page, node);
+        }
+    }
+
+    private Node newNode(boolean leaf) {
+        Node node = new Node(pageCount++, leaf);
+        markDirty(node);
+        return node;
+    }
+
+    private Node readNode(int page) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(pageSize);
+        channel.read(buf, (long) page * pageSize);
+        buf.flip();
+        Node node = new Node(page, buf.get() == LEAF);
+        int count = buf.getShort() & 0xffff;
+        if (node.leaf) {
+            node.next = buf.getInt();
+            for (int i = 0; i < count; i++) {
+                node.keys.add(readString(buf));
+                node.values.add(readString(buf));
+            }
+        } else {
+            node.children.add(buf.getInt());
+            for (int i = 0; i < count; i++) {
+                node.keys.add(readString(buf));
+                node.children.add(buf.getInt());
+            }
+        }
+        node.bytes = buf.position();
+        return node;
+    }
+
+    private void writeNode(Node node) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(pageSize);
+        buf.put(node.leaf ? LEAF : INTERNAL);
+        buf.putShort((short) node.keys.size());
+        if (node.leaf) {
+            buf.putInt(node.next);
+            for (int i = 0; i < node.keys.size(); i++) {
+                writeString(buf, node.keys.get(i));
+                writeString(buf, node.values.get(i));
+            }
+        } else {
+            buf.putInt(node.children.get(0));
+            for (int i = 0; i < node.keys.size(); i++) {
+                writeString(buf, node.keys.get(i));
+                buf.putInt(node.children.get(i + 1));
+            }
+        }
+        buf.rewind();
+        writePage(node.page, buf);
+        node.dirty = false;
+    }
+
+    /**
+     * Overwrite a page, copying its committed contents to the journal first.
+     */
+    private void writePage(int page, ByteBuffer buf) throws IOException {
+        journalPage(page);
+        bytesWritten += channel.write(buf, (long) page * pageSize);
+    }
+
+    /*======= Rollback journal  ======*/
+
+    private void journalPage(int page) throws IOException {
+        if (journal == null) {
+            // The journal starts with the committed page count, so rollback can cut off new pages
+            journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile)));
+            journal.writeInt(JOURNAL_MAGIC);
+            journal.writeInt(pageSize);
+            journal.writeInt(committedPageCount);
+            journal.flush();
+        }
+        if (page >= committedPageCount || journaled.get(page)) {
+            return;
+        }
+        ByteBuffer original = ByteBuffer.allocate(pageSize);
+        channel.read(original, (long) page * pageSize);
+        journal.writeInt(page);
+        journal.write(original.array());
+        bytesWritten += 4 + pageSize;
+        // The copy must reach the journal before the page is overwritten
+        journal.flush();
+        journaled.set(page);
+    }
+
+    /**
+     * Restore the pages saved in the journal and cut off pages added since, then delete the journal.
+     */
+    private void rollback() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            if (in.readInt() == JOURNAL_MAGIC) {
+                int journalPageSize = in.readInt();
+                int originalPageCount = in.readInt();
+                byte[] page = new byte[journalPageSize];
+                try {
+                    while (true) {
+                        int number = in.readInt();
+                        in.readFully(page);
+                        channel.write(ByteBuffer.wrap(page), (long) number * journalPageSize);
+                    }
+                } catch (EOFException e) {
+                    // End of the journal (a torn last record was never overwritten)
+                }
+                channel.truncate((long) originalPageCount * journalPageSize);
+            }
+        } catch (EOFException e) {
+            // The journal header was not completely written, so no page was overwritten
+        }
+        journalFile.delete();
+    }
+
+    private void ensureOpen() {
+        if (channel == null) {
+            // Allow changes before the first open(), like the in-memory dictionary
+            try {
+                open();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not open " + dictFile, e);
+            }
+        }
+    }
+
+    private void closeFile() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        if (raf != null) {
+            raf.close();
+            raf = null;
+            channel = null;
+        }
+    }
+
+    private static String readString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getShort() & 0xffff];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(ByteBuffer buf, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        buf.putShort((short) bytes.length);
+        buf.put(bytes);
+    }
+
+    /**
+     * The length of the string in UTF-8, without encoding it.
+     */
+    private static int utf8Length(String s) {
+        int len = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                len += 1;
+            } else if (c < 0x800) {
+                len += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                len += 4;
+                i++;
+            } else {
+                len += 3;
+            }
+        }
+        return len;
+    }
+}
@@ -0,0 +1,109 @@
+package dict;
+
+import java.io.*;
+
+/**
+ * A Bloom filter over dictionary words: a compact set that may answer "maybe present" for a word that
+ * was never added (with a configurable probability), but never answers "absent" for a word that was.
+ * Disk-backed dictionaries keep one per data file, so most lookups of missing words don't read the file.
+ * <p>
+ * File format: int magic ("BLMF"), int number of hash functions, int number of 64-bit words, the words.
+ */
+final class BloomFilter {
+    private static final int MAGIC = 0x424c4d46; // "BLMF"
+
+    private final long[] bits;
+    private final int numHashes;
+
+    private BloomFilter(long[] bits, int numHashes) {
+        this.bits = bits;
+        this.numHashes = numHashes;
+    }
+
+    /**
+     * Create an empty filter sized for the expected number of words.
+     *
+     * @param expectedWords     the number of words that will be added
+     * @param falsePositiveRate the wanted probability of "maybe present" for a missing word (between 0 and 1)
+     */
+    static BloomFilter create(long expectedWords, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1.");
+        }
+        long n = Math.max(1, expectedWords);
+        // Optimal number of bits: -n ln(p) / ln(2)^2, and of hash functions: (bits / n) ln(2)
+        long numBits = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        numBits = Math.max(64, Math.min(numBits, 64L * Integer.MAX_VALUE));
+        int numHashes = (int) Math.max(1, Math.round((double) numBits / n * Math.log(2)));
+        return new BloomFilter(new long[(int) ((numBits + 63) / 64)], numHashes);
+    }
+
+    void add(String word) {
+        long hash = hash(word);
+        long numBits = 64L * bits.length;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        // Double hashing: the i-th hash is h1 + i * h2
+        for (int i = 0; i < numHashes; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % numBits;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @return false if the word was certainly not added, true if it may have been
+     */
+    boolean mightContain(String word) {
+        long hash = hash(word);
+        long numBits = 64L * bits.length;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % numBits;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void writeTo(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(numHashes);
+            out.writeInt(bits.length);
+            for (long word : bits) {
+                out.writeLong(word);
+            }
+        }
+    }
+
+    static BloomFilter readFrom(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a Bloom filter file");
+            }
+            int numHashes = in.readInt();
+            long[] bits = new long[in.readInt()];
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] = in.readLong();
+            }
+            return new BloomFilter(bits, numHashes);
+        }
+    }
+
+    /**
+     * A 64-bit hash of the word's characters (the 64-bit FNV-1a hash, with a final mix so both halves are usable).
+     */
+    private static long hash(String word) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < word.length(); i++) {
+            h ^= word.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,332 @@
+package dict;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A persistent dictionary that keeps a bounded set of hot entries in memory in front of a disk-backed
+ * dictionary (such as {@link BTreeDictionary} or {@link LsmDictionary}).
+ * <p>
+ * Misses are read through from the backing dictionary. Changes are only made in the cache (write-back):
+ * a changed entry is written to the backing dictionary when it is evicted, and all changed entries are
+ * written by {@link #close()}.
+ * <p>
+ * Eviction follows W-TinyLFU: new entries enter a small LRU window; an entry evicted from the window only
+ * enters the main LRU area if it has been used more often (according to a small count-min sketch of
+ * recent key frequencies) than the entry the main area would evict for it. This keeps one-off lookups
+ * from flushing frequently used words out of the cache.
+ * <p>
+ * Removals are written through to the backing dictionary immediately.
+ */
+public class CachingDictionary implements PersistentDictionary {
+    private static final int ENTRY_OVERHEAD = 96; // estimated heap bytes per cached entry, besides the strings
+
+    /**
+     * A cached definition.
+     */
+    private static class Entry {
+        String value;
+        boolean dirty;
+
+        Entry(String value, boolean dirty) {
+            this.value = value;
+            this.dirty = dirty;
+        }
+    }
+
+    private final PersistentDictionary backing;
+    private final int windowCapacity;
+    private final int mainCapacity;
+
+    // Both are in access order, least recently used first
+    private final LinkedHashMap<String, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Entry> main = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+
+    private int size;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long cachedBytes;
+
+    /**
+     * @param backing  the dictionary to cache
+     * @param capacity the maximum number of cached entries
+     */
+    public CachingDictionary(PersistentDictionary backing, int capacity) {
+        if (backing == null) {
+            throw new IllegalArgumentException("Backing dictionary cannot be null.");
+        }
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Capacity must be at least 2.");
+        }
+        this.backing = backing;
+        // The window gets 1% of the capacity, as in W-TinyLFU
+        this.windowCapacity = Math.max(1, capacity / 100);
+        this.mainCapacity = capacity - windowCapacity;
+        this.sketch = new FrequencySketch(capacity);
+    }
+
+    @Override
+    public void open() throws IOException {
+        // Dropping the cache undoes the unwritten changes; the backing dictionary undoes the rest
+        window.clear();
+        main.clear();
+        cachedBytes = 0;
+        backing.open();
+        size = backing.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeBack(window);
+        writeBack(main);
+        backing.close();
+    }
+
+    @Override
+    public long lastFlushBytes() {
+        return backing.lastFlushBytes();
+    }
+
+    @Override
+    public String get(Object key) {
+        String word = (String) Objects.requireNonNull(key);
+        sketch.increment(word);
+        Entry entry = lookup(word);
+        if (entry != null) {
+            hits++;
+            return entry.value;
+        }
+        misses++;
+        String value = backing.get(word);
+        if (value != null) {
+            admit(word, new Entry(value, false));
+        }
+        return value;
+    }
+
+    @Override
+    public String put(String key, String value) {
+        Objects.requireNonNull(value, "Definitions cannot be null");
+        sketch.increment(key);
+        Entry entry = lookup(key);
+        if (entry != null) {
+            hits++;
+            String old = entry.value;
+            cachedBytes += 2L * (value.length() - old.length());
+            entry.value = value;
+            entry.dirty = true;
+            return old;
+        }
+        misses++;
+        String old = backing.get(key);
+        if (old == null) {
+            size++;
+        }
+        admit(key, new Entry(value, true));
+        return old;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String remove(Object key) {
+        String word = (String) Objects.requireNonNull(key);
+        Entry entry = window.remove(word);
+        if (entry == null) {
+            entry = main.remove(word);
+        }
+        if (entry != null) {
+            cachedBytes -= entryBytes(word, entry.value);
+        }
+        String old = backing.remove(word);
+        if (entry != null) {
+            // A dirty entry may not have reached the backing dictionary yet
+            old = entry.value;
+        }
+        if (old != null) {
+            size--;
+        }
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        window.clear();
+        main.clear();
+        cachedBytes = 0;
+        backing.clear();
+        size = 0;
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> range(String from, String to) {
+        // Scans bypass the cache; the backing dictionary must first see the cached changes
+        writeBack(window);
+        writeBack(main);
+        return backing.range(from, to);
+    }
+
+    /**
+     * @return the fraction of lookups answered from the cache, or 0 if there were none
+     */
+    public double hitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return the number of entries evicted from the cache
+     */
+    public long evictionCount() {
+        return evictions;
+    }
+
+    /**
+     * @return the estimated heap used by cached entries, in bytes
+     */
+    public long cachedBytes() {
+        return cachedBytes;
+    }
+
+    /**
+     * @return the number of cached entries
+     */
+    public int cachedEntries() {
+        return window.size() + main.size();
+    }
+
+    private Entry lookup(String word) {
+        Entry entry = window.get(word);
+        return entry != null ? entry : main.get(word);
+    }
+
+    /**
+     * Add a new entry to the window, moving the window's least recently used entry to the main area if
+     * it is used more often than the main area's victim.
+     */
+    private void admit(String word, Entry entry) {
+        window.put(word, entry);
+        cachedBytes += entryBytes(word, entry.value);
+        if (window.size() <= windowCapacity) {
+            return;
+        }
+        Map.Entry<String, Entry> candidate = removeEldest(window);
+        if (main.size() < mainCapacity) {
+            main.put(candidate.getKey(), candidate.getValue());
+            return;
+        }
+        String victim = main.keySet().iterator().next();
+        if (sketch.frequency(candidate.getKey()) > sketch.frequency(victim)) {
+            Entry evicted = main.remove(victim);
+            main.put(candidate.getKey(), candidate.getValue());
+            evict(victim, evicted);
+        } else {
+            evict(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    private void evict(String word, Entry entry) {
+        evictions++;
+        cachedBytes -= entryBytes(word, entry.value);
+        if (entry.dirty) {
+            backing.put(word, entry.value);
+        }
+    }
+
+    private static Map.Entry<String, Entry> removeEldest(LinkedHashMap<String, Entry> map) {
+        Iterator<Map.Entry<String, Entry>> it = map.entrySet().iterator();
+        Map.Entry<String, Entry> eldest = it.next();
+        Map.Entry<String, Entry> copy = new AbstractMap.SimpleImmutableEntry<>(eldest);
+        it.remove();
+        return copy;
+    }
+
+    private void writeBack(Map<String, Entry> entries) {
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (entry.getValue().dirty) {
+                backing.put(entry.getKey(), entry.getValue().value);
+                entry.getValue().dirty = false;
+            }
+        }
+    }
+
+    private static long entryBytes(String word, String value) {
+        return ENTRY_OVERHEAD + 2L * (word.length() + value.length());
+    }
+
+    /**
+     * A count-min sketch of recent key frequencies, with 4 rows of small counters.
+     * All counters are halved periodically so the sketch follows changes in popularity.
+     */
+    private static class FrequencySketch {
+        private static final int MAX_COUNT = 15;
+
+        private final byte[][] rows = new byte[4][];
+        private final int mask;
+        private final int resetInterval;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            // Several counters per cached entry keep collisions with the many uncached keys rare
+            int width = Integer.highestOneBit(Math.max(16, 8 * capacity) - 1) << 1;
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = new byte[width];
+            }
+            mask = width - 1;
+            resetInterval = 10 * Math.max(16, capacity);
+        }
+
+        void increment(String word) {
+            int hash = spread(word.hashCode());
+            for (int i = 0; i < rows.length; i++) {
+                int index = indexOf(hash, i);
+                if (rows[i][index] < MAX_COUNT) {
+                    rows[i][index]++;
+                }
+            }
+            if (++additions >= resetInterval) {
+                // Age the counts
+                for (byte[] row : rows) {
+                    for (int j = 0; j < row.length; j++) {
+                        row[j] >>= 1;
+                    }
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(String word) {
+            int hash = spread(word.hashCode());
+            int min = MAX_COUNT;
+            for (int i = 0; i < rows.length; i++) {
+                min = Math.min(min, rows[i][indexOf(hash, i)]);
+            }
+            return min;
+        }
+
+        private int indexOf(int hash, int row) {
+            int h = hash * (0x9e3779b9 + 2 * row);
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private static int spread(int h) {
+            h ^= h >>> 16;
+            h *= 0x45d9f3b;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,454 @@
+package dict;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Implements a persistent dictionary that is held in memory in a compact form, for very large dictionaries.
+ * <p>
+ * Words and definitions are stored as UTF-8 bytes in large byte arrays (arenas), and a sorted array of
+ * record positions is binary searched, comparing key bytes in place. An entry costs its UTF-8 bytes plus
+ * about 10 bytes, instead of two String objects and a TreeMap node (about 100 bytes besides the characters),
+ * and the garbage collector only sees a few large arrays.
+ * <p>
+ * Changes go to a small overlay (a removed word maps to null), which is merged into new arenas when it
+ * grows past a fraction of the dictionary. Like {@link InMemoryDictionary}, the whole dictionary is read
+ * by {@link #open()} and written by {@link #close()}, in either file format; a dictionary that was not
+ * changed is not rewritten.
+ */
+public class CompactDictionary implements PersistentDictionary {
+    private static final int MIN_OVERLAY = 4096; // overlay entries that are never worth a merge
+    private static final int OVERLAY_FRACTION = 8; // merge when the overlay has 1/8th as many entries
+    private static final int OVERLAY_ENTRY_OVERHEAD = 96; // estimated heap bytes per overlay entry
+
+    private final File dictFile;
+    private final DictionaryFormat format;
+
+    private Arena base = new Arena();
+    private final TreeMap<String, String> changes = new TreeMap<>();
+    private long changesBytes;
+    private int size;
+    private boolean changed; // since the last open() or close()
+
+    public CompactDictionary(File dictFile) {
+        this(dictFile, DictionaryFormat.TEXT);
+    }
+
+    /**
+     * @param dictFile the dictionary file
+     * @param format   the format {@link #close()} writes the file in
+     */
+    public CompactDictionary(File dictFile, DictionaryFormat format) {
+        // Throw exception if the file or format is null
+        if (dictFile == null) {
+            throw new IllegalArgumentException("Dictionary file cannot be null.");
+        }
+        if (format == null) {
+            throw new IllegalArgumentException("Dictionary format cannot be null.");
+        }
+        this.dictFile = dictFile;
+        this.format = format;
+    }
+
+    @Override
+    public void open() throws IOException {
+        // Read the file in whichever format it is (a missing file is an empty dictionary)
+        Arena arena = new Arena();
+        DictionaryFiles.read(dictFile, (word, def) -> arena.add(Utf8.encode(word), Utf8.encode(def)));
+        arena.seal();
+        base = arena;
+        changes.clear();
+        changesBytes = 0;
+        size = base.count;
+        changed = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!changed) {
+            // Nothing to write
+            return;
+        }
+        // Write the entries in key order
+        DictionaryFiles.write(dictFile, () -> range(null, null), format);
+        changed = false;
+    }
+
+    @Override
+    public String get(Object key) {
+        String word = (String) Objects.requireNonNull(key);
+        if (changes.containsKey(word)) {
+            return changes.get(word);
+        }
+        int i = base.find(Utf8.encode(word));
+        return i < 0 ? null : base.value(i);
+    }
+
+    @Override
+    public String put(String key, String value) {
+        Objects.requireNonNull(value, "Definitions cannot be null");
+        String old = get(key);
+        if (!changes.containsKey(key)) {
+            changesBytes += OVERLAY_ENTRY_OVERHEAD + 2L * key.length();
+        }
+        String previous = changes.put(key, value);
+        changesBytes += 2L * (value.length() - (previous == null ? 0 : previous.length()));
+        if (old == null) {
+            size++;
+        }
+        changed = true;
+        mergeIfLarge();
+        return old;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String remove(Object key) {
+        String old = get(key);
+        if (old == null) {
+            return null;
+        }
+        String word = (String) key;
+        if (!changes.containsKey(word)) {
+            changesBytes += OVERLAY_ENTRY_OVERHEAD + 2L * word.length();
+        }
+        String previous = changes.put(word, null);
+        changesBytes -= 2L * (previous == null ? 0 : previous.length());
+        size--;
+        changed = true;
+        mergeIfLarge();
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        base = new Arena();
+        changes.clear();
+        changesBytes = 0;
+        size = 0;
+        changed = true;
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> range(String from, String to) {
+        // The overlay takes precedence over the arenas; removed words are skipped
+        Iterator<Map.Entry<String, String>> changed = DictionaryIterators.range(changes, from, to);
+        int start = from == null ? 0 : base.lowerBound(Utf8.encode(from));
+        Iterator<Map.Entry<String, String>> records = base.iterator(start);
+        return DictionaryIterators.live(new MergingIterator(List.of(changed, records)), to);
+    }
+
+    /**
+     * @return the estimated heap used by the entries, in bytes
+     */
+    public long heapBytes() {
+        return base.heapBytes() + changesBytes;
+    }
+
+    /**
+     * Merge the overlay into new arenas once it is large enough that its per-entry overhead matters.
+     */
+    private void mergeIfLarge() {
+        if (changes.size() <= Math.max(MIN_OVERLAY, base.count / OVERLAY_FRACTION)) {
+            return;
+        }
+        Arena merged = new Arena();
+        Iterator<Map.Entry<String, String>> changed = changes.entrySet().iterator();
+        Map.Entry<String, String> change = changed.hasNext() ? changed.next() : null;
+        byte[] changeKey = change == null ? null : Utf8.encode(change.getKey());
+        for (int i = 0; i < base.count; i++) {
+            // Add the changes that come before this record
+            int cmp = 0;
+            while (change != null && (cmp = base.compareKey(i, changeKey)) > 0) {
+                merged.add(changeKey, change.getValue());
+                change = changed.hasNext() ? changed.next() : null;
+                changeKey = change == null ? null : Utf8.encode(change.getKey());
+            }
+            if (change != null && cmp == 0) {
+                // Changed (or removed) word
+                merged.add(changeKey, change.getValue());
+                change = changed.hasNext() ? changed.next() : null;
+                changeKey = change == null ? null : Utf8.encode(change.getKey());
+            } else {
+                merged.copy(base, i);
+            }
+        }
+        while (change != null) {
+            merged.add(changeKey, change.getValue());
+            change = changed.hasNext() ? changed.next() : null;
+            changeKey = change == null ? null : Utf8.encode(change.getKey());
+        }
+        merged.seal();
+        base = merged;
+        changes.clear();
+        changesBytes = 0;
+    }
+
+    /**
+     * Records stored back to back in byte array chunks, and a sorted array of their positions
+     * (chunk index in the high int, offset in the low int).
+     * A record is: varint keyLength, key (UTF-8), varint valueLength, value (UTF-8).
+     */
+    private static class Arena {
+        private static final int CHUNK_SIZE = 1 << 20;
+
+        private byte[][] chunks = new byte[0][];
+        private int used; // bytes used in the last chunk
+        private long[] records = new long[0];
+        private int count;
+
+        /**
+         * Append a record. A null value is skipped.
+         */
+        void add(byte[] key, String value) {
+            if (value != null) {
+                add(key, value.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        void add(byte[] key, byte[] value) {
+            int length = varIntLength(key.length) + key.length + varIntLength(value.length) + value.length;
+            byte[] chunk = reserve(length);
+            int pos = used;
+            pos = writeVarInt(chunk, pos, key.length);
+            System.arraycopy(key, 0, chunk, pos, key.length);
+            pos = writeVarInt(chunk, pos + key.length, value.length);
+            System.arraycopy(value, 0, chunk, pos, value.length);
+            used += length;
+        }
+
+        /**
+         * Append record i of another arena, copying its bytes.
+         */
+        void copy(Arena other, int i) {
+            long record = other.records[i];
+            byte[] source = other.chunks[(int) (record >>> 32)];
+            int start = (int) record;
+            int keyLength = readVarInt(source, start);
+            int valuePos = start + varIntLength(keyLength) + keyLength;
+            int valueLength = readVarInt(source, valuePos);
+            int length = valuePos + varIntLength(valueLength) + valueLength - start;
+            byte[] chunk = reserve(length);
+            System.arraycopy(source, start, chunk, used, length);
+            used += length;
+        }
+
+        /**
+         * Make room for a record in the last chunk (starting a new chunk if needed), and add its position.
+         */
+        private byte[] reserve(int length) {
+            if (chunks.length == 0 || used + length > chunks[chunks.length - 1].length) {
+                // Records don't cross chunks; a record larger than a chunk gets a chunk of its own
+                chunks = Arrays.copyOf(chunks, chunks.length + 1);
+                chunks[chunks.length - 1] = new byte[Math.max(CHUNK_SIZE, length)];
+                used = 0;
+            }
+            if (count == records.length) {
+                records = Arrays.copyOf(records, Math.max(16, count * 2));
+            }
+            records[count++] = (long) (chunks.length - 1) << 32 | used;
+            return chunks[chunks.length - 1];
+        }
+
+        /**
+         * Finish adding records: sort them by key (keeping the last record added for each key),
+         * and trim the arrays.
+         */
+        void seal() {
+            if (!isSorted()) {
+                long[] sorted = Arrays.copyOf(records, count);
+                mergeSort(sorted, records, 0, count);
+                records = sorted;
+                // Drop all but the last of equal keys (the sort is stable)
+                int n = 0;
+                for (int i = 0; i < count; i++) {
+                    if (i + 1 < count && compareRecords(records[i], records[i + 1]) == 0) {
+                        continue;
+                    }
+                    records[n++] = records[i];
+                }
+                count = n;
+            }
+            records = Arrays.copyOf(records, count);
+            if (chunks.length > 0) {
+                chunks[chunks.length - 1] = Arrays.copyOf(chunks[chunks.length - 1], used);
+            }
+        }
+
+        private boolean isSorted() {
+            for (int i = 1; i < count; i++) {
+                if (compareRecords(records[i - 1], records[i]) >= 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Sort src[from, to) into dst[from, to); both must start with the same contents.
+         */
+        private void mergeSort(long[] dst, long[] src, int from, int to) {
+            if (to - from < 2) {
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            // Sort each half of dst into src, then merge them back into dst
+            mergeSort(src, dst, from, mid);
+            mergeSort(src, dst, mid, to);
+            int i = from;
+            int j = mid;
+            for (int k = from; k < to; k++) {
+                if (j >= to || (i < mid && compareRecords(src[i], src[j]) <= 0)) {
+                    dst[k] = src[i++];
+                } else {
+                    dst[k] = src[j++];
+                }
+            }
+        }
+
+        /**
+         * Binary search the records for a key.
+         *
+         * @return the index of the key's record, or (-(insertion point) - 1) if there is none
+         */
+        int find(byte[] key) {
+            int lo = 0;
+            int hi = count - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int cmp = compareKey(mid, key);
+                if (cmp < 0) {
+                    lo = mid + 1;
+                } else if (cmp > 0) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -lo - 1;
+        }
+
+        /**
+         * @return the index of the first record whose key is not less than the given key, or count if there is none
+         */
+        int lowerBound(byte[] key) {
+            int i = find(key);
+            return i >= 0 ? i : -i - 1;
+        }
+
+        int compareKey(int i, byte[] key) {
+            byte[] chunk = chunks[(int) (records[i] >>> 32)];
+            int pos = (int) records[i];
+            int keyLength = readVarInt(chunk, pos);
+            return Utf8.compare(chunk, pos + varIntLength(keyLength), keyLength, key);
+        }
+
+        private int compareRecords(long a, long b) {
+            byte[] chunkA = chunks[(int) (a >>> 32)];
+            byte[] chunkB = chunks[(int) (b >>> 32)];
+            int lengthA = readVarInt(chunkA, (int) a);
+            int lengthB = readVarInt(chunkB, (int) b);
+            return Utf8.compare(chunkA, (int) a + varIntLength(lengthA), lengthA,
+                    chunkB, (int) b + varIntLength(lengthB), lengthB);
+        }
+
+        String key(int i) {
+            byte[] chunk = chunks[(int) (records[i] >>> 32)];
+            int pos = (int) records[i];
+            int keyLength = readVarInt(chunk, pos);
+            return new String(chunk, pos + varIntLength(keyLength), keyLength, StandardCharsets.UTF_8);
+        }
+
+        String value(int i) {
+            byte[] chunk = chunks[(int) (records[i] >>> 32)];
+            int pos = (int) records[i];
+            int keyLength = readVarInt(chunk, pos);
+            pos += varIntLength(keyLength) + keyLength;
+            int valueLength = readVarInt(chunk, pos);
+            return new String(chunk, pos + varIntLength(valueLength), valueLength, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Iterate over the records from index start, decoding each one only when it is returned.
+         */
+        Iterator<Map.Entry<String, String>> iterator(int start) {
+            return new Iterator<Map.Entry<String, String>>() {
+                private int index = start;
+
+                @Override
+                public boolean hasNext() {
+                    return index < count;
+                }
+
+                @Override
+                public Map.Entry<String, String> next() {
+                    if (index >= count) {
+                        throw new NoSuchElementException();
+                    }
+                    int i = index++;
+                    return new AbstractMap.SimpleImmutableEntry<>(key(i), value(i));
+                }
+            };
+        }
+
+        long heapBytes() {
+            long bytes = 8L * records.length;
+            for (byte[] chunk : chunks) {
+                bytes += chunk.length;
+            }
+            return bytes;
+        }
+
+        private static int varIntLength(int value) {
+            int n = 1;
+            while ((value & ~0x7f) != 0) {
+                value >>>= 7;
+                n++;
+            }
+            return n;
+        }
+
+        /**
+         * Write an unsigned varint (7 bits per byte, low bits first).
+         *
+         * @return the position after it
+         */
+        private static int writeVarInt(byte[] bytes, int pos, int value) {
+            while ((value & ~0x7f) != 0) {
+                bytes[pos++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            bytes[pos++] = (byte) value;
+            return pos;
+        }
+
+        private static int readVarInt(byte[] bytes, int pos) {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = bytes[pos++];
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+    }
+}
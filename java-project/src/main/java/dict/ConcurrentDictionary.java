@@ -0,0 +1,141 @@
+package dict;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A thread-safe persistent dictionary held entirely in memory, in a {@link ConcurrentSkipListMap}.
+ * <p>
+ * Reads never block. Writers only take the shared side of a read/write lock, so they run in parallel;
+ * the exclusive side is held just long enough by {@link #clear()}, and by {@link #close()} to copy a
+ * consistent snapshot of the entries. The snapshot is written to a temporary file while writers go on,
+ * and then moved over the dictionary file. Concurrent closes take and write their snapshots one at a time,
+ * so the last one to finish writes the latest snapshot.
+ * <p>
+ * {@link #open()} must not be called while other threads use the dictionary.
+ * Null words and definitions are not allowed.
+ */
+public class ConcurrentDictionary implements PersistentDictionary {
+    private final File dictFile;
+    private final DictionaryFormat format;
+    private final ConcurrentSkipListMap<String, String> map = new ConcurrentSkipListMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+    private final Object closeLock = new Object(); // one writer of the temporary file at a time
+
+    public ConcurrentDictionary(File dictFile) {
+        this(dictFile, DictionaryFormat.TEXT);
+    }
+
+    /**
+     * @param dictFile the dictionary file
+     * @param format   the format {@link #close()} writes the file in
+     */
+    public ConcurrentDictionary(File dictFile, DictionaryFormat format) {
+        // Throw exception if the file or format is null
+        if (dictFile == null) {
+            throw new IllegalArgumentException("Dictionary file cannot be null.");
+        }
+        if (format == null) {
+            throw new IllegalArgumentException("Dictionary format cannot be null.");
+        }
+        this.dictFile = dictFile;
+        this.format = format;
+    }
+
+    @Override
+    public void open() throws IOException {
+        snapshotLock.writeLock().lock();
+        try {
+            map.clear();
+            DictionaryFiles.read(dictFile, map::put);
+            size.set(map.size());
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (closeLock) {
+            // Copy the entries while no writer is in the middle of a change
+            TreeMap<String, String> snapshot;
+            snapshotLock.writeLock().lock();
+            try {
+                snapshot = new TreeMap<>(map);
+            } finally {
+                snapshotLock.writeLock().unlock();
+            }
+            // Writers continue while the snapshot is written
+            File tmp = DictionaryFiles.sibling(dictFile, ".tmp");
+            DictionaryFiles.write(tmp, snapshot.entrySet(), format);
+            DictionaryFiles.replace(tmp, dictFile);
+        }
+    }
+
+    @Override
+    public String get(Object key) {
+        return map.get(key);
+    }
+
+    @Override
+    public String put(String key, String value) {
+        snapshotLock.readLock().lock();
+        try {
+            String old = map.put(key, value);
+            if (old == null) {
+                size.incrementAndGet();
+            }
+            return old;
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return map.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public String remove(Object key) {
+        snapshotLock.readLock().lock();
+        try {
+            String old = map.remove(key);
+            if (old != null) {
+                size.decrementAndGet();
+            }
+            return old;
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        snapshotLock.writeLock().lock();
+        try {
+            map.clear();
+            size.set(0);
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> range(String from, String to) {
+        return DictionaryIterators.range(map, from, to);
+    }
+}
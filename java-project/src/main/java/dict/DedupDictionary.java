@@ -0,0 +1,126 @@
+package dict;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Implements a persistent dictionary, held in memory, that stores each distinct definition once, for data where
+ * many words share a definition (or have empty ones).
+ * <p>
+ * Definitions are interned in a reference-counted pool: entries with equal definitions share one String, and a
+ * definition is dropped from the pool when no entry uses it anymore. The file is written by default in the
+ * deduplicated format ({@link DictionaryFormat#DEDUP}), where each distinct definition is also stored once and
+ * referred to by id. Files in any format are read, and their definitions are interned as they are read.
+ * <p>
+ * Like {@link InMemoryDictionary}, the whole dictionary is read by {@link #open()} and written by
+ * {@link #close()}, only if it changed.
+ */
+public class DedupDictionary implements PersistentDictionary {
+    private final File dictFile;
+    private final DictionaryFormat format;
+
+    private final TreeMap<String, String> entries = new TreeMap<>();
+    private final ValuePool pool = new ValuePool();
+    private boolean changed; // since the last open() or close()
+
+    public DedupDictionary(File dictFile) {
+        this(dictFile, DictionaryFormat.DEDUP);
+    }
+
+    /**
+     * @param dictFile the dictionary file
+     * @param format   the format {@link #close()} writes the file in
+     */
+    public DedupDictionary(File dictFile, DictionaryFormat format) {
+        // Throw exception if the file or format is null
+        if (dictFile == null) {
+            throw new IllegalArgumentException("Dictionary file cannot be null.");
+        }
+        if (format == null) {
+            throw new IllegalArgumentException("Dictionary format cannot be null.");
+        }
+        this.dictFile = dictFile;
+        this.format = format;
+    }
+
+    @Override
+    public void open() throws IOException {
+        entries.clear();
+        pool.clear();
+        // Read the file in whichever format it is (a missing file is an empty dictionary)
+        DictionaryFiles.read(dictFile, this::put);
+        // Nothing needs to be written until something changes, unless the file is in another format
+        changed = dictFile.exists() && DictionaryFiles.formatOf(dictFile) != format;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!changed) {
+            // Nothing to write
+            return;
+        }
+        // Write the entries in key order
+        DictionaryFiles.write(dictFile, entries.entrySet(), format);
+        changed = false;
+    }
+
+    /**
+     * @return the number of distinct definitions
+     */
+    public int distinctValues() {
+        return pool.size();
+    }
+
+    @Override
+    public String get(Object key) {
+        return entries.get(Objects.requireNonNull(key));
+    }
+
+    @Override
+    public String put(String key, String value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value, "Definitions cannot be null");
+        String old = entries.put(key, pool.acquire(value));
+        if (old != null) {
+            pool.release(old);
+        }
+        changed = true;
+        return old;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return entries.containsKey(Objects.requireNonNull(key));
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public String remove(Object key) {
+        String old = entries.remove(Objects.requireNonNull(key));
+        if (old != null) {
+            pool.release(old);
+            changed = true;
+        }
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        changed |= !entries.isEmpty();
+        entries.clear();
+        pool.clear();
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> range(String from, String to) {
+        return DictionaryIterators.range(entries, from, to);
+    }
+}
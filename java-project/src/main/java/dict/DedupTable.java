@@ -0,0 +1,242 @@
+package dict;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The deduplicated dictionary file format: like {@link SortedTable}, but each distinct definition is stored once
+ * and the other entries with the same definition refer to it by id, so dictionaries where many words share
+ * definitions (including empty ones) take much less space.
+ * <p>
+ * Layout (lengths and ids are unsigned varints, fixed-size numbers are big-endian):
+ * <pre>
+ * header:  4 bytes magic (0x00 'D' 'D' 'P'), 1 byte version
+ * entries: keyLength, key, ref  -- sorted by key
+ *          ref == 0: a new definition follows (valueLength, value), whose id is the number of earlier ones
+ *          ref == id + 1: the definition with that id
+ * trailer: long entryCount, long valueCount, int CRC32 of everything before the trailer, int magic
+ * </pre>
+ * Definitions are given ids in the order they first appear, so the file is written in one pass, and a reader
+ * keeps one String per id: the entries it returns share their definition Strings. The format holds complete
+ * dictionaries only; it has no delete markers.
+ */
+final class DedupTable {
+    static final int MAGIC = 0x00444450; // "\0DDP"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 5;
+    static final int TRAILER_SIZE = 24;
+
+    private DedupTable() {
+    }
+
+    /**
+     * Check whether the file starts with the deduplicated format's magic number.
+     */
+    static boolean isTable(File file) throws IOException {
+        if (!file.exists() || file.length() < HEADER_SIZE + TRAILER_SIZE) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        }
+    }
+
+    /**
+     * Writes a table from entries given in strictly ascending key order.
+     */
+    static class Writer implements Closeable {
+        private final CheckedOutputStream checked;
+        private final DataOutputStream out;
+        private final HashMap<String, Integer> ids = new HashMap<>();
+        private long count;
+        private String lastKey;
+
+        Writer(File file) throws IOException {
+            checked = new CheckedOutputStream(new FileOutputStream(file), new CRC32());
+            out = new DataOutputStream(new BufferedOutputStream(checked, 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+        }
+
+        /**
+         * Append an entry.
+         *
+         * @param key   the word; must be greater than the previous word
+         * @param value the definition
+         */
+        void add(String key, String value) throws IOException {
+            if (value == null) {
+                throw new IllegalArgumentException("The deduplicated format can't hold delete markers.");
+            }
+            if (lastKey != null && lastKey.compareTo(key) >= 0) {
+                throw new IllegalArgumentException("Keys must be added in ascending order: '" + key + "' after '" + lastKey + "'");
+            }
+            lastKey = key;
+            SortedTable.writeBytes(out, key.getBytes(StandardCharsets.UTF_8));
+            Integer id = ids.get(value);
+            if (id != null) {
+                SortedTable.writeVarLong(out, id + 1L);
+            } else {
+                ids.put(value, ids.size());
+                SortedTable.writeVarLong(out, 0);
+                SortedTable.writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+            }
+            count++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.flush();
+                // The checksum covers everything before the trailer
+                int crc = (int) checked.getChecksum().getValue();
+                out.writeLong(count);
+                out.writeLong(ids.size());
+                out.writeInt(crc);
+                out.writeInt(MAGIC);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Reads a table sequentially, verifying the checksum at the end.
+     */
+    static class Reader implements Closeable, Iterable<Map.Entry<String, String>> {
+        private final File file;
+        private final long entryCount;
+        private final long valueCount;
+        private final int crc;
+        private final List<Closeable> open = new ArrayList<>();
+
+        Reader(File file) throws IOException {
+            this.file = file;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                if (raf.length() < HEADER_SIZE + TRAILER_SIZE || raf.readInt() != MAGIC) {
+                    throw new IOException(file + " is not a deduplicated dictionary file");
+                }
+                int version = raf.readUnsignedByte();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported deduplicated dictionary file version " + version);
+                }
+                raf.seek(raf.length() - TRAILER_SIZE);
+                entryCount = raf.readLong();
+                valueCount = raf.readLong();
+                crc = raf.readInt();
+                if (raf.readInt() != MAGIC) {
+                    throw new IOException("Deduplicated dictionary file " + file + " is truncated");
+                }
+            }
+        }
+
+        /**
+         * @return the number of entries
+         */
+        long size() {
+            return entryCount;
+        }
+
+        /**
+         * @return the number of distinct definitions
+         */
+        long valueCount() {
+            return valueCount;
+        }
+
+        /**
+         * @return the entries in key order; a checksum mismatch is thrown as an {@link UncheckedIOException}
+         * by the last {@code next()}
+         */
+        @Override
+        public Iterator<Map.Entry<String, String>> iterator() {
+            try {
+                return new EntryIterator();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read deduplicated dictionary file " + file, e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (Closeable closeable : open) {
+                closeable.close();
+            }
+            open.clear();
+        }
+
+        private class EntryIterator implements Iterator<Map.Entry<String, String>> {
+            private final CheckedInputStream checked;
+            private final DataInputStream in;
+            private final List<String> values = new ArrayList<>();
+            private long remaining = entryCount;
+
+            EntryIterator() throws IOException {
+                // The checksum covers everything up to the trailer
+                InputStream body = new SortedTable.BoundedInputStream(new FileInputStream(file),
+                        file.length() - TRAILER_SIZE);
+                checked = new CheckedInputStream(body, new CRC32());
+                in = new DataInputStream(new BufferedInputStream(checked, 1 << 16));
+                open.add(in);
+                in.skipBytes(HEADER_SIZE);
+                if (remaining == 0) {
+                    verify();
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+                if (remaining == 0) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    String key = new String(SortedTable.readBytes(in), StandardCharsets.UTF_8);
+                    long ref = SortedTable.readVarLong(in);
+                    String value;
+                    if (ref == 0) {
+                        value = new String(SortedTable.readBytes(in), StandardCharsets.UTF_8);
+                        values.add(value);
+                    } else if (ref <= values.size()) {
+                        value = values.get((int) (ref - 1));
+                    } else {
+                        throw new IOException("Definition id " + (ref - 1) + " before its definition");
+                    }
+                    if (--remaining == 0) {
+                        verify();
+                    }
+                    return new AbstractMap.SimpleImmutableEntry<>(key, value);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not read deduplicated dictionary file " + file, e);
+                }
+            }
+
+            private void verify() throws IOException {
+                // Run the rest of the body through the checksum too, then compare with the trailer
+                byte[] skip = new byte[8192];
+                while (in.read(skip) >= 0) {
+                    // keep reading
+                }
+                int actual = (int) checked.getChecksum().getValue();
+                in.close();
+                if (actual != crc || values.size() != valueCount) {
+                    throw new IOException("Checksum mismatch in deduplicated dictionary file " + file);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package dict;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * A persistent dictionary served by a {@link DictionaryServer}: {@link #open()} connects to the server and
+ * {@link #close()} disconnects, and every other method is a request to the server.
+ * <p>
+ * Requests are pipelined: the async methods send a request and return at once, without waiting for the
+ * responses of the requests before it, and a background thread reads the responses (which come in the order
+ * of the requests) and completes their futures. The other methods wait for their response, but other threads
+ * may send requests meanwhile. {@link #getAll(List)} looks up many words in a single request.
+ * <p>
+ * {@link #range(String, String)} fetches its entries in pages of {@link #RANGE_PAGE} entries as it advances.
+ * Exceptions thrown by the served dictionary are thrown by the client (as an {@link IllegalStateException}
+ * unless they are one of the exceptions of the {@link PersistentDictionary} methods), and connection errors
+ * are thrown as {@link UncheckedIOException}s.
+ * <p>
+ * All methods are thread-safe.
+ */
+public class DictionaryClient implements PersistentDictionary {
+    /**
+     * The number of entries of a range fetched by each request.
+     */
+    public static final int RANGE_PAGE = 1024;
+
+    /**
+     * Writes the arguments of a request.
+     */
+    private interface Encoder {
+        void encode(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Reads the result of a response.
+     */
+    private interface Decoder<T> {
+        T decode(DataInputStream in) throws IOException;
+    }
+
+    /**
+     * A request waiting for its response.
+     */
+    private static class Pending<T> {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final Decoder<T> decoder;
+
+        Pending(Decoder<T> decoder) {
+            this.decoder = decoder;
+        }
+
+        void complete(DataInputStream in) throws IOException {
+            if (in.readByte() == DictionaryProtocol.OK) {
+                future.complete(decoder.decode(in));
+            } else {
+                future.completeExceptionally(remoteException(DictionaryProtocol.readString(in),
+                        DictionaryProtocol.readString(in)));
+            }
+        }
+    }
+
+    private final InetAddress host;
+    private final int port;
+
+    // Guards the connection state; never held during socket I/O, since the reader thread needs it too
+    private final Object lock = new Object();
+    // Guards writing: requests are added to pending and written in the same order, the order of the responses
+    private final Object writeLock = new Object();
+    private final ConcurrentLinkedDeque<Pending<?>> pending = new ConcurrentLinkedDeque<>();
+    private Socket socket;
+    private DataOutputStream out;
+    private Thread reader;
+    private IOException failure; // why the connection broke, or null
+
+    /**
+     * A client of a server on this machine.
+     *
+     * @param port the port of the server
+     */
+    public DictionaryClient(int port) {
+        this(InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * @param host the host of the server
+     * @param port the port of the server
+     */
+    public DictionaryClient(InetAddress host, int port) {
+        // Throw exception if the host is null
+        if (host == null) {
+            throw new IllegalArgumentException("Host cannot be null.");
+        }
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Connect to the server.
+     *
+     * @throws IOException if the server can't be reached
+     */
+    @Override
+    public void open() throws IOException {
+        close();
+        Socket socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+        synchronized (lock) {
+            this.socket = socket;
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            failure = null;
+            reader = new Thread(() -> readResponses(socket, in), "dictionary-client-" + port);
+            reader.setDaemon(true);
+            reader.start();
+        }
+    }
+
+    /**
+     * Wait for the responses of the requests sent so far, and disconnect.
+     */
+    @Override
+    public void close() throws IOException {
+        Socket socket;
+        Thread reader;
+        Pending<?> last;
+        synchronized (lock) {
+            socket = this.socket;
+            reader = this.reader;
+            last = pending.peekLast();
+            // No more requests
+            this.socket = null;
+        }
+        if (socket == null) {
+            return;
+        }
+        if (last != null) {
+            try {
+                last.future.handle((result, error) -> null).join();
+            } catch (CompletionException e) {
+                // Disconnecting anyway
+            }
+        }
+        socket.close();
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while disconnecting from the dictionary server");
+        }
+    }
+
+    /**
+     * Look up a word without waiting for the response.
+     *
+     * @return a future of the definition, or of null if the word is not in the dictionary
+     */
+    public CompletableFuture<String> getAsync(String key) {
+        Objects.requireNonNull(key);
+        return send(DictionaryProtocol.GET, out -> DictionaryProtocol.writeString(out, key),
+                DictionaryProtocol::readString);
+    }
+
+    /**
+     * Set the definition of a word without waiting for the response.
+     *
+     * @return a future of the previous definition, or of null
+     */
+    public CompletableFuture<String> putAsync(String key, String value) {
+        Objects.requireNonNull(key);
+        return send(DictionaryProtocol.PUT, out -> {
+            DictionaryProtocol.writeString(out, key);
+            DictionaryProtocol.writeString(out, value);
+        }, DictionaryProtocol::readString);
+    }
+
+    /**
+     * Remove a word without waiting for the response.
+     *
+     * @return a future of the removed definition, or of null
+     */
+    public CompletableFuture<String> removeAsync(String key) {
+        Objects.requireNonNull(key);
+        return send(DictionaryProtocol.REMOVE, out -> DictionaryProtocol.writeString(out, key),
+                DictionaryProtocol::readString);
+    }
+
+    /**
+     * Look up many words in a single request, without waiting for the response.
+     *
+     * @return a future of the definitions, in the order of the words (null for words not in the dictionary)
+     */
+    public CompletableFuture<List<String>> getAllAsync(Collection<String> keys) {
+        List<String> words = new ArrayList<>(keys);
+        for (String word : words) {
+            Objects.requireNonNull(word);
+        }
+        return send(DictionaryProtocol.MULTI_GET, out -> {
+            out.writeInt(words.size());
+            for (String word : words) {
+                DictionaryProtocol.writeString(out, word);
+            }
+        }, in -> {
+            int n = in.readInt();
+            List<String> values = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                values.add(DictionaryProtocol.readString(in));
+            }
+            return values;
+        });
+    }
+
+    /**
+     * Look up many words in a single request.
+     *
+     * @return the definitions, in the order of the words (null for words not in the dictionary)
+     */
+    public List<String> getAll(List<String> keys) {
+        return await(getAllAsync(keys));
+    }
+
+    @Override
+    public String get(Object key) {
+        return await(getAsync((String) key));
+    }
+
+    @Override
+    public String put(String key, String value) {
+        return await(putAsync(key, value));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        String word = (String) Objects.requireNonNull(key);
+        return await(send(DictionaryProtocol.CONTAINS, out -> DictionaryProtocol.writeString(out, word),
+                in -> in.readByte() != 0));
+    }
+
+    @Override
+    public int size() {
+        return await(send(DictionaryProtocol.SIZE, out -> {
+        }, DataInputStream::readInt));
+    }
+
+    @Override
+    public String remove(Object key) {
+        return await(removeAsync((String) key));
+    }
+
+    @Override
+    public void clear() {
+        await(send(DictionaryProtocol.CLEAR, out -> {
+        }, in -> null));
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> range(String from, String to) {
+        return new RangeIterator(from, to, RANGE_PAGE);
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> prefixScan(String prefix, int limit) {
+        // Don't fetch a whole page for a few entries
+        int page = Math.max(1, Math.min(limit, RANGE_PAGE));
+        return DictionaryIterators.limit(new RangeIterator(prefix, DictionaryIterators.prefixEnd(prefix), page),
+                limit);
+    }
+
+    /**
+     * Fetches the entries of a range a page at a time.
+     */
+    private class RangeIterator implements Iterator<Map.Entry<String, String>> {
+        private final String to;
+        private final int page;
+        private String from; // the first key of the next page
+        private List<Map.Entry<String, String>> entries = new ArrayList<>();
+        private int position;
+        private boolean last; // if true, there are no more pages
+
+        RangeIterator(String from, String to, int page) {
+            this.from = from;
+            this.to = to;
+            this.page = page;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (position == entries.size() && !last) {
+                fetch();
+            }
+            return position < entries.size();
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return entries.get(position++);
+        }
+
+        private void fetch() {
+            String start = from;
+            entries = await(send(DictionaryProtocol.RANGE, out -> {
+                DictionaryProtocol.writeString(out, start);
+                DictionaryProtocol.writeString(out, to);
+                out.writeInt(page);
+            }, in -> {
+                int n = in.readInt();
+                List<Map.Entry<String, String>> result = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) {
+                    String key = DictionaryProtocol.readString(in);
+                    result.add(new AbstractMap.SimpleImmutableEntry<>(key, DictionaryProtocol.readString(in)));
+                }
+                return result;
+            }));
+            position = 0;
+            last = entries.size() < page;
+            if (!entries.isEmpty()) {
+                // The smallest key after the last one
+                from = entries.get(entries.size() - 1).getKey() + '\0';
+            }
+        }
+    }
+
+    /**
+     * Send a request, to be completed by the reader thread when its response arrives.
+     */
+    private <T> CompletableFuture<T> send(byte op, Encoder encoder, Decoder<T> decoder) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream frame = new DataOutputStream(bytes);
+        Pending<T> request = new Pending<>(decoder);
+        try {
+            frame.writeByte(op);
+            encoder.encode(frame);
+        } catch (IOException e) {
+            request.future.completeExceptionally(e);
+            return request.future;
+        }
+        synchronized (writeLock) {
+            Socket socket;
+            DataOutputStream out;
+            synchronized (lock) {
+                if (this.socket == null) {
+                    request.future.completeExceptionally(
+                            failure != null ? failure : new IOException("The dictionary client is not open"));
+                    return request.future;
+                }
+                socket = this.socket;
+                out = this.out;
+                // Added before the reader thread can fail the pending requests, or after it has
+                pending.add(request);
+            }
+            // The write may block until the server reads, which waits for the reader thread to take responses,
+            // so only the write lock is held here
+            try {
+                out.writeInt(bytes.size());
+                bytes.writeTo(out);
+                out.flush();
+            } catch (IOException e) {
+                // The stream may hold part of a frame: the reader thread fails this and the other requests
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                    // Closing anyway
+                }
+            }
+        }
+        return request.future;
+    }
+
+    private void readResponses(Socket socket, DataInputStream in) {
+        IOException error = null;
+        try {
+            while (true) {
+                int length = in.readInt();
+                if (length < 1 || length > DictionaryProtocol.MAX_FRAME) {
+                    throw new IOException("Bad frame length " + length);
+                }
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                Pending<?> request = pending.poll();
+                if (request == null) {
+                    throw new IOException("Response without a request");
+                }
+                request.complete(new DataInputStream(new ByteArrayInputStream(frame)));
+            }
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            // Fail the requests that won't be answered
+            synchronized (lock) {
+                IOException cause = new IOException("Connection to the dictionary server lost", error);
+                if (this.socket == socket) {
+                    failure = cause;
+                    this.socket = null;
+                }
+                for (Pending<?> request; (request = pending.poll()) != null; ) {
+                    request.future.completeExceptionally(cause);
+                }
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+
+    /**
+     * Wait for a response, throwing its exception.
+     */
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw new UncheckedIOException((IOException) cause);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The exception to throw for an exception of the served dictionary.
+     */
+    private static RuntimeException remoteException(String className, String message) {
+        if (UnsupportedOperationException.class.getName().equals(className)) {
+            return new UnsupportedOperationException(message);
+        }
+        if (IllegalArgumentException.class.getName().equals(className)) {
+            return new IllegalArgumentException(message);
+        }
+        if (NullPointerException.class.getName().equals(className)) {
+            return new NullPointerException(message);
+        }
+        if (ClassCastException.class.getName().equals(className)) {
+            return new ClassCastException(message);
+        }
+        return new IllegalStateException("Dictionary server error: " + className + ": " + message);
+    }
+}
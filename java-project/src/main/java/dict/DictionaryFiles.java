@@ -0,0 +1,195 @@
+package dict;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Helpers for reading and writing whole dictionary files.
+ * <p>
+ * The text format has one keyword per line:
+ * <pre>word:def</pre>
+ * (the same format {@link InMemoryDictionary} has always used).
+ * The binary format is described in {@link SortedTable}, and the deduplicated format in {@link DedupTable}.
+ */
+final class DictionaryFiles {
+
+    private DictionaryFiles() {
+    }
+
+    /**
+     * Detect the format of an existing dictionary file.
+     *
+     * @return the format of the file; {@link DictionaryFormat#TEXT} for a missing file
+     * @throws IOException
+     */
+    static DictionaryFormat formatOf(File file) throws IOException {
+        if (SortedTable.isTable(file)) {
+            return DictionaryFormat.BINARY;
+        }
+        return DedupTable.isTable(file) ? DictionaryFormat.DEDUP : DictionaryFormat.TEXT;
+    }
+
+    /**
+     * Read every entry of a dictionary file in any format.
+     * A missing file is treated as an empty dictionary. Delete markers in binary files are skipped.
+     *
+     * @param file     the file to read
+     * @param consumer receives each (word, definition) pair
+     * @throws IOException
+     */
+    static void read(File file, BiConsumer<String, String> consumer) throws IOException {
+        DictionaryFormat format = formatOf(file);
+        if (format == DictionaryFormat.TEXT) {
+            readText(file, consumer);
+            return;
+        }
+        if (format == DictionaryFormat.DEDUP) {
+            try (DedupTable.Reader reader = new DedupTable.Reader(file)) {
+                for (Map.Entry<String, String> entry : reader) {
+                    consumer.accept(entry.getKey(), entry.getValue());
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return;
+        }
+        try (SortedTable.Reader reader = new SortedTable.Reader(file)) {
+            for (Map.Entry<String, String> entry : reader) {
+                if (entry.getValue() != null) {
+                    consumer.accept(entry.getKey(), entry.getValue());
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Write the entries to a dictionary file, replacing its previous contents.
+     *
+     * @param file    the file to write
+     * @param entries the entries to write; must be sorted by key for the binary formats
+     * @param format  the format to write
+     * @return the number of bytes written
+     * @throws IOException
+     */
+    static long write(File file, Iterable<? extends Map.Entry<String, String>> entries, DictionaryFormat format)
+            throws IOException {
+        if (format == DictionaryFormat.TEXT) {
+            return writeText(file, entries);
+        }
+        if (format == DictionaryFormat.DEDUP) {
+            try (DedupTable.Writer writer = new DedupTable.Writer(file)) {
+                for (Map.Entry<String, String> entry : entries) {
+                    writer.add(entry.getKey(), entry.getValue());
+                }
+            }
+            return file.length();
+        }
+        try (SortedTable.Writer writer = new SortedTable.Writer(file)) {
+            for (Map.Entry<String, String> entry : entries) {
+                writer.add(entry.getKey(), entry.getValue());
+            }
+        }
+        return file.length();
+    }
+
+    /**
+     * Read every entry of a text dictionary file, in file order.
+     * A missing file is treated as an empty dictionary.
+     *
+     * @param file     the file to read
+     * @param consumer receives each (word, definition) pair
+     * @throws IOException
+     */
+    static void readText(File file, BiConsumer<String, String> consumer) throws IOException {
+        // Check if the file exists; if not, no action is needed
+        if (!file.exists()) {
+            return;
+        }
+        // Read the file line by line
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Split the line into key (word) and value (definition) at the first ':'
+                int sep = line.indexOf(':');
+                if (sep < 0) {
+                    consumer.accept(line, "");
+                } else {
+                    consumer.accept(line.substring(0, sep), line.substring(sep + 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the entries to a text dictionary file, replacing its previous contents.
+     *
+     * @param file    the file to write
+     * @param entries the entries to write
+     * @return the number of bytes written
+     * @throws IOException
+     */
+    static long writeText(File file, Iterable<? extends Map.Entry<String, String>> entries) throws IOException {
+        // Write to the file line by line
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, false))) {
+            for (Map.Entry<String, String> entry : entries) {
+                // Combine the key (word) and value (definition) to a line with a : separator
+                String line = entry.getKey() + ":" + entry.getValue();
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+        // The encoded length, which the characters written don't give
+        return file.length();
+    }
+
+    /**
+     * Return a sibling of the dictionary file with the given suffix appended to its name
+     * (used for logs, temporary files and other files that belong to the dictionary).
+     */
+    static File sibling(File dictFile, String suffix) {
+        return new File(dictFile.getPath() + suffix);
+    }
+
+    /**
+     * Return the dictionary file and its siblings (see {@link #sibling(File, String)}) that exist.
+     */
+    static List<File> family(File dictFile) {
+        List<File> files = new ArrayList<>();
+        File dir = dictFile.getAbsoluteFile().getParentFile();
+        String prefix = dictFile.getName() + ".";
+        File[] candidates = dir == null ? null : dir.listFiles();
+        if (candidates != null) {
+            for (File file : candidates) {
+                if (file.isFile() && (file.getName().equals(dictFile.getName()) || file.getName().startsWith(prefix))) {
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Move a fully written temporary file over the target, atomically when the file system supports it.
+     * Readers of the target see either the old contents or the new contents, never a mix.
+     *
+     * @param source the temporary file
+     * @param target the file to replace
+     * @throws IOException
+     */
+    static void replace(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package dict;
+
+/**
+ * On-disk formats for dictionary files.
+ * Readers detect the format of an existing file, so a dictionary can be switched from one format to the other
+ * by opening it and closing it with the new format.
+ */
+public enum DictionaryFormat {
+    /**
+     * One <pre>word:def</pre> entry per line. Words can't contain ':' or line breaks.
+     */
+    TEXT,
+    /**
+     * A sorted binary table of length-prefixed UTF-8 entries, with a sparse key index and a checksum
+     * (see {@link SortedTable}). Any word can be stored.
+     */
+    BINARY,
+    /**
+     * Like {@link #BINARY}, but each distinct definition is stored once and referred to by id
+     * (see {@link DedupTable}), for dictionaries where many words share definitions.
+     */
+    DEDUP
+}
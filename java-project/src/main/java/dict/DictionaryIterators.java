@@ -0,0 +1,113 @@
+package dict;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+
+/**
+ * Helpers for the ordered scans of {@link PersistentDictionary}.
+ */
+final class DictionaryIterators {
+
+    private DictionaryIterators() {
+    }
+
+    /**
+     * The smallest string that is greater than every string starting with the prefix,
+     * or null if there is none (the prefix is empty or only has {@link Character#MAX_VALUE} characters).
+     */
+    static String prefixEnd(String prefix) {
+        int end = prefix.length();
+        while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) {
+            end--;
+        }
+        if (end == 0) {
+            return null;
+        }
+        return prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1);
+    }
+
+    /**
+     * A view of the entries of a sorted map with keys between from (inclusive) and to (exclusive);
+     * a null bound is open.
+     */
+    static Iterator<Map.Entry<String, String>> range(NavigableMap<String, String> map, String from, String to) {
+        if (from != null && to != null && from.compareTo(to) >= 0) {
+            return Collections.emptyIterator();
+        }
+        NavigableMap<String, String> view = map;
+        if (from != null) {
+            view = view.tailMap(from, true);
+        }
+        if (to != null) {
+            view = view.headMap(to, false);
+        }
+        return view.entrySet().iterator();
+    }
+
+    /**
+     * Return at most limit entries of the iterator.
+     */
+    static <T> Iterator<T> limit(Iterator<T> it, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit cannot be negative.");
+        }
+        return new Iterator<T>() {
+            private int remaining = limit;
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0 && it.hasNext();
+            }
+
+            @Override
+            public T next() {
+                if (remaining <= 0) {
+                    throw new NoSuchElementException();
+                }
+                remaining--;
+                return it.next();
+            }
+        };
+    }
+
+    /**
+     * Skip entries with null values (delete markers), and stop before the first key that is not less than to
+     * (a null to never stops).
+     */
+    static Iterator<Map.Entry<String, String>> live(Iterator<Map.Entry<String, String>> it, String to) {
+        return new Iterator<Map.Entry<String, String>>() {
+            private Map.Entry<String, String> next = advance();
+
+            private Map.Entry<String, String> advance() {
+                while (it.hasNext()) {
+                    Map.Entry<String, String> entry = it.next();
+                    if (to != null && entry.getKey().compareTo(to) >= 0) {
+                        return null;
+                    }
+                    if (entry.getValue() != null) {
+                        return entry;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<String, String> result = next;
+                next = advance();
+                return result;
+            }
+        };
+    }
+}
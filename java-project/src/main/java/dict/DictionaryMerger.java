@@ -0,0 +1,217 @@
+package dict;
+
+import java.io.*;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Merges sorted dictionary files into a new one, streaming: the inputs are read sequentially, one entry of each
+ * at a time, and the output is written as the merge goes, so the dictionaries are never loaded into memory.
+ * The deduplicated format is the exception: reading or writing it keeps every distinct definition of the file
+ * in memory (each is stored once and referred to by id), so merges with deduplicated inputs or output take
+ * memory in proportion to their distinct definitions, though not to their words.
+ * <p>
+ * The inputs are given oldest first (for example a base dictionary and then deltas); when a word is in more
+ * than one input, the definition of the newest wins (last writer wins). Inputs may be in the binary format,
+ * whose delete markers remove the word from the older inputs, in the deduplicated format, or in the text
+ * format, whose lines must be in String order of the words (as {@link InMemoryDictionary} writes them).
+ * A missing input is an empty dictionary.
+ * <p>
+ * The output is written to a temporary file that then replaces it, so it may also be one of the inputs.
+ * <p>
+ * Usage: <code>java dict.DictionaryMerger [--dedup | --binary [--keep-delete-markers]] &lt;output&gt;
+ * &lt;oldest input&gt; ... &lt;newest input&gt;</code>
+ */
+public final class DictionaryMerger {
+
+    private DictionaryMerger() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> list = new ArrayList<>(Arrays.asList(args));
+        DictionaryFormat format = list.remove("--binary") ? DictionaryFormat.BINARY
+                : list.remove("--dedup") ? DictionaryFormat.DEDUP : DictionaryFormat.TEXT;
+        boolean keepDeleteMarkers = list.remove("--keep-delete-markers");
+        if (list.size() < 2 || (keepDeleteMarkers && format != DictionaryFormat.BINARY)) {
+            System.err.println("Usage: java dict.DictionaryMerger [--dedup | --binary [--keep-delete-markers]] "
+                    + "<output> <oldest input> ... <newest input>");
+            System.exit(2);
+        }
+        List<File> inputs = new ArrayList<>();
+        for (String name : list.subList(1, list.size())) {
+            inputs.add(new File(name));
+        }
+        long words = merge(inputs, new File(list.get(0)), format, keepDeleteMarkers);
+        System.out.printf("Merged %d files into %s (%d entries)%n", inputs.size(), list.get(0), words);
+    }
+
+    /**
+     * Merge dictionary files into a complete dictionary: delete markers remove words and are not written.
+     * Deduplicated inputs, and a deduplicated output, keep their distinct definitions in memory.
+     *
+     * @param inputs the files to merge, oldest first
+     * @param output the file to write
+     * @param format the format of the output
+     * @return the number of words written
+     * @throws IOException if an input can't be read, or a text input is not sorted
+     */
+    public static long merge(List<File> inputs, File output, DictionaryFormat format) throws IOException {
+        return merge(inputs, output, format, false);
+    }
+
+    /**
+     * Merge dictionary files.
+     *
+     * @param inputs            the files to merge, oldest first
+     * @param output            the file to write
+     * @param format            the format of the output
+     * @param keepDeleteMarkers if true, the delete markers of the newest inputs are written too, so the output
+     *                          can be merged as a delta into an older dictionary (binary format only)
+     * @return the number of entries written
+     * @throws IOException if an input can't be read, or a text input is not sorted
+     */
+    public static long merge(List<File> inputs, File output, DictionaryFormat format, boolean keepDeleteMarkers)
+            throws IOException {
+        if (keepDeleteMarkers && format != DictionaryFormat.BINARY) {
+            throw new IllegalArgumentException("Only the binary format can hold delete markers.");
+        }
+        List<Closeable> open = new ArrayList<>();
+        File tmp = DictionaryFiles.sibling(output, ".tmp");
+        try {
+            // Newest first, for the merge
+            List<Iterator<Map.Entry<String, String>>> sources = new ArrayList<>();
+            for (int i = inputs.size() - 1; i >= 0; i--) {
+                sources.add(source(inputs.get(i), open));
+            }
+            Iterator<Map.Entry<String, String>> merged = new MergingIterator(sources);
+            if (!keepDeleteMarkers) {
+                merged = DictionaryIterators.live(merged, null);
+            }
+            long[] count = new long[1];
+            Iterator<Map.Entry<String, String>> entries = merged;
+            DictionaryFiles.write(tmp, () -> new Iterator<Map.Entry<String, String>>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public Map.Entry<String, String> next() {
+                    count[0]++;
+                    return entries.next();
+                }
+            }, format);
+            DictionaryFiles.replace(tmp, output);
+            return count[0];
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            tmp.delete();
+            for (Closeable closeable : open) {
+                closeable.close();
+            }
+        }
+    }
+
+    /**
+     * @param open receives what must be closed after the merge
+     * @return the entries of a dictionary file, in key order
+     */
+    private static Iterator<Map.Entry<String, String>> source(File file, List<Closeable> open) throws IOException {
+        if (SortedTable.isTable(file)) {
+            SortedTable.Reader reader = new SortedTable.Reader(file);
+            open.add(reader);
+            return reader.iterator();
+        }
+        if (DedupTable.isTable(file)) {
+            DedupTable.Reader reader = new DedupTable.Reader(file);
+            open.add(reader);
+            return reader.iterator();
+        }
+        if (!file.exists()) {
+            return Collections.emptyIterator();
+        }
+        BufferedReader reader = new BufferedReader(new FileReader(file), 1 << 16);
+        open.add(reader);
+        return new TextIterator(file, reader);
+    }
+
+    /**
+     * Reads the lines of a sorted text dictionary file as entries. A word on consecutive lines gets the
+     * definition of its last line, as when the file is loaded into a map.
+     */
+    private static class TextIterator implements Iterator<Map.Entry<String, String>> {
+        private final File file;
+        private final BufferedReader reader;
+        private Map.Entry<String, String> next; // the next entry, or null at the end
+        private Map.Entry<String, String> pending; // the entry after it, or null
+
+        TextIterator(File file, BufferedReader reader) {
+            this.file = file;
+            this.reader = reader;
+            pending = readLine();
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, String> result = next;
+            advance();
+            return result;
+        }
+
+        /**
+         * Move the pending entry to next, skipping to the last line of its word.
+         */
+        private void advance() {
+            next = pending;
+            if (next == null) {
+                return;
+            }
+            while (true) {
+                pending = readLine();
+                if (pending == null) {
+                    return;
+                }
+                int cmp = pending.getKey().compareTo(next.getKey());
+                if (cmp > 0) {
+                    return;
+                }
+                if (cmp < 0) {
+                    throw new UncheckedIOException(new IOException("Text dictionary file " + file
+                            + " is not sorted: '" + pending.getKey() + "' after '" + next.getKey() + "'"));
+                }
+                next = pending;
+            }
+        }
+
+        private Map.Entry<String, String> readLine() {
+            try {
+                String line = reader.readLine();
+                if (line == null) {
+                    return null;
+                }
+                // Split the line into key (word) and value (definition) at the first ':', like readText
+                int sep = line.indexOf(':');
+                return sep < 0 ? new AbstractMap.SimpleImmutableEntry<>(line, "")
+                        : new AbstractMap.SimpleImmutableEntry<>(line.substring(0, sep), line.substring(sep + 1));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read text dictionary file " + file, e);
+            }
+        }
+    }
+}
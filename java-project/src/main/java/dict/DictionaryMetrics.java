@@ -0,0 +1,82 @@
+package dict;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Operation counts, latencies and I/O volume of a dictionary, as recorded by {@link InstrumentedDictionary}.
+ * All methods are thread-safe.
+ */
+public class DictionaryMetrics implements DictionaryMetricsMXBean {
+    final LatencyHistogram get = new LatencyHistogram();
+    final LatencyHistogram put = new LatencyHistogram();
+    final LatencyHistogram remove = new LatencyHistogram();
+    final LatencyHistogram open = new LatencyHistogram();
+    final LatencyHistogram close = new LatencyHistogram();
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder bytesRead = new LongAdder();
+    final LongAdder bytesWritten = new LongAdder();
+    final AtomicLong entries = new AtomicLong();
+
+    @Override
+    public LatencyHistogram.Snapshot getGetLatency() {
+        return get.snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getPutLatency() {
+        return put.snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getRemoveLatency() {
+        return remove.snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getOpenLatency() {
+        return open.snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getCloseLatency() {
+        return close.snapshot();
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getEntryCount() {
+        return entries.get();
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : new LatencyHistogram[]{get, put, remove, open, close}) {
+            histogram.reset();
+        }
+        hits.reset();
+        misses.reset();
+        bytesRead.reset();
+        bytesWritten.reset();
+    }
+}
@@ -0,0 +1,50 @@
+package dict;
+
+/**
+ * The JMX view of {@link DictionaryMetrics}. Latencies are in nanoseconds; bytes are counted on the
+ * dictionary's files.
+ */
+public interface DictionaryMetricsMXBean {
+    /**
+     * @return the latencies of lookups (get and containsKey)
+     */
+    LatencyHistogram.Snapshot getGetLatency();
+
+    LatencyHistogram.Snapshot getPutLatency();
+
+    LatencyHistogram.Snapshot getRemoveLatency();
+
+    LatencyHistogram.Snapshot getOpenLatency();
+
+    LatencyHistogram.Snapshot getCloseLatency();
+
+    /**
+     * @return the number of lookups that found the word
+     */
+    long getHits();
+
+    /**
+     * @return the number of lookups that didn't find the word
+     */
+    long getMisses();
+
+    /**
+     * @return the size of the files that were opened
+     */
+    long getBytesRead();
+
+    /**
+     * @return the size of the files that closing wrote
+     */
+    long getBytesWritten();
+
+    /**
+     * @return the number of words in the dictionary
+     */
+    long getEntryCount();
+
+    /**
+     * Reset the latencies and counters (but not the number of words).
+     */
+    void reset();
+}
@@ -0,0 +1,70 @@
+package dict;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The binary protocol between {@link DictionaryServer} and {@link DictionaryClient}.
+ * <p>
+ * Every message is a frame: an int length, then that many bytes. A request frame holds a byte operation code
+ * and its arguments; a response frame holds a byte status and, if it is {@link #OK}, the result (if it is
+ * {@link #ERROR}, the exception class name and message as strings). Responses come in the order of the
+ * requests, so a client may send many requests before reading their responses (pipelining).
+ * <pre>
+ * GET key                 -&gt; string       (the definition, or null)
+ * PUT key value           -&gt; string       (the previous definition, or null)
+ * REMOVE key              -&gt; string       (the removed definition, or null)
+ * CONTAINS key            -&gt; byte 0 or 1
+ * SIZE                    -&gt; int
+ * CLEAR                   -&gt; nothing
+ * MULTI_GET int n, n keys -&gt; int n, n strings
+ * RANGE from to int limit -&gt; int n, n (key, value) pairs  (from and to may be null: open bounds)
+ * </pre>
+ * Numbers are big-endian; a string is an int length (-1 for null) and UTF-8 bytes.
+ */
+final class DictionaryProtocol {
+    static final byte GET = 1;
+    static final byte PUT = 2;
+    static final byte REMOVE = 3;
+    static final byte CONTAINS = 4;
+    static final byte SIZE = 5;
+    static final byte CLEAR = 6;
+    static final byte MULTI_GET = 7;
+    static final byte RANGE = 8;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    /**
+     * Largest accepted frame, so a corrupt length can't exhaust the memory.
+     */
+    static final int MAX_FRAME = 64 << 20;
+
+    private DictionaryProtocol() {
+    }
+
+    static void writeString(DataOutput out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > MAX_FRAME) {
+            throw new IOException("String of " + length + " bytes is longer than a frame");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
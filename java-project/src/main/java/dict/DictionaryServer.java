@@ -0,0 +1,364 @@
+package dict;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serves a persistent dictionary to other processes on the same machine, over the protocol of
+ * {@link DictionaryProtocol}, so several JVMs can share one loaded dictionary through {@link DictionaryClient}.
+ * <p>
+ * The server listens on the loopback address only. A single thread runs a non-blocking selector over all the
+ * connections and executes the requests, in the order each connection sent them; every request that has
+ * fully arrived is executed before the responses are written back, so pipelined requests are answered in
+ * batches. Since one thread executes every request, dictionaries that are not thread-safe can be served;
+ * they must not be used by other threads while they are served.
+ * <p>
+ * The server does not open or close the dictionary: open it before starting the server, and close it after
+ * closing the server. A connection that reads responses slower than it sends requests is not read from while
+ * more than {@link #MAX_PENDING_OUTPUT} bytes of its responses are waiting. A connection that can't be
+ * accepted (for example when the process is out of file descriptors) is logged, and accepting pauses for
+ * {@link #ACCEPT_RETRY_MILLIS} ms while the other connections are served.
+ */
+public class DictionaryServer implements Closeable {
+    /**
+     * Bytes of responses waiting for a connection, above which its requests are not read.
+     */
+    public static final int MAX_PENDING_OUTPUT = 4 << 20;
+
+    /**
+     * Milliseconds to stop accepting connections after accepting one failed.
+     */
+    public static final int ACCEPT_RETRY_MILLIS = 100;
+
+    private static final Logger LOG = Logger.getLogger(DictionaryServer.class.getName());
+
+    private final PersistentDictionary dict;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private SelectionKey acceptKey;
+    private long acceptRetry; // when to accept again after a failure, or 0
+    private final Thread thread;
+    private volatile boolean closed;
+
+    /**
+     * Start serving the dictionary.
+     *
+     * @param dict the (open) dictionary to serve
+     * @param port the port to listen on, or 0 for any free port (see {@link #port()})
+     * @throws IOException if the port can't be bound
+     */
+    public DictionaryServer(PersistentDictionary dict, int port) throws IOException {
+        // Throw exception if the dictionary is null
+        if (dict == null) {
+            throw new IllegalArgumentException("Dictionary cannot be null.");
+        }
+        this.dict = dict;
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            serverChannel.configureBlocking(false);
+            acceptKey = serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+        thread = new Thread(this::run, "dictionary-server-" + port());
+        thread.start();
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int port() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Stop serving: close the connections and wait for the server thread to end.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while stopping the dictionary server");
+        }
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                if (acceptRetry != 0 && System.currentTimeMillis() >= acceptRetry) {
+                    acceptRetry = 0;
+                    acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+                }
+                // Wake up to accept again, if accepting is paused
+                selector.select(acceptRetry == 0 ? 0 : Math.max(1, acceptRetry - System.currentTimeMillis()));
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        try {
+                            accept();
+                        } catch (IOException e) {
+                            // Keep serving the other connections; the pending connection is retried later
+                            LOG.log(Level.WARNING, "Could not accept a dictionary client connection", e);
+                            acceptKey.interestOps(0);
+                            acceptRetry = System.currentTimeMillis() + ACCEPT_RETRY_MILLIS;
+                        }
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.write();
+                        }
+                    } catch (IOException e) {
+                        // The client went away, or sent a bad frame
+                        connection.close();
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            // Stop serving
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                try {
+                    key.channel().close();
+                } catch (IOException e) {
+                    // Closing anyway
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new Connection(channel, key));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * The buffers of one client connection.
+     */
+    private class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private ByteBuffer in = ByteBuffer.allocate(64 << 10); // in write mode: received bytes up to position
+        private ByteBuffer out = ByteBuffer.allocate(64 << 10); // in write mode: responses up to position
+        private final ByteArrayOutputStream response = new ByteArrayOutputStream();
+        private final DataOutputStream responseOut = new DataOutputStream(response);
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        void read() throws IOException {
+            if (channel.read(in) < 0) {
+                close();
+                return;
+            }
+            in.flip();
+            // Execute every complete request
+            while (in.remaining() >= 4) {
+                int length = in.getInt(in.position());
+                if (length < 1 || length > DictionaryProtocol.MAX_FRAME) {
+                    throw new IOException("Bad frame length " + length);
+                }
+                if (in.remaining() < 4 + length) {
+                    break;
+                }
+                in.position(in.position() + 4);
+                ByteBuffer frame = in.slice();
+                frame.limit(length);
+                in.position(in.position() + length);
+                execute(new DataInputStream(new ByteBufferInputStream(frame)));
+            }
+            in.compact();
+            if (!in.hasRemaining()) {
+                // Make room for the rest of a large frame
+                in = grow(in, in.capacity() * 2);
+            }
+            write();
+        }
+
+        void write() throws IOException {
+            out.flip();
+            channel.write(out);
+            out.compact();
+            int ops = out.position() > 0 ? SelectionKey.OP_WRITE : 0;
+            if (out.position() <= MAX_PENDING_OUTPUT) {
+                ops |= SelectionKey.OP_READ;
+            }
+            key.interestOps(ops);
+        }
+
+        void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+
+        /**
+         * Execute one request and add its response to the output.
+         */
+        private void execute(DataInputStream request) throws IOException {
+            response.reset();
+            try {
+                byte op = request.readByte();
+                responseOut.writeByte(DictionaryProtocol.OK);
+                executeOp(op, request);
+            } catch (EOFException e) {
+                throw new IOException("Truncated request", e);
+            } catch (RuntimeException e) {
+                // Report the dictionary's exception to the client, instead of a partial response
+                response.reset();
+                responseOut.writeByte(DictionaryProtocol.ERROR);
+                DictionaryProtocol.writeString(responseOut, e.getClass().getName());
+                DictionaryProtocol.writeString(responseOut, e.getMessage());
+            }
+            if (out.remaining() < 4 + response.size()) {
+                out = grow(out, Math.max(out.capacity() * 2, out.position() + 4 + response.size()));
+            }
+            out.putInt(response.size());
+            out.put(response.toByteArray());
+        }
+
+        private void executeOp(byte op, DataInputStream request) throws IOException {
+            switch (op) {
+                case DictionaryProtocol.GET:
+                    DictionaryProtocol.writeString(responseOut, dict.get(readKey(request)));
+                    break;
+                case DictionaryProtocol.PUT:
+                    String key = readKey(request);
+                    DictionaryProtocol.writeString(responseOut, dict.put(key, DictionaryProtocol.readString(request)));
+                    break;
+                case DictionaryProtocol.REMOVE:
+                    DictionaryProtocol.writeString(responseOut, dict.remove(readKey(request)));
+                    break;
+                case DictionaryProtocol.CONTAINS:
+                    responseOut.writeByte(dict.containsKey(readKey(request)) ? 1 : 0);
+                    break;
+                case DictionaryProtocol.SIZE:
+                    responseOut.writeInt(dict.size());
+                    break;
+                case DictionaryProtocol.CLEAR:
+                    dict.clear();
+                    break;
+                case DictionaryProtocol.MULTI_GET:
+                    int n = request.readInt();
+                    List<String> values = new ArrayList<>();
+                    for (int i = 0; i < n; i++) {
+                        values.add(dict.get(readKey(request)));
+                    }
+                    responseOut.writeInt(n);
+                    for (String value : values) {
+                        DictionaryProtocol.writeString(responseOut, value);
+                    }
+                    break;
+                case DictionaryProtocol.RANGE:
+                    String from = DictionaryProtocol.readString(request);
+                    String to = DictionaryProtocol.readString(request);
+                    int limit = request.readInt();
+                    List<Map.Entry<String, String>> entries = new ArrayList<>();
+                    Iterator<Map.Entry<String, String>> it = dict.range(from, to);
+                    while (entries.size() < limit && it.hasNext()) {
+                        entries.add(it.next());
+                    }
+                    responseOut.writeInt(entries.size());
+                    for (Map.Entry<String, String> entry : entries) {
+                        DictionaryProtocol.writeString(responseOut, entry.getKey());
+                        DictionaryProtocol.writeString(responseOut, entry.getValue());
+                    }
+                    break;
+                default:
+                    throw new IOException("Unknown operation " + op);
+            }
+        }
+
+        private String readKey(DataInputStream request) throws IOException {
+            String key = DictionaryProtocol.readString(request);
+            if (key == null) {
+                throw new IOException("Missing word");
+            }
+            return key;
+        }
+    }
+
+    private static ByteBuffer grow(ByteBuffer buf, int capacity) {
+        ByteBuffer grown = ByteBuffer.allocate(capacity);
+        buf.flip();
+        grown.put(buf);
+        return grown;
+    }
+
+    /**
+     * Reads the remaining bytes of a buffer.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+    }
+}
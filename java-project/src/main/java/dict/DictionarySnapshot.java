@@ -0,0 +1,68 @@
+package dict;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * An immutable point-in-time view of a {@link VersionedDictionary}, taken by
+ * {@link VersionedDictionary#snapshot()}. It is a version of the dictionary's persistent tree, so it costs
+ * nothing to take and never changes: writers go on changing the dictionary while the snapshot is read or
+ * iterated, from any number of threads.
+ */
+public final class DictionarySnapshot {
+    private final PersistentTree.Node root;
+
+    DictionarySnapshot(PersistentTree.Node root) {
+        this.root = root;
+    }
+
+    /**
+     * @return the definition of the word in the snapshot, or null
+     */
+    public String get(String key) {
+        return PersistentTree.get(root, Objects.requireNonNull(key));
+    }
+
+    public boolean containsKey(String key) {
+        return get(key) != null;
+    }
+
+    public int size() {
+        return PersistentTree.size(root);
+    }
+
+    /**
+     * Returns the mappings of the snapshot whose keys are between from (inclusive) and to (exclusive), in
+     * ascending key order.
+     *
+     * @param from the lowest key to return, or null to start at the first key
+     * @param to   the key to stop before, or null to continue to the last key
+     */
+    public Iterator<Map.Entry<String, String>> range(String from, String to) {
+        return PersistentTree.range(root, from, to);
+    }
+
+    /**
+     * Returns the mappings of the snapshot whose keys start with the prefix, in ascending key order.
+     *
+     * @param prefix the prefix of the keys to return
+     * @param limit  the maximum number of mappings to return
+     * @throws IllegalArgumentException if the limit is negative
+     */
+    public Iterator<Map.Entry<String, String>> prefixScan(String prefix, int limit) {
+        return DictionaryIterators.limit(range(prefix, DictionaryIterators.prefixEnd(prefix)), limit);
+    }
+
+    /**
+     * Write the snapshot to a dictionary file (an export that doesn't stop the writers).
+     *
+     * @return the number of bytes written
+     * @throws IOException
+     */
+    public long writeTo(File file, DictionaryFormat format) throws IOException {
+        return DictionaryFiles.write(file, () -> range(null, null), format);
+    }
+}
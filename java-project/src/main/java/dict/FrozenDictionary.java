@@ -0,0 +1,274 @@
+package dict;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * A read-only persistent dictionary that memory-maps a file built by {@link FrozenDictionaryBuilder}, for
+ * dictionaries that are rebuilt offline and only read in between.
+ * <p>
+ * Words are found through a minimal perfect hash: every word of the file has its own slot, computed from a
+ * hash of the word and the displacement seed of its hash bucket, so a lookup reads one seed and one slot.
+ * The slot holds a fingerprint of the hash, so most missing words are rejected without reading a record, and
+ * the word of the record is compared with the looked-up String in place: {@link #containsKey(Object)}
+ * doesn't allocate, and {@link #get(Object)} only allocates the definition it returns.
+ * <p>
+ * {@link #open()} only maps the file. A new file can replace the mapped one (as the builder does, with a
+ * rename) while it is open; the dictionary keeps reading the old one until it is reopened.
+ * <p>
+ * The file format (all numbers big-endian):
+ * <pre>
+ * int magic ("DFRZ"), int version, long salt, int count, int bucketCount,
+ * int seedsOffset, int slotsOffset, int sortedOffset
+ * count records: int keyLength, key (UTF-8), int valueLength, value (UTF-8) -- sorted by key
+ * bucketCount ints at seedsOffset: the displacement seed of each bucket, or -(slot + 1) for a bucket with a
+ *     single word placed directly in a slot
+ * count slots at slotsOffset: int fingerprint (the low 32 bits of the word's hash), int record offset
+ * count ints at sortedOffset: the offset of each record, in key order
+ * </pre>
+ * An empty or missing file is an empty dictionary. Files are limited to 2GB (a single mapping).
+ */
+public class FrozenDictionary implements PersistentDictionary {
+    static final int MAGIC = 0x4446525a; // "DFRZ"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 36;
+
+    private static final long GOLDEN = 0x9e3779b97f4a7c15L;
+
+    private final File dictFile;
+
+    private MappedByteBuffer buf; // null when there is no mapped file
+    private long salt;
+    private int count;
+    private int bucketCount;
+    private int seedsOffset;
+    private int slotsOffset;
+    private int sortedOffset;
+
+    public FrozenDictionary(File dictFile) {
+        // Throw exception if the file is null
+        if (dictFile == null) {
+            throw new IllegalArgumentException("Dictionary file cannot be null.");
+        }
+        this.dictFile = dictFile;
+    }
+
+    @Override
+    public void open() throws IOException {
+        unmap();
+        if (!dictFile.exists() || dictFile.length() == 0) {
+            return;
+        }
+        if (dictFile.length() > Integer.MAX_VALUE) {
+            throw new IOException("Dictionary file " + dictFile + " is larger than 2GB");
+        }
+        MappedByteBuffer mapped;
+        try (RandomAccessFile raf = new RandomAccessFile(dictFile, "r");
+             FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (mapped.limit() < HEADER_SIZE || mapped.getInt(0) != MAGIC) {
+            throw new IOException(dictFile + " is not a frozen dictionary file");
+        }
+        if (mapped.getInt(4) != VERSION) {
+            throw new IOException("Unsupported frozen dictionary version " + mapped.getInt(4) + " in " + dictFile);
+        }
+        buf = mapped;
+        salt = buf.getLong(8);
+        count = buf.getInt(16);
+        bucketCount = buf.getInt(20);
+        seedsOffset = buf.getInt(24);
+        slotsOffset = buf.getInt(28);
+        sortedOffset = buf.getInt(32);
+    }
+
+    @Override
+    public void close() {
+        unmap();
+    }
+
+    @Override
+    public String get(Object key) {
+        int off = find((String) Objects.requireNonNull(key));
+        if (off < 0) {
+            return null;
+        }
+        int valueOffset = off + 4 + buf.getInt(off);
+        return Utf8.decode(buf, valueOffset + 4, buf.getInt(valueOffset));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find((String) Objects.requireNonNull(key)) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Not supported: frozen dictionaries are rebuilt with {@link FrozenDictionaryBuilder}.
+     */
+    @Override
+    public String put(String key, String value) {
+        throw readOnly();
+    }
+
+    /**
+     * Not supported: frozen dictionaries are rebuilt with {@link FrozenDictionaryBuilder}.
+     */
+    @Override
+    public String remove(Object key) {
+        throw readOnly();
+    }
+
+    /**
+     * Not supported: frozen dictionaries are rebuilt with {@link FrozenDictionaryBuilder}.
+     */
+    @Override
+    public void clear() {
+        throw readOnly();
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> range(String from, String to) {
+        return new RecordIterator(from == null ? 0 : lowerBound(from), to);
+    }
+
+    /**
+     * Iterates the records in key order, from an index until a word that is not less than a bound.
+     */
+    private class RecordIterator implements Iterator<Map.Entry<String, String>> {
+        // The file mapped when the iterator was created, which a later open() doesn't change
+        private final MappedByteBuffer mapped = buf;
+        private final int count = FrozenDictionary.this.count;
+        private final int sortedOffset = FrozenDictionary.this.sortedOffset;
+        private final byte[] to;
+        private int index;
+
+        RecordIterator(int index, String to) {
+            this.index = index;
+            this.to = to == null ? null : Utf8.encode(to);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (mapped == null || index >= count) {
+                return false;
+            }
+            int off = mapped.getInt(sortedOffset + 4 * index);
+            return to == null || Utf8.compare(mapped, off + 4, mapped.getInt(off), to) < 0;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int off = mapped.getInt(sortedOffset + 4 * index++);
+            int keyLength = mapped.getInt(off);
+            int valueOffset = off + 4 + keyLength;
+            return new AbstractMap.SimpleImmutableEntry<>(Utf8.decode(mapped, off + 4, keyLength),
+                    Utf8.decode(mapped, valueOffset + 4, mapped.getInt(valueOffset)));
+        }
+    }
+
+    /**
+     * Look the word up through the perfect hash.
+     *
+     * @return the offset of the word's record, or -1 if the dictionary does not contain it
+     */
+    private int find(String word) {
+        if (buf == null || count == 0) {
+            return -1;
+        }
+        long h = hash(word, salt);
+        int seed = buf.getInt(seedsOffset + 4 * bucket(h, bucketCount));
+        int slot = seed < 0 ? -seed - 1 : slot(h, seed, count);
+        int slotOffset = slotsOffset + 8 * slot;
+        if (buf.getInt(slotOffset) != (int) h) {
+            return -1;
+        }
+        int off = buf.getInt(slotOffset + 4);
+        return Utf8.equals(buf, off + 4, buf.getInt(off), word) ? off : -1;
+    }
+
+    /**
+     * Binary search the sorted records for the first word that is not less than the given word.
+     *
+     * @return the index of that record, or count if there is none
+     */
+    private int lowerBound(String word) {
+        if (buf == null) {
+            return 0;
+        }
+        byte[] key = Utf8.encode(word);
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int off = buf.getInt(sortedOffset + 4 * mid);
+            if (Utf8.compare(buf, off + 4, buf.getInt(off), key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private void unmap() {
+        // A MappedByteBuffer is unmapped when it is garbage collected
+        buf = null;
+        count = 0;
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Frozen dictionaries are read-only; rebuild them with "
+                + FrozenDictionaryBuilder.class.getSimpleName());
+    }
+
+    /**
+     * A 64-bit hash of the word's characters (FNV-1a, then the MurmurHash3 finalizer to spread the bits).
+     */
+    static long hash(String word, long salt) {
+        long h = 0xcbf29ce484222325L ^ salt;
+        for (int i = 0; i < word.length(); i++) {
+            h = (h ^ word.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * @return the bucket of a hash, from its high 32 bits
+     */
+    static int bucket(long h, int bucketCount) {
+        return (int) (((h >>> 32) * bucketCount) >>> 32);
+    }
+
+    /**
+     * @return the slot of a hash for a displacement seed
+     */
+    static int slot(long h, int seed, int count) {
+        return (int) (((mix(h + (seed + 1) * GOLDEN) >>> 32) * count) >>> 32);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
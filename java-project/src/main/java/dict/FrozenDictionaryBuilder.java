@@ -0,0 +1,248 @@
+package dict;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Builds the file of a {@link FrozenDictionary} from a dictionary file (in the text <code>word:def</code>
+ * format, or the binary format), or from sorted entries.
+ * <p>
+ * The perfect hash is built by hash-and-displace (as in CHD): the words are hashed into buckets of about two
+ * words each, and the buckets, largest first, are each given the first seed that sends all their words to
+ * free slots. Buckets with a single word are placed last, directly in the remaining slots. If some bucket
+ * has no such seed (two of its words have the same hash), everything is hashed again with another salt.
+ * <p>
+ * The new file is written next to the target and then renamed over it, so readers that have the old file
+ * mapped are not affected.
+ * <p>
+ * Usage: <code>java dict.FrozenDictionaryBuilder &lt;dictionary file&gt; &lt;frozen file&gt;</code>
+ */
+public final class FrozenDictionaryBuilder {
+    private static final int WORDS_PER_BUCKET = 2;
+    private static final int MAX_SEED = 1 << 20;
+    private static final int MAX_ATTEMPTS = 16;
+
+    private FrozenDictionaryBuilder() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java dict.FrozenDictionaryBuilder <dictionary file> <frozen file>");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        int count = build(new File(args[0]), new File(args[1]));
+        System.out.printf("Built %s with %d words in %d ms%n", args[1], count,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Build a frozen dictionary file from a dictionary file. As when loading it into {@link InMemoryDictionary},
+     * the last definition of a word that appears twice wins.
+     *
+     * @return the number of words
+     * @throws IOException
+     */
+    public static int build(File source, File target) throws IOException {
+        TreeMap<String, String> entries = new TreeMap<>();
+        DictionaryFiles.read(source, entries::put);
+        build(entries, target);
+        return entries.size();
+    }
+
+    /**
+     * Build a frozen dictionary file from entries.
+     *
+     * @throws IOException
+     */
+    public static void build(SortedMap<String, String> entries, File target) throws IOException {
+        if (entries.comparator() != null) {
+            // The records must be in String order, for range()
+            TreeMap<String, String> natural = new TreeMap<>();
+            natural.putAll(entries);
+            entries = natural;
+        }
+        int count = entries.size();
+        String[] words = new String[count];
+        String[] definitions = new String[count];
+        int k = 0;
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            words[k] = entry.getKey();
+            definitions[k++] = Objects.requireNonNull(entry.getValue(), "Definitions cannot be null");
+        }
+        int bucketCount = Math.max(1, (count + WORDS_PER_BUCKET - 1) / WORDS_PER_BUCKET);
+        long[] hashes = new long[count];
+        int[] seeds = null;
+        int[] slotWords = null;
+        long salt = 0;
+        for (int attempt = 0; seeds == null; attempt++) {
+            if (attempt == MAX_ATTEMPTS) {
+                throw new IOException("Cannot build a perfect hash for " + target);
+            }
+            salt = attempt * 0x9e3779b97f4a7c15L;
+            for (int i = 0; i < count; i++) {
+                hashes[i] = FrozenDictionary.hash(words[i], salt);
+            }
+            slotWords = new int[count];
+            seeds = placeBuckets(hashes, bucketCount, slotWords);
+        }
+        write(target, words, definitions, hashes, salt, seeds, slotWords);
+    }
+
+    /**
+     * Find a seed for every bucket, so every word gets its own slot.
+     *
+     * @param slotWords receives the index of the word in each slot
+     * @return the seeds, or null if some bucket has none
+     */
+    private static int[] placeBuckets(long[] hashes, int bucketCount, int[] slotWords) {
+        int count = hashes.length;
+        // The words of each bucket, as ranges of one array
+        int[] starts = new int[bucketCount + 1];
+        for (long h : hashes) {
+            starts[FrozenDictionary.bucket(h, bucketCount) + 1]++;
+        }
+        int maxSize = 0;
+        for (int b = 0; b < bucketCount; b++) {
+            maxSize = Math.max(maxSize, starts[b + 1]);
+            starts[b + 1] += starts[b];
+        }
+        int[] members = new int[count];
+        int[] fill = new int[bucketCount];
+        for (int i = 0; i < count; i++) {
+            int b = FrozenDictionary.bucket(hashes[i], bucketCount);
+            members[starts[b] + fill[b]++] = i;
+        }
+        // Buckets by decreasing size (a counting sort)
+        int[] bySize = new int[maxSize + 2];
+        for (int b = 0; b < bucketCount; b++) {
+            bySize[maxSize - (starts[b + 1] - starts[b]) + 1]++;
+        }
+        for (int s = 0; s <= maxSize; s++) {
+            bySize[s + 1] += bySize[s];
+        }
+        int[] order = new int[bucketCount];
+        for (int b = 0; b < bucketCount; b++) {
+            order[bySize[maxSize - (starts[b + 1] - starts[b])]++] = b;
+        }
+
+        int[] seeds = new int[bucketCount];
+        boolean[] taken = new boolean[count];
+        int[] slots = new int[Math.max(maxSize, 1)];
+        int free = 0; // the lowest slot that may be free, for single-word buckets
+        for (int b : order) {
+            int size = starts[b + 1] - starts[b];
+            if (size == 0) {
+                // Buckets are sorted by size, so the rest are empty too (their seed 0 leads to some slot)
+                break;
+            }
+            if (size == 1) {
+                while (taken[free]) {
+                    free++;
+                }
+                taken[free] = true;
+                slotWords[free] = members[starts[b]];
+                seeds[b] = -free - 1;
+                continue;
+            }
+            int seed = findSeed(hashes, members, starts[b], size, taken, slots);
+            if (seed < 0) {
+                return null;
+            }
+            for (int j = 0; j < size; j++) {
+                slotWords[slots[j]] = members[starts[b] + j];
+            }
+            seeds[b] = seed;
+        }
+        return seeds;
+    }
+
+    /**
+     * Find the first seed that sends all the words of a bucket to distinct free slots, and take the slots.
+     *
+     * @param slots receives the slots of the words
+     * @return the seed, or -1 if there is none
+     */
+    private static int findSeed(long[] hashes, int[] members, int start, int size, boolean[] taken, int[] slots) {
+        int count = taken.length;
+        for (int seed = 0; seed < MAX_SEED; seed++) {
+            int placed = 0;
+            while (placed < size) {
+                int slot = FrozenDictionary.slot(hashes[members[start + placed]], seed, count);
+                if (taken[slot]) {
+                    break;
+                }
+                taken[slot] = true;
+                slots[placed++] = slot;
+            }
+            if (placed == size) {
+                return seed;
+            }
+            // Give back the slots of this try
+            for (int j = 0; j < placed; j++) {
+                taken[slots[j]] = false;
+            }
+        }
+        return -1;
+    }
+
+    private static void write(File target, String[] words, String[] definitions, long[] hashes, long salt,
+                              int[] seeds, int[] slotWords) throws IOException {
+        int count = words.length;
+        int[] offsets = new int[count];
+        File tmp = DictionaryFiles.sibling(target, ".tmp");
+        long pos = FrozenDictionary.HEADER_SIZE;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            // The header is filled in at the end
+            out.write(new byte[FrozenDictionary.HEADER_SIZE]);
+            for (int i = 0; i < count; i++) {
+                byte[] key = words[i].getBytes(StandardCharsets.UTF_8);
+                byte[] value = definitions[i].getBytes(StandardCharsets.UTF_8);
+                offsets[i] = (int) pos;
+                out.writeInt(key.length);
+                out.write(key);
+                out.writeInt(value.length);
+                out.write(value);
+                pos += 8 + key.length + value.length;
+                if (pos > Integer.MAX_VALUE) {
+                    throw new IOException("Frozen dictionary file " + target + " would be larger than 2GB");
+                }
+            }
+            if (pos + 4L * seeds.length + 12L * count > Integer.MAX_VALUE) {
+                throw new IOException("Frozen dictionary file " + target + " would be larger than 2GB");
+            }
+            for (int seed : seeds) {
+                out.writeInt(seed);
+            }
+            for (int slot = 0; slot < count; slot++) {
+                int word = slotWords[slot];
+                out.writeInt((int) hashes[word]);
+                out.writeInt(offsets[word]);
+            }
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+        } catch (IOException | RuntimeException e) {
+            tmp.delete();
+            throw e;
+        }
+        int seedsOffset = (int) pos;
+        int slotsOffset = seedsOffset + 4 * seeds.length;
+        int sortedOffset = slotsOffset + 8 * count;
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+            raf.writeInt(FrozenDictionary.MAGIC);
+            raf.writeInt(FrozenDictionary.VERSION);
+            raf.writeLong(salt);
+            raf.writeInt(count);
+            raf.writeInt(seeds.length);
+            raf.writeInt(seedsOffset);
+            raf.writeInt(slotsOffset);
+            raf.writeInt(sortedOffset);
+        }
+        DictionaryFiles.replace(tmp, target);
+    }
+}
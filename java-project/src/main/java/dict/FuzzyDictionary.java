@@ -0,0 +1,310 @@
+package dict;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A persistent dictionary that adds typo-tolerant lookups to another one: {@link #fuzzyLookup(String, int, int)}
+ * finds the words within an edit distance of a word.
+ * <p>
+ * The words are indexed in a BK-tree, built by {@link #open()} and updated by every put and remove. Each node
+ * of the tree keeps its children by their edit distance from it, so by the triangle inequality a lookup only
+ * descends into the children whose distance is within the maximum distance of the looked-up word's distance
+ * from the node; with small maximum distances it computes the distance to a small fraction of the words.
+ * <p>
+ * Removed words are only marked in the tree (it can't remove nodes); the tree is rebuilt when more than half of
+ * its nodes are removed words. Distances are Levenshtein distances on UTF-16 chars: each insertion, deletion
+ * or substitution of a char counts 1.
+ * <p>
+ * The dictionary is not thread-safe.
+ */
+public class FuzzyDictionary implements PersistentDictionary {
+    /**
+     * A word in the BK-tree, with its children by distance.
+     */
+    private static class Node {
+        final String word;
+        boolean removed;
+        int[] distances;
+        Node[] children;
+        int childCount;
+
+        Node(String word) {
+            this.word = word;
+        }
+
+        Node child(int distance) {
+            for (int i = 0; i < childCount; i++) {
+                if (distances[i] == distance) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        void addChild(int distance, Node child) {
+            if (children == null) {
+                distances = new int[2];
+                children = new Node[2];
+            } else if (childCount == children.length) {
+                distances = Arrays.copyOf(distances, childCount * 2);
+                children = Arrays.copyOf(children, childCount * 2);
+            }
+            distances[childCount] = distance;
+            children[childCount++] = child;
+        }
+    }
+
+    /**
+     * A word found by a fuzzy lookup.
+     */
+    private static class Match {
+        final String word;
+        final int distance;
+
+        Match(String word, int distance) {
+            this.word = word;
+            this.distance = distance;
+        }
+    }
+
+    private final PersistentDictionary dict;
+
+    private Node root;
+    private int nodes;
+    private int removedNodes;
+    int visited; // words whose distance the last lookup computed (for tests)
+
+    // Rows of the edit distance table, reused between computations
+    private int[] previous = new int[16];
+    private int[] current = new int[16];
+
+    /**
+     * @param dict the dictionary to index
+     */
+    public FuzzyDictionary(PersistentDictionary dict) {
+        // Throw exception if the dictionary is null
+        if (dict == null) {
+            throw new IllegalArgumentException("Dictionary cannot be null.");
+        }
+        this.dict = dict;
+    }
+
+    @Override
+    public void open() throws IOException {
+        dict.open();
+        clearIndex();
+        Iterator<Map.Entry<String, String>> it = dict.range(null, null);
+        while (it.hasNext()) {
+            index(it.next().getKey());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        dict.close();
+    }
+
+    /**
+     * Find the words within an edit distance of a word.
+     *
+     * @param word        the word to look up
+     * @param maxDistance the maximum edit distance
+     * @param limit       the maximum number of words to return
+     * @return the words and their definitions, closest first (words at the same distance in String order)
+     */
+    public List<Map.Entry<String, String>> fuzzyLookup(String word, int maxDistance, int limit) {
+        if (maxDistance < 0) {
+            throw new IllegalArgumentException("Distance cannot be negative.");
+        }
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit cannot be negative.");
+        }
+        List<Match> matches = new ArrayList<>();
+        visited = 0;
+        if (root != null && limit > 0) {
+            ArrayDeque<Node> stack = new ArrayDeque<>();
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                Node node = stack.pop();
+                int distance = distance(word, node.word);
+                visited++;
+                if (distance <= maxDistance && !node.removed) {
+                    matches.add(new Match(node.word, distance));
+                }
+                // Only children at distance - max..distance + max from the node can be within max of the word
+                for (int i = 0; i < node.childCount; i++) {
+                    if (Math.abs(node.distances[i] - distance) <= maxDistance) {
+                        stack.push(node.children[i]);
+                    }
+                }
+            }
+        }
+        matches.sort(Comparator.<Match>comparingInt(match -> match.distance).thenComparing(match -> match.word));
+        List<Map.Entry<String, String>> result = new ArrayList<>();
+        for (Match match : matches.subList(0, Math.min(limit, matches.size()))) {
+            result.add(new AbstractMap.SimpleImmutableEntry<>(match.word, dict.get(match.word)));
+        }
+        return result;
+    }
+
+    @Override
+    public String get(Object key) {
+        return dict.get(key);
+    }
+
+    @Override
+    public String put(String key, String value) {
+        String old = dict.put(key, value);
+        if (old == null) {
+            index(key);
+        }
+        return old;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return dict.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return dict.size();
+    }
+
+    @Override
+    public String remove(Object key) {
+        String old = dict.remove(key);
+        if (old != null) {
+            unindex((String) key);
+        }
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        dict.clear();
+        clearIndex();
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> range(String from, String to) {
+        return dict.range(from, to);
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> prefixScan(String prefix, int limit) {
+        return dict.prefixScan(prefix, limit);
+    }
+
+    /**
+     * Add a word to the tree, or mark it as present again if it was removed.
+     */
+    private void index(String word) {
+        if (root == null) {
+            root = new Node(word);
+            nodes = 1;
+            return;
+        }
+        Node node = root;
+        while (true) {
+            int distance = distance(word, node.word);
+            if (distance == 0) {
+                if (node.removed) {
+                    node.removed = false;
+                    removedNodes--;
+                }
+                return;
+            }
+            Node child = node.child(distance);
+            if (child == null) {
+                node.addChild(distance, new Node(word));
+                nodes++;
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Mark a word of the tree as removed, and rebuild the tree if most of its nodes are removed words.
+     */
+    private void unindex(String word) {
+        Node node = root;
+        while (node != null) {
+            int distance = distance(word, node.word);
+            if (distance == 0) {
+                if (!node.removed) {
+                    node.removed = true;
+                    removedNodes++;
+                }
+                break;
+            }
+            node = node.child(distance);
+        }
+        if (removedNodes * 2 > nodes) {
+            rebuild();
+        }
+    }
+
+    private void rebuild() {
+        List<String> words = new ArrayList<>(nodes - removedNodes);
+        if (root != null) {
+            // Breadth first, so the new tree has much the same shape
+            ArrayDeque<Node> queue = new ArrayDeque<>();
+            queue.add(root);
+            while (!queue.isEmpty()) {
+                Node node = queue.poll();
+                if (!node.removed) {
+                    words.add(node.word);
+                }
+                for (int i = 0; i < node.childCount; i++) {
+                    queue.add(node.children[i]);
+                }
+            }
+        }
+        clearIndex();
+        for (String word : words) {
+            index(word);
+        }
+    }
+
+    private void clearIndex() {
+        root = null;
+        nodes = 0;
+        removedNodes = 0;
+    }
+
+    /**
+     * The Levenshtein distance of two words, with two rows of the table.
+     */
+    private int distance(String a, String b) {
+        int n = b.length();
+        if (previous.length <= n) {
+            previous = new int[n + 1];
+            current = new int[n + 1];
+        }
+        for (int j = 0; j <= n; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            char c = a.charAt(i - 1);
+            current[0] = i;
+            for (int j = 1; j <= n; j++) {
+                int substitute = previous[j - 1] + (c == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitute, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] row = previous;
+            previous = current;
+            current = row;
+        }
+        return previous[n];
+    }
+}
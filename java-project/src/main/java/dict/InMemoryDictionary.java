@@ -1,9 +1,13 @@
 package dict;
 
-import java.io.*;
+import java.io.File;
 import java.io.IOException;
-import java.util.TreeMap;
+import java.nio.charset.Charset;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * Implements a persistent dictionary that can be held entirely in memory.
@@ -13,55 +17,190 @@ import java.util.Map;
  * <pre>word:def</pre>
  * <p>
  * Note that an empty definition list is allowed (in which case the entry would have the form: <pre>word:</pre>
+ * <p>
+ * The dictionary can also be stored in the binary format ({@link DictionaryFormat#BINARY}), which is faster to
+ * load and save and allows any character in words, or in the deduplicated binary format
+ * ({@link DictionaryFormat#DEDUP}), which stores each distinct definition once. Files in any format are read;
+ * close() writes the format given to the constructor.
+ * <p>
+ * Large text files can be read on several cores (see {@link #InMemoryDictionary(File, DictionaryFormat, int)}).
+ * <p>
+ * close() only writes the file if the dictionary changed since it was opened (or last closed).
+ * Changes made through the map's views (such as {@link #entrySet()}) are not noticed.
  *
  * @author talm
  */
 public class InMemoryDictionary extends TreeMap<String, String> implements PersistentDictionary {
     private static final long serialVersionUID = 1L; // (because we're extending a serializable class)
     private final File dictFile;
+    private final DictionaryFormat format;
+    private final int parallelism;
+    private boolean dirty; // changed since the last open() or close()
+    private long lastFlushBytes;
 
     public InMemoryDictionary(File dictFile) {
-        // Throw exception if the file is null
+        this(dictFile, DictionaryFormat.TEXT);
+    }
+
+    /**
+     * @param dictFile the dictionary file
+     * @param format   the format {@link #close()} writes the file in
+     */
+    public InMemoryDictionary(File dictFile, DictionaryFormat format) {
+        this(dictFile, format, 1);
+    }
+
+    /**
+     * @param dictFile    the dictionary file
+     * @param format      the format {@link #close()} writes the file in
+     * @param parallelism the number of threads {@link #open()} reads a text file with
+     */
+    public InMemoryDictionary(File dictFile, DictionaryFormat format, int parallelism) {
+        // Throw exception if the file or format is null
         if (dictFile == null) {
             throw new IllegalArgumentException("Dictionary file cannot be null.");
         }
+        if (format == null) {
+            throw new IllegalArgumentException("Dictionary format cannot be null.");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1.");
+        }
         this.dictFile = dictFile;
+        this.format = format;
+        this.parallelism = parallelism;
     }
 
     @Override
     public void open() throws IOException {
         // Clear the current dictionary content
         this.clear();
-        // Check if the file exists; if not, no action is needed
-        if (!this.dictFile.exists()){
-            return;
+        Charset charset = Charset.defaultCharset();
+        DictionaryFormat fileFormat = DictionaryFiles.formatOf(dictFile);
+        if (parallelism > 1 && dictFile.exists() && fileFormat == DictionaryFormat.TEXT
+                && ParallelTextLoader.supported(charset)) {
+            // Parse the text file on several threads; the tree is built from the sorted entries in linear time
+            this.putAll(ParallelTextLoader.read(dictFile, parallelism, charset));
+        } else {
+            // Read the file in whichever format it is (a missing file is an empty dictionary)
+            DictionaryFiles.read(dictFile, this::put);
         }
-        // Read the file line by line
-        try (BufferedReader reader = new BufferedReader(new FileReader(dictFile))) {
-            String line;
-            while ((line = reader.readLine()) != null){
-                // Split the line into key (word) and value (definition)
-                String[] parts = line.split(":", 2);
-                String word = parts[0];
-                String def = parts[1];
-                this.put(word, def);
-            }
-        }
-
+        // Nothing needs to be written until something changes, unless the file is in another format
+        dirty = dictFile.exists() && fileFormat != format;
     }
 
     @Override
     public void close() throws IOException {
-        // Write to the file line by line
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(dictFile, false))) {
-            String line;
-            for (Map.Entry<String, String> entry : this.entrySet()){
-                // Combine the key (word) and value (definition) to a line with a : separator
-                line = entry.getKey() + ":" + entry.getValue();
-                writer.write(line);
-                writer.newLine();
-            }
+        if (!dirty) {
+            // Nothing to write
+            lastFlushBytes = 0;
+            return;
         }
+        // Write the entries in key order
+        lastFlushBytes = DictionaryFiles.write(dictFile, this.entrySet(), format);
+        dirty = false;
+    }
+
+    /**
+     * @return the number of bytes the last {@link #close()} wrote, 0 if it had nothing to write
+     */
+    @Override
+    public long lastFlushBytes() {
+        return lastFlushBytes;
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> range(String from, String to) {
+        return DictionaryIterators.range(this, from, to);
+    }
+
+
+    /*======= Change tracking  ======*/
+
+    @Override
+    public String put(String key, String value) {
+        dirty = true;
+        return super.put(key, value);
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ? extends String> map) {
+        dirty |= !map.isEmpty();
+        super.putAll(map);
+    }
+
+    @Override
+    public String remove(Object key) {
+        String old = super.remove(key);
+        dirty |= old != null;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        dirty |= !isEmpty();
+        super.clear();
+    }
+
+    @Override
+    public String putIfAbsent(String key, String value) {
+        dirty = true;
+        return super.putIfAbsent(key, value);
+    }
+
+    @Override
+    public String replace(String key, String value) {
+        dirty = true;
+        return super.replace(key, value);
+    }
+
+    @Override
+    public boolean replace(String key, String oldValue, String newValue) {
+        dirty = true;
+        return super.replace(key, oldValue, newValue);
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super String, ? super String, ? extends String> function) {
+        dirty = true;
+        super.replaceAll(function);
+    }
 
+    @Override
+    public String computeIfAbsent(String key, Function<? super String, ? extends String> mappingFunction) {
+        dirty = true;
+        return super.computeIfAbsent(key, mappingFunction);
+    }
+
+    @Override
+    public String computeIfPresent(String key,
+                                   BiFunction<? super String, ? super String, ? extends String> remappingFunction) {
+        dirty = true;
+        return super.computeIfPresent(key, remappingFunction);
+    }
+
+    @Override
+    public String compute(String key, BiFunction<? super String, ? super String, ? extends String> remappingFunction) {
+        dirty = true;
+        return super.compute(key, remappingFunction);
+    }
+
+    @Override
+    public String merge(String key, String value,
+                        BiFunction<? super String, ? super String, ? extends String> remappingFunction) {
+        dirty = true;
+        return super.merge(key, value, remappingFunction);
+    }
+
+    @Override
+    public Map.Entry<String, String> pollFirstEntry() {
+        dirty |= !isEmpty();
+        return super.pollFirstEntry();
+    }
+
+    @Override
+    public Map.Entry<String, String> pollLastEntry() {
+        dirty |= !isEmpty();
+        return super.pollLastEntry();
     }
 }
@@ -0,0 +1,255 @@
+package dict;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A persistent dictionary that records the operations of another one: the count and latency of lookups, puts,
+ * removes, opens and closes, the number of bytes read and written, and the number of words. The metrics are
+ * available from {@link #metrics()}, and through JMX once {@link #registerMBean(String)} is called, so a slow
+ * dictionary can be diagnosed as slow lookups or slow flushes.
+ * <p>
+ * Each operation costs two {@link System#nanoTime()} calls and a few uncontended atomic additions.
+ * open() counts the size of the dictionary file and its sibling files (logs, segments, shards and so on, but
+ * not temporary and lock files) as read. close() counts the bytes the dictionary reports it wrote
+ * ({@link PersistentDictionary#lastFlushBytes()}); for dictionaries that don't report them, it counts the
+ * whole size of the files it created or replaced, and the growth of the files it appended to.
+ * <p>
+ * The dictionary is as thread-safe as the one it records.
+ */
+public class InstrumentedDictionary implements PersistentDictionary {
+    private static final String DOMAIN = "dict";
+
+    private final PersistentDictionary dict;
+    private final File dictFile;
+    private final DictionaryMetrics metrics = new DictionaryMetrics();
+    private ObjectName registered;
+
+    /**
+     * @param dict     the dictionary to record
+     * @param dictFile the file the dictionary is stored in
+     */
+    public InstrumentedDictionary(PersistentDictionary dict, File dictFile) {
+        // Throw exception if the dictionary or file is null
+        if (dict == null) {
+            throw new IllegalArgumentException("Dictionary cannot be null.");
+        }
+        if (dictFile == null) {
+            throw new IllegalArgumentException("Dictionary file cannot be null.");
+        }
+        this.dict = dict;
+        this.dictFile = dictFile;
+    }
+
+    /**
+     * @return the metrics recorded so far
+     */
+    public DictionaryMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Register the metrics with the platform MBean server, as <code>dict:type=Dictionary,name=&lt;name&gt;</code>.
+     *
+     * @return the name the metrics are registered under
+     * @throws IllegalStateException if they are already registered, or the name is taken
+     */
+    public synchronized ObjectName registerMBean(String name) {
+        if (registered != null) {
+            throw new IllegalStateException("Metrics are already registered as " + registered);
+        }
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=Dictionary,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+            registered = objectName;
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register metrics as " + name, e);
+        }
+    }
+
+    /**
+     * Unregister the metrics from the platform MBean server, if they are registered.
+     */
+    public synchronized void unregisterMBean() {
+        if (registered == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(registered);
+        } catch (JMException e) {
+            // Already unregistered by someone else
+        }
+        registered = null;
+    }
+
+    @Override
+    public void open() throws IOException {
+        long bytes = 0;
+        for (File file : files()) {
+            bytes += file.length();
+        }
+        long start = System.nanoTime();
+        try {
+            dict.open();
+        } finally {
+            metrics.open.record(System.nanoTime() - start);
+        }
+        metrics.bytesRead.add(bytes);
+        metrics.entries.set(dict.size());
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Remember the files as they were, to tell which ones close() writes, in case the dictionary doesn't say
+        Map<String, BasicFileAttributes> before = new HashMap<>();
+        for (File file : files()) {
+            BasicFileAttributes attributes = attributes(file);
+            if (attributes != null) {
+                before.put(file.getName(), attributes);
+            }
+        }
+        long start = System.nanoTime();
+        try {
+            dict.close();
+        } finally {
+            metrics.close.record(System.nanoTime() - start);
+        }
+        long reported = dict.lastFlushBytes();
+        if (reported >= 0) {
+            metrics.bytesWritten.add(reported);
+            return;
+        }
+        for (File file : files()) {
+            BasicFileAttributes now = attributes(file);
+            if (now != null) {
+                metrics.bytesWritten.add(written(before.get(file.getName()), now));
+            }
+        }
+    }
+
+    /**
+     * Estimate the bytes written to a file from its attributes before and after.
+     */
+    private static long written(BasicFileAttributes before, BasicFileAttributes after) {
+        if (before == null) {
+            // Created
+            return after.size();
+        }
+        Object key = after.fileKey();
+        if (key != null && !key.equals(before.fileKey())) {
+            // Replaced by a new file
+            return after.size();
+        }
+        if (after.size() > before.size()) {
+            // Appended to (or grown in place)
+            return after.size() - before.size();
+        }
+        if (key == null && !after.lastModifiedTime().equals(before.lastModifiedTime())) {
+            // Rewritten, as far as can be told without file keys
+            return after.size();
+        }
+        return 0;
+    }
+
+    private static BasicFileAttributes attributes(File file) {
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (IOException e) {
+            // Deleted meanwhile
+            return null;
+        }
+    }
+
+    /**
+     * @return the dictionary file and its siblings, without temporary and lock files
+     */
+    private List<File> files() {
+        List<File> files = new ArrayList<>();
+        for (File file : DictionaryFiles.family(dictFile)) {
+            String suffix = file.getName().substring(dictFile.getName().length());
+            if (!suffix.endsWith(".tmp") && !suffix.endsWith(".lock") && !suffix.endsWith(".compact")) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    @Override
+    public long lastFlushBytes() {
+        return dict.lastFlushBytes();
+    }
+
+    @Override
+    public String get(Object key) {
+        long start = System.nanoTime();
+        String value = dict.get(key);
+        metrics.get.record(System.nanoTime() - start);
+        (value != null ? metrics.hits : metrics.misses).increment();
+        return value;
+    }
+
+    @Override
+    public String put(String key, String value) {
+        long start = System.nanoTime();
+        String old = dict.put(key, value);
+        metrics.put.record(System.nanoTime() - start);
+        if (old == null) {
+            metrics.entries.incrementAndGet();
+        }
+        return old;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        long start = System.nanoTime();
+        boolean found = dict.containsKey(key);
+        metrics.get.record(System.nanoTime() - start);
+        (found ? metrics.hits : metrics.misses).increment();
+        return found;
+    }
+
+    @Override
+    public int size() {
+        return dict.size();
+    }
+
+    @Override
+    public String remove(Object key) {
+        long start = System.nanoTime();
+        String old = dict.remove(key);
+        metrics.remove.record(System.nanoTime() - start);
+        if (old != null) {
+            metrics.entries.decrementAndGet();
+        }
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        dict.clear();
+        metrics.entries.set(0);
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> range(String from, String to) {
+        return dict.range(from, to);
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> prefixScan(String prefix, int limit) {
+        return dict.prefixScan(prefix, limit);
+    }
+}
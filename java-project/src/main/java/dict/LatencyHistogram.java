@@ -0,0 +1,188 @@
+package dict;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent histogram of latencies in nanoseconds, with log-linear buckets like HdrHistogram's: each power
+ * of two is split into 16 buckets, so a recorded value is known to within 1/16 (6.25%) whatever its magnitude.
+ * <p>
+ * Recording is lock-free and allocation-free (an atomic increment and an addition), and the buckets take
+ * under 5KB. Values from 0 to 2^40 ns (about 18 minutes) are kept; longer ones are counted in the last
+ * bucket.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_BITS = 40;
+    private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+    private static final int BUCKETS = (MAX_BITS - SUB_BITS + 1) * SUB_BUCKETS;
+
+    /**
+     * The statistics of a histogram at one point in time (exposed through JMX as composite data).
+     */
+    public static class Snapshot {
+        private final long count;
+        private final double mean;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        Snapshot(long count, double mean, long p50, long p90, long p99, long p999, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanNanos() {
+            return mean;
+        }
+
+        public long getP50Nanos() {
+            return p50;
+        }
+
+        public long getP90Nanos() {
+            return p90;
+        }
+
+        public long getP99Nanos() {
+            return p99;
+        }
+
+        public long getP999Nanos() {
+            return p999;
+        }
+
+        public long getMaxNanos() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.0fns p50=%dns p90=%dns p99=%dns p99.9=%dns max=%dns",
+                    count, mean, p50, p90, p99, p999, max);
+        }
+    }
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Record one latency.
+     *
+     * @param nanos the latency in nanoseconds; negative values (from a clock that went back) count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+        buckets.incrementAndGet(bucketOf(value));
+        sum.add(value);
+    }
+
+    /**
+     * @return the number of recorded latencies
+     */
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the highest latency in the bucket of the latency at the percentile, or 0 if none were recorded
+     */
+    public long valueAtPercentile(double percentile) {
+        return valueAtPercentile(copyBuckets(), percentile);
+    }
+
+    /**
+     * @return the current statistics; recordings made while it is taken may be partly included
+     */
+    public Snapshot snapshot() {
+        long[] counts = copyBuckets();
+        long count = 0;
+        long max = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] > 0) {
+                count += counts[i];
+                max = highestValue(i);
+            }
+        }
+        double mean = count == 0 ? 0 : (double) sum.sum() / count;
+        return new Snapshot(count, mean, valueAtPercentile(counts, 50), valueAtPercentile(counts, 90),
+                valueAtPercentile(counts, 99), valueAtPercentile(counts, 99.9), max);
+    }
+
+    /**
+     * Forget all recorded latencies.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        sum.reset();
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        // The exponent picks a group of buckets, the bits under the leading one pick a bucket in it
+        int shift = msb - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long lowestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int group = bucket / SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (group - 1);
+    }
+
+    static long highestValue(int bucket) {
+        return bucket + 1 < BUCKETS ? lowestValue(bucket + 1) - 1 : MAX_VALUE;
+    }
+
+    private long[] copyBuckets() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+
+    private static long valueAtPercentile(long[] counts, double percentile) {
+        long count = 0;
+        for (long c : counts) {
+            count += c;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        // The rank of the value, counting from 1
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return highestValue(i);
+            }
+        }
+        return MAX_VALUE;
+    }
+}
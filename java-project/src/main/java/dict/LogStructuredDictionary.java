@@ -0,0 +1,339 @@
+package dict;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A persistent dictionary that keeps its contents in memory and appends every change to a log file,
+ * so that flushing costs about as much as the changes made rather than as much as the whole dictionary.
+ * <p>
+ * On disk the dictionary is made of two files:
+ * <ul>
+ * <li>the dictionary file itself, in the same <pre>word:def</pre> format as {@link InMemoryDictionary}</li>
+ * <li>a log file (the dictionary file name with a <code>.log</code> suffix) of put/remove/clear records.
+ * {@link #close()} appends a commit record; records after the last commit are discarded by {@link #open()}.</li>
+ * </ul>
+ * When the log is larger than both the compaction threshold and the dictionary file, the dictionary file is
+ * rewritten in the background and the log is truncated once the rewrite is done. This is checked by
+ * {@link #open()}, and whenever a commit record is appended, so a session that is closed from time to time
+ * without being reopened compacts too; records after the last commit can't be compacted, since open() must
+ * discard them. {@link #close()} waits for a compaction to finish, which costs about as much as the changes
+ * that grew the log past the dictionary file.
+ * <p>
+ * A log without its dictionary file is considered stale and is deleted.
+ */
+public class LogStructuredDictionary implements PersistentDictionary {
+    /**
+     * Default log size (in bytes) above which the log is compacted into the dictionary file.
+     */
+    public static final long DEFAULT_COMPACTION_THRESHOLD = 1 << 20;
+
+    // Log record types
+    private static final int OP_PUT = 1;
+    private static final int OP_REMOVE = 2;
+    private static final int OP_CLEAR = 3;
+    private static final int OP_COMMIT = 4;
+
+    private static final ExecutorService COMPACTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "dictionary-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final File dictFile;
+    private final File logFile;
+    private final long compactionThreshold;
+    private final TreeMap<String, String> map = new TreeMap<>();
+
+    private DataOutputStream log; // null until the first change after open()
+    private long logBytes; // length of the log file, including buffered records
+    private Future<?> compaction;
+
+    public LogStructuredDictionary(File dictFile) {
+        this(dictFile, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * @param dictFile            the dictionary file
+     * @param compactionThreshold the log size (in bytes) above which the log is compacted
+     */
+    public LogStructuredDictionary(File dictFile, long compactionThreshold) {
+        // Throw exception if the file is null
+        if (dictFile == null) {
+            throw new IllegalArgumentException("Dictionary file cannot be null.");
+        }
+        if (compactionThreshold < 0) {
+            throw new IllegalArgumentException("Compaction threshold cannot be negative.");
+        }
+        this.dictFile = dictFile;
+        this.logFile = DictionaryFiles.sibling(dictFile, ".log");
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    @Override
+    public void open() throws IOException {
+        awaitCompaction();
+        synchronized (this) {
+            closeLog();
+            map.clear();
+            // A log is only valid together with its dictionary file
+            if (!dictFile.exists()) {
+                logFile.delete();
+                return;
+            }
+            DictionaryFiles.readText(dictFile, map::put);
+            logBytes = replayLog();
+            // Compact a large log, starting from the state we just loaded
+            startCompaction();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        awaitCompaction();
+        synchronized (this) {
+            if (log != null) {
+                // May start a compaction
+                appendRecord(OP_COMMIT, null, null);
+                closeLog();
+            }
+        }
+        awaitCompaction();
+    }
+
+    @Override
+    public String get(Object key) {
+        return map.get(key);
+    }
+
+    @Override
+    public synchronized String put(String key, String value) {
+        String old = map.put(key, value);
+        appendRecord(OP_PUT, key, value);
+        return old;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return map.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public synchronized String remove(Object key) {
+        // Only log removals of words that were there
+        if (!map.containsKey(key)) {
+            return null;
+        }
+        String old = map.remove(key);
+        appendRecord(OP_REMOVE, (String) key, null);
+        return old;
+    }
+
+    @Override
+    public synchronized void clear() {
+        map.clear();
+        appendRecord(OP_CLEAR, null, null);
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> range(String from, String to) {
+        return DictionaryIterators.range(map, from, to);
+    }
+
+    /**
+     * Apply the committed records of the log to the map, and cut off anything after the last commit.
+     *
+     * @return the length of the committed part of the log
+     */
+    private long replayLog() throws IOException {
+        if (!logFile.exists()) {
+            return 0;
+        }
+        long committed = 0;
+        long pos = 0;
+        List<String[]> pending = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+            while (true) {
+                int op = in.read();
+                if (op < 0) {
+                    break;
+                }
+                pos += 1;
+                if (op == OP_PUT) {
+                    byte[] key = readBytes(in);
+                    byte[] value = readBytes(in);
+                    pending.add(new String[]{utf8(key), utf8(value)});
+                    pos += 8 + key.length + value.length;
+                } else if (op == OP_REMOVE) {
+                    byte[] key = readBytes(in);
+                    pending.add(new String[]{utf8(key), null});
+                    pos += 4 + key.length;
+                } else if (op == OP_CLEAR) {
+                    pending.add(null);
+                } else if (op == OP_COMMIT) {
+                    // Apply everything since the previous commit
+                    for (String[] change : pending) {
+                        if (change == null) {
+                            map.clear();
+                        } else if (change[1] == null) {
+                            map.remove(change[0]);
+                        } else {
+                            map.put(change[0], change[1]);
+                        }
+                    }
+                    pending.clear();
+                    committed = pos;
+                } else {
+                    throw new IOException("Corrupt dictionary log " + logFile + " at offset " + (pos - 1));
+                }
+            }
+        } catch (EOFException e) {
+            // A torn record at the end of the log was never committed
+        }
+        // Drop uncommitted (and torn) records so new records follow the last commit
+        if (committed < logFile.length()) {
+            try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+                raf.setLength(committed);
+            }
+        }
+        return committed;
+    }
+
+    /**
+     * Write the snapshot as the new dictionary file, then drop the log records it already contains.
+     *
+     * @param snapshot the dictionary contents up to the log offset mark
+     * @param mark     the log offset the snapshot corresponds to
+     */
+    private void compact(TreeMap<String, String> snapshot, long mark) throws IOException {
+        File tmpDict = DictionaryFiles.sibling(dictFile, ".compact");
+        DictionaryFiles.writeText(tmpDict, snapshot.entrySet());
+
+        synchronized (this) {
+            if (log != null) {
+                log.flush();
+            }
+            // Keep the records that were appended while the snapshot was being written
+            File tmpLog = DictionaryFiles.sibling(logFile, ".compact");
+            long tailBytes = 0;
+            try (RandomAccessFile in = new RandomAccessFile(logFile, "r");
+                 OutputStream out = new FileOutputStream(tmpLog)) {
+                in.seek(mark);
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    out.write(buf, 0, n);
+                    tailBytes += n;
+                }
+            }
+            // If we crash between these moves, replaying the whole log over the new file gives the same result
+            DictionaryFiles.replace(tmpDict, dictFile);
+            DictionaryFiles.replace(tmpLog, logFile);
+            if (log != null) {
+                log.close();
+                log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile, true)));
+            }
+            logBytes = tailBytes;
+        }
+    }
+
+    /**
+     * Compact the log in the background, if it is larger than both the compaction threshold and the
+     * dictionary file. Only called when the log ends with a commit, so the map is the state at its end.
+     */
+    private void startCompaction() {
+        if (compaction != null || logBytes <= Math.max(compactionThreshold, dictFile.length())) {
+            return;
+        }
+        TreeMap<String, String> snapshot = new TreeMap<>(map);
+        long mark = logBytes;
+        compaction = COMPACTOR.submit(() -> {
+            compact(snapshot, mark);
+            return null;
+        });
+    }
+
+    private void awaitCompaction() throws IOException {
+        Future<?> pending;
+        synchronized (this) {
+            pending = compaction;
+            compaction = null;
+        }
+        if (pending == null) {
+            return;
+        }
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compacting " + dictFile);
+        } catch (ExecutionException e) {
+            throw new IOException("Compaction of " + dictFile + " failed", e.getCause());
+        }
+    }
+
+    private void appendRecord(int op, String key, String value) {
+        try {
+            if (log == null) {
+                // Changes made before open(): start a fresh log next to a (possibly new) dictionary file
+                if (!dictFile.exists()) {
+                    dictFile.createNewFile();
+                    logFile.delete();
+                }
+                log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile, true)));
+                logBytes = logFile.length();
+            }
+            log.write(op);
+            logBytes += 1;
+            if (key != null) {
+                logBytes += writeString(log, key);
+            }
+            if (value != null) {
+                logBytes += writeString(log, value);
+            }
+            if (op == OP_COMMIT) {
+                startCompaction();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append to dictionary log " + logFile, e);
+        }
+    }
+
+    private void closeLog() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+    }
+
+    private static int writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        return 4 + bytes.length;
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static String utf8(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
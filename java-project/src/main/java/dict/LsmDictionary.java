@@ -0,0 +1,593 @@
+package dict;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A log-structured merge-tree (LSM) dictionary, whose size is not limited by the heap.
+ * <p>
+ * Changes go to a bounded in-memory memtable. When it fills up, it is written out as an immutable sorted
+ * run file (in the binary {@link SortedTable} format, where a removed word is a delete marker).
+ * Lookups check the memtable and then the runs from newest to oldest. When there are too many runs,
+ * a background compaction merges the newest runs of similar size into one; delete markers are dropped
+ * when the oldest run takes part in the merge.
+ * <p>
+ * Every run has a {@link BloomFilter} of its words, stored next to it with a <code>.bloom</code> suffix and
+ * loaded by {@link #open()}, so looking up a missing word rarely reads any run. The counters
+ * {@link #bloomNegatives()}, {@link #bloomPositives()} and {@link #bloomFalsePositives()} help tune the
+ * false positive rate.
+ * <p>
+ * The dictionary file is a small text manifest listing the runs (named after the dictionary file,
+ * with a <code>.run</code><i>N</i> suffix) and the number of words. It is only rewritten by {@link #close()},
+ * so {@link #open()} still undoes changes made since the last close: runs that the manifest does not list are
+ * deleted, and runs that were merged away are only deleted once a new manifest no longer lists them.
+ * <p>
+ * {@link #range(String, String)} reads the runs through their open readers, a block at a time, so an iterator
+ * that is abandoned before its end holds no file. Runs merged away stay open for the iterators still reading
+ * them; iterators fail once the dictionary is closed.
+ * <p>
+ * Definitions cannot be null. Since {@link #put} and {@link #remove} return the previous definition,
+ * every change also does a lookup, which reads the runs for a word the memtable doesn't hold. Bulk loads
+ * should use {@link #write} and {@link #delete} instead, which don't look anything up: after such a change to
+ * a word the memtable didn't hold, the number of words is unknown until {@link #size()} counts them again.
+ */
+public class LsmDictionary implements PersistentDictionary {
+    /**
+     * Default memtable size (estimated bytes of heap) that triggers writing a run.
+     */
+    public static final long DEFAULT_MEMTABLE_BYTES = 4 << 20;
+    /**
+     * Default number of runs above which a compaction starts.
+     */
+    public static final int DEFAULT_MAX_RUNS = 8;
+    /**
+     * Default false positive rate of the runs' Bloom filters.
+     */
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    private static final String MANIFEST_HEADER = "LSM 1";
+    private static final String RUN_SUFFIX = ".run";
+    private static final String BLOOM_SUFFIX = ".bloom";
+    private static final int ENTRY_OVERHEAD = 64; // estimated heap bytes per memtable entry, besides the strings
+
+    private static final ExecutorService COMPACTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "lsm-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * An immutable sorted run file and the Bloom filter of its words.
+     */
+    private static class Run {
+        final File file;
+        final SortedTable.Reader reader;
+        final BloomFilter bloom;
+
+        Run(File file, BloomFilter bloom) throws IOException {
+            this.file = file;
+            this.reader = new SortedTable.Reader(file);
+            this.bloom = bloom;
+        }
+    }
+
+    private final File dictFile;
+    private final long memtableLimit;
+    private final int maxRuns;
+    private final double falsePositiveRate;
+
+    private TreeMap<String, String> memtable = new TreeMap<>(); // null values are delete markers
+    private long memtableBytes;
+    private final List<Run> runs = new ArrayList<>(); // newest first
+    private final List<File> obsolete = new ArrayList<>(); // merged runs, deleted by the next close()
+    // Runs no longer read by lookups, kept open for the range iterators reading them until close() or open()
+    private final List<Run> retired = new ArrayList<>();
+    private int size;
+    private boolean sizeKnown = true; // if false, size is stale, after changes that didn't look the word up
+    private long nextRunId;
+    private Future<?> compaction;
+
+    // Bloom filter statistics: runs skipped, runs read, and runs read in vain
+    private long bloomNegatives;
+    private long bloomPositives;
+    private long bloomFalsePositives;
+
+    public LsmDictionary(File dictFile) {
+        this(dictFile, DEFAULT_MEMTABLE_BYTES, DEFAULT_MAX_RUNS, DEFAULT_FALSE_POSITIVE_RATE);
+    }
+
+    /**
+     * @param dictFile      the manifest file of the dictionary
+     * @param memtableLimit the estimated heap size (in bytes) of the memtable that triggers writing a run
+     * @param maxRuns       the number of runs above which a compaction starts
+     */
+    public LsmDictionary(File dictFile, long memtableLimit, int maxRuns) {
+        this(dictFile, memtableLimit, maxRuns, DEFAULT_FALSE_POSITIVE_RATE);
+    }
+
+    /**
+     * @param dictFile          the manifest file of the dictionary
+     * @param memtableLimit     the estimated heap size (in bytes) of the memtable that triggers writing a run
+     * @param maxRuns           the number of runs above which a compaction starts
+     * @param falsePositiveRate the false positive rate of the Bloom filters of new runs
+     */
+    public LsmDictionary(File dictFile, long memtableLimit, int maxRuns, double falsePositiveRate) {
+        // Throw exception if the file is null
+        if (dictFile == null) {
+            throw new IllegalArgumentException("Dictionary file cannot be null.");
+        }
+        if (memtableLimit <= 0 || maxRuns < 2) {
+            throw new IllegalArgumentException("Memtable limit must be positive and max runs at least 2.");
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1.");
+        }
+        this.dictFile = dictFile;
+        this.memtableLimit = memtableLimit;
+        this.maxRuns = maxRuns;
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    @Override
+    public void open() throws IOException {
+        awaitCompaction();
+        synchronized (this) {
+            closeRuns();
+            memtable = new TreeMap<>();
+            memtableBytes = 0;
+            obsolete.clear();
+            size = 0;
+            sizeKnown = true;
+            nextRunId = 0;
+            List<String> listed = readManifest();
+            // Delete runs from an unfinished session (or a deleted manifest)
+            for (File file : runFiles()) {
+                String name = file.getName();
+                if (name.endsWith(BLOOM_SUFFIX)) {
+                    name = name.substring(0, name.length() - BLOOM_SUFFIX.length());
+                }
+                if (!listed.contains(name)) {
+                    file.delete();
+                }
+            }
+            // The manifest lists the oldest run first
+            for (String name : listed) {
+                runs.add(0, openRun(new File(dictFile.getAbsoluteFile().getParentFile(), name)));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            flushMemtable();
+        }
+        awaitCompaction();
+        synchronized (this) {
+            writeManifest();
+            for (File file : obsolete) {
+                deleteRun(file);
+            }
+            obsolete.clear();
+            closeRuns();
+        }
+    }
+
+    @Override
+    public synchronized String get(Object key) {
+        String word = (String) key;
+        if (memtable.containsKey(word)) {
+            return memtable.get(word);
+        }
+        try {
+            for (Run run : runs) {
+                if (!run.bloom.mightContain(word)) {
+                    bloomNegatives++;
+                    continue;
+                }
+                bloomPositives++;
+                Map.Entry<String, String> entry = run.reader.find(word);
+                if (entry != null) {
+                    return entry.getValue();
+                }
+                bloomFalsePositives++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read dictionary run", e);
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized Iterator<Map.Entry<String, String>> range(String from, String to) {
+        // The memtable and the runs, newest first, merged without reading ahead; delete markers are skipped
+        List<Iterator<Map.Entry<String, String>>> sources = new ArrayList<>();
+        sources.add(DictionaryIterators.range(memtable, from, to));
+        for (Run run : runs) {
+            sources.add(run.reader.iterator(from));
+        }
+        return DictionaryIterators.live(new MergingIterator(sources), to);
+    }
+
+    @Override
+    public synchronized String put(String key, String value) {
+        if (value == null) {
+            throw new NullPointerException("Definitions cannot be null");
+        }
+        String old = get(key);
+        if (old == null) {
+            size++;
+        }
+        change(key, value);
+        return old;
+    }
+
+    /**
+     * Set the definition of a word, like {@link #put}, but without looking up the previous definition.
+     */
+    public synchronized void write(String key, String value) {
+        if (value == null) {
+            throw new NullPointerException("Definitions cannot be null");
+        }
+        countBlindChange(key, true);
+        change(key, value);
+    }
+
+    /**
+     * Remove a word, like {@link #remove}, but without looking it up: a delete marker is written even if the
+     * word is not in the dictionary.
+     */
+    public synchronized void delete(String key) {
+        countBlindChange(Objects.requireNonNull(key), false);
+        change(key, null);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return the number of words, counted by reading all the runs if {@link #write} or {@link #delete}
+     * changed words the memtable didn't hold
+     */
+    @Override
+    public synchronized int size() {
+        if (!sizeKnown) {
+            int count = 0;
+            for (Iterator<Map.Entry<String, String>> it = range(null, null); it.hasNext(); it.next()) {
+                count++;
+            }
+            size = count;
+            sizeKnown = true;
+        }
+        return size;
+    }
+
+    @Override
+    public synchronized String remove(Object key) {
+        String old = get(key);
+        if (old != null) {
+            size--;
+            change((String) key, null);
+        }
+        return old;
+    }
+
+    /**
+     * @return the number of times a run was not read because its Bloom filter ruled out the word
+     */
+    public synchronized long bloomNegatives() {
+        return bloomNegatives;
+    }
+
+    /**
+     * @return the number of times a run was read because its Bloom filter may have contained the word
+     */
+    public synchronized long bloomPositives() {
+        return bloomPositives;
+    }
+
+    /**
+     * @return the number of times a run was read because of its Bloom filter, but did not have the word
+     */
+    public synchronized long bloomFalsePositives() {
+        return bloomFalsePositives;
+    }
+
+    @Override
+    public synchronized void clear() {
+        // A running compaction notices its runs are gone and discards its result
+        for (Run run : runs) {
+            obsolete.add(run.file);
+            retired.add(run);
+        }
+        runs.clear();
+        memtable = new TreeMap<>();
+        memtableBytes = 0;
+        size = 0;
+        sizeKnown = true;
+    }
+
+    /**
+     * Keep the number of words up to date for a change that didn't look the word up, if the memtable (or the
+     * lack of runs) tells whether the word was there.
+     *
+     * @param present whether the word is in the dictionary after the change
+     */
+    private void countBlindChange(String key, boolean present) {
+        if (!sizeKnown) {
+            return;
+        }
+        if (memtable.containsKey(key) || runs.isEmpty()) {
+            boolean was = memtable.get(key) != null;
+            size += (present ? 1 : 0) - (was ? 1 : 0);
+        } else {
+            sizeKnown = false;
+        }
+    }
+
+    /**
+     * Record a change in the memtable, writing it out as a run if it is full.
+     */
+    private void change(String key, String value) {
+        boolean existed = memtable.containsKey(key);
+        String previous = memtable.put(key, value);
+        if (!existed) {
+            memtableBytes += ENTRY_OVERHEAD + 2L * key.length();
+        }
+        memtableBytes += 2L * ((value == null ? 0 : value.length()) - (previous == null ? 0 : previous.length()));
+        if (memtableBytes >= memtableLimit) {
+            try {
+                flushMemtable();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write dictionary run", e);
+            }
+        }
+    }
+
+    /**
+     * Write the memtable as the newest run, and start a compaction if there are too many runs.
+     */
+    private void flushMemtable() throws IOException {
+        if (memtable.isEmpty()) {
+            return;
+        }
+        File file = newRunFile();
+        BloomFilter bloom = BloomFilter.create(memtable.size(), falsePositiveRate);
+        try (SortedTable.Writer writer = new SortedTable.Writer(file)) {
+            for (Map.Entry<String, String> entry : memtable.entrySet()) {
+                writer.add(entry.getKey(), entry.getValue());
+                bloom.add(entry.getKey());
+            }
+        }
+        bloom.writeTo(DictionaryFiles.sibling(file, BLOOM_SUFFIX));
+        runs.add(0, new Run(file, bloom));
+        memtable = new TreeMap<>();
+        memtableBytes = 0;
+
+        if (runs.size() > maxRuns && compaction == null) {
+            List<Run> group = pickCompaction();
+            boolean includesOldest = group.get(group.size() - 1) == runs.get(runs.size() - 1);
+            File output = newRunFile();
+            compaction = COMPACTOR.submit(() -> {
+                compact(group, output, includesOldest);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Pick the newest runs of similar size: starting from the newest run, keep adding older runs
+     * while each is at most twice the size of the runs picked so far. At least two runs are picked.
+     */
+    private List<Run> pickCompaction() {
+        List<Run> group = new ArrayList<>();
+        long groupBytes = 0;
+        for (Run run : runs) {
+            long bytes = run.file.length();
+            if (group.size() >= 2 && bytes > 2 * groupBytes) {
+                break;
+            }
+            group.add(run);
+            groupBytes += bytes;
+        }
+        return group;
+    }
+
+    /**
+     * Merge a group of consecutive runs (newest first) into one output run, in the background.
+     */
+    private void compact(List<Run> group, File output, boolean dropDeleteMarkers) throws IOException {
+        List<Iterator<Map.Entry<String, String>>> sources = new ArrayList<>();
+        long expectedWords = 0;
+        for (Run run : group) {
+            sources.add(run.reader.iterator());
+            expectedWords += run.reader.entryCount();
+        }
+        BloomFilter bloom = BloomFilter.create(expectedWords, falsePositiveRate);
+        try (SortedTable.Writer writer = new SortedTable.Writer(output)) {
+            MergingIterator merged = new MergingIterator(sources);
+            while (merged.hasNext()) {
+                Map.Entry<String, String> entry = merged.next();
+                if (entry.getValue() != null || !dropDeleteMarkers) {
+                    writer.add(entry.getKey(), entry.getValue());
+                    bloom.add(entry.getKey());
+                }
+            }
+        } catch (UncheckedIOException e) {
+            output.delete();
+            throw e.getCause();
+        }
+        bloom.writeTo(DictionaryFiles.sibling(output, BLOOM_SUFFIX));
+
+        synchronized (this) {
+            int first = runs.indexOf(group.get(0));
+            if (first < 0 || !runs.subList(first, runs.size()).containsAll(group)) {
+                // The dictionary was cleared (or reopened) in the meantime
+                deleteRun(output);
+                return;
+            }
+            runs.subList(first, first + group.size()).clear();
+            runs.add(first, new Run(output, bloom));
+            for (Run run : group) {
+                obsolete.add(run.file);
+                retired.add(run);
+            }
+        }
+    }
+
+    private void awaitCompaction() throws IOException {
+        Future<?> pending;
+        synchronized (this) {
+            pending = compaction;
+        }
+        if (pending == null) {
+            return;
+        }
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compacting " + dictFile);
+        } catch (ExecutionException e) {
+            throw new IOException("Compaction of " + dictFile + " failed", e.getCause());
+        } finally {
+            synchronized (this) {
+                if (compaction == pending) {
+                    compaction = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the names of the runs listed in the manifest, oldest first
+     */
+    private List<String> readManifest() throws IOException {
+        List<String> names = new ArrayList<>();
+        if (!dictFile.exists() || dictFile.length() == 0) {
+            return names;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(dictFile))) {
+            if (!MANIFEST_HEADER.equals(reader.readLine())) {
+                throw new IOException(dictFile + " is not an LSM dictionary manifest");
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int sep = line.indexOf(' ');
+                String field = sep < 0 ? line : line.substring(0, sep);
+                String arg = sep < 0 ? "" : line.substring(sep + 1);
+                switch (field) {
+                    case "size":
+                        // -1 if the number of words was not known
+                        size = Integer.parseInt(arg);
+                        sizeKnown = size >= 0;
+                        break;
+                    case "next":
+                        nextRunId = Long.parseLong(arg);
+                        break;
+                    case "run":
+                        names.add(arg);
+                        break;
+                    default:
+                        throw new IOException("Unknown line in LSM dictionary manifest " + dictFile + ": " + line);
+                }
+            }
+        }
+        return names;
+    }
+
+    private void writeManifest() throws IOException {
+        File tmp = DictionaryFiles.sibling(dictFile, ".tmp");
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(tmp)))) {
+            writer.println(MANIFEST_HEADER);
+            writer.println("size " + (sizeKnown ? size : -1));
+            writer.println("next " + nextRunId);
+            for (int i = runs.size() - 1; i >= 0; i--) {
+                writer.println("run " + runs.get(i).file.getName());
+            }
+        }
+        DictionaryFiles.replace(tmp, dictFile);
+    }
+
+    /**
+     * Open a listed run with its Bloom filter, rebuilding the filter if its file is missing.
+     */
+    private Run openRun(File file) throws IOException {
+        File bloomFile = DictionaryFiles.sibling(file, BLOOM_SUFFIX);
+        if (bloomFile.exists()) {
+            return new Run(file, BloomFilter.readFrom(bloomFile));
+        }
+        try (SortedTable.Reader reader = new SortedTable.Reader(file)) {
+            BloomFilter bloom = BloomFilter.create(reader.entryCount(), falsePositiveRate);
+            for (Map.Entry<String, String> entry : reader) {
+                bloom.add(entry.getKey());
+            }
+            bloom.writeTo(bloomFile);
+            return new Run(file, bloom);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void deleteRun(File file) {
+        file.delete();
+        DictionaryFiles.sibling(file, BLOOM_SUFFIX).delete();
+    }
+
+    private File newRunFile() {
+        return DictionaryFiles.sibling(dictFile, RUN_SUFFIX + nextRunId++);
+    }
+
+    /**
+     * @return all run files (and their Bloom filter files) that belong to this dictionary, listed or not
+     */
+    private List<File> runFiles() {
+        List<File> files = new ArrayList<>();
+        File dir = dictFile.getAbsoluteFile().getParentFile();
+        String prefix = dictFile.getName() + RUN_SUFFIX;
+        File[] candidates = dir.listFiles();
+        if (candidates != null) {
+            for (File file : candidates) {
+                String name = file.getName();
+                if (name.endsWith(BLOOM_SUFFIX)) {
+                    name = name.substring(0, name.length() - BLOOM_SUFFIX.length());
+                }
+                if (name.startsWith(prefix) && name.length() > prefix.length()
+                        && name.substring(prefix.length()).chars().allMatch(Character::isDigit)) {
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+    private void closeRuns() {
+        for (Run run : runs) {
+            closeQuietly(run);
+        }
+        runs.clear();
+        for (Run run : retired) {
+            closeQuietly(run);
+        }
+        retired.clear();
+    }
+
+    private static void closeQuietly(Run run) {
+        try {
+            run.reader.close();
+        } catch (IOException e) {
+            // Nothing more to do with a read-only file
+        }
+    }
+}
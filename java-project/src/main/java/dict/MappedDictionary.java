@@ -0,0 +1,328 @@
+package dict;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * A read-mostly persistent dictionary that memory-maps a sorted binary file.
+ * {@link #open()} only maps the file, so it takes about the same time for any dictionary size, and the
+ * entries stay in the page cache rather than on the Java heap. Lookups binary-search an offset table.
+ * <p>
+ * Changes are kept in a small in-memory overlay (a removed word maps to null) and merged with the
+ * mapped entries into a new file by {@link #close()}. A dictionary that was not changed is not rewritten.
+ * <p>
+ * The file format (all numbers big-endian):
+ * <pre>
+ * int magic ("DMAP"), int version, int count, int tableOffset
+ * count records: int keyLength, key (UTF-8), int valueLength, value (UTF-8) -- sorted by key
+ * count ints at tableOffset: the offset of each record
+ * </pre>
+ * An empty or missing file is an empty dictionary. Files are limited to 2GB (a single mapping).
+ */
+public class MappedDictionary implements PersistentDictionary {
+    static final int MAGIC = 0x444d4150; // "DMAP"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    private final File dictFile;
+
+    private MappedByteBuffer buf; // null when there is no mapped file
+    private int count; // number of records in the mapped file
+    private int tableOffset;
+
+    private final TreeMap<String, String> changes = new TreeMap<>();
+    private boolean cleared; // if true, the mapped records are no longer part of the dictionary
+    private int size;
+
+    public MappedDictionary(File dictFile) {
+        // Throw exception if the file is null
+        if (dictFile == null) {
+            throw new IllegalArgumentException("Dictionary file cannot be null.");
+        }
+        this.dictFile = dictFile;
+    }
+
+    @Override
+    public void open() throws IOException {
+        unmap();
+        changes.clear();
+        cleared = false;
+        size = 0;
+        if (!dictFile.exists() || dictFile.length() == 0) {
+            return;
+        }
+        if (dictFile.length() > Integer.MAX_VALUE) {
+            throw new IOException("Dictionary file " + dictFile + " is larger than 2GB");
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(dictFile, "r");
+             FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buf.limit() < HEADER_SIZE || buf.getInt(0) != MAGIC) {
+            unmap();
+            throw new IOException(dictFile + " is not a mapped dictionary file");
+        }
+        if (buf.getInt(4) != VERSION) {
+            int version = buf.getInt(4);
+            unmap();
+            throw new IOException("Unsupported mapped dictionary version " + version + " in " + dictFile);
+        }
+        count = buf.getInt(8);
+        tableOffset = buf.getInt(12);
+        size = count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (changes.isEmpty() && !cleared) {
+            // Nothing to write
+            unmap();
+            return;
+        }
+        File tmp = DictionaryFiles.sibling(dictFile, ".tmp");
+        try (Writer writer = new Writer(tmp)) {
+            // Merge the sorted mapped records with the sorted changes
+            Iterator<Map.Entry<String, String>> changed = changes.entrySet().iterator();
+            Map.Entry<String, String> change = changed.hasNext() ? changed.next() : null;
+            int records = cleared ? 0 : count;
+            for (int i = 0; i < records; i++) {
+                int off = recordOffset(i);
+                String key = Utf8.decode(buf, off + 4, buf.getInt(off));
+                // Write the changes that come before this record
+                while (change != null && change.getKey().compareTo(key) < 0) {
+                    writer.add(change.getKey(), change.getValue());
+                    change = changed.hasNext() ? changed.next() : null;
+                }
+                if (change != null && change.getKey().equals(key)) {
+                    // Changed (or removed) word
+                    writer.add(key, change.getValue());
+                    change = changed.hasNext() ? changed.next() : null;
+                } else {
+                    writer.add(key, valueAt(off));
+                }
+            }
+            while (change != null) {
+                writer.add(change.getKey(), change.getValue());
+                change = changed.hasNext() ? changed.next() : null;
+            }
+        }
+        unmap();
+        DictionaryFiles.replace(tmp, dictFile);
+        changes.clear();
+        cleared = false;
+    }
+
+    @Override
+    public String get(Object key) {
+        String word = (String) Objects.requireNonNull(key);
+        if (changes.containsKey(word)) {
+            return changes.get(word);
+        }
+        int off = find(word);
+        return off < 0 ? null : valueAt(off);
+    }
+
+    @Override
+    public String put(String key, String value) {
+        Objects.requireNonNull(value, "Definitions cannot be null");
+        String old = get(key);
+        changes.put(key, value);
+        if (old == null) {
+            size++;
+        }
+        return old;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String remove(Object key) {
+        String old = get(key);
+        if (old != null) {
+            changes.put((String) key, null);
+            size--;
+        }
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        changes.clear();
+        cleared = true;
+        size = 0;
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> range(String from, String to) {
+        // The overlay takes precedence over the mapped records; removed words are skipped
+        Iterator<Map.Entry<String, String>> changed = DictionaryIterators.range(changes, from, to);
+        return DictionaryIterators.live(new MergingIterator(List.of(changed, new RecordIterator(from))), to);
+    }
+
+    /**
+     * Iterates the mapped records in key order, decoding each one only when it is returned.
+     */
+    private class RecordIterator implements Iterator<Map.Entry<String, String>> {
+        private final MappedByteBuffer records = buf;
+        private int index;
+
+        RecordIterator(String from) {
+            index = records == null || cleared ? count : (from == null ? 0 : lowerBound(from));
+        }
+
+        @Override
+        public boolean hasNext() {
+            return records != null && records == buf && index < count;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int off = recordOffset(index++);
+            return new AbstractMap.SimpleImmutableEntry<>(Utf8.decode(buf, off + 4, buf.getInt(off)), valueAt(off));
+        }
+    }
+
+    /**
+     * Binary search the mapped records for the first word that is not less than the given word.
+     *
+     * @return the index of that record, or count if there is none
+     */
+    private int lowerBound(String word) {
+        byte[] key = Utf8.encode(word);
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int off = recordOffset(mid);
+            if (Utf8.compare(buf, off + 4, buf.getInt(off), key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Binary search the mapped records for the word.
+     *
+     * @return the offset of the word's record, or -1 if the mapped file does not contain it
+     */
+    private int find(String word) {
+        if (buf == null || cleared) {
+            return -1;
+        }
+        byte[] key = Utf8.encode(word);
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int off = recordOffset(mid);
+            int cmp = Utf8.compare(buf, off + 4, buf.getInt(off), key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return off;
+            }
+        }
+        return -1;
+    }
+
+    private int recordOffset(int i) {
+        return buf.getInt(tableOffset + 4 * i);
+    }
+
+    private String valueAt(int recordOffset) {
+        int valueOffset = recordOffset + 4 + buf.getInt(recordOffset);
+        return Utf8.decode(buf, valueOffset + 4, buf.getInt(valueOffset));
+    }
+
+    private void unmap() {
+        // A MappedByteBuffer is unmapped when it is garbage collected
+        buf = null;
+        count = 0;
+        tableOffset = 0;
+    }
+
+    /**
+     * Writes a mapped dictionary file from entries given in sorted order. A null value skips the entry.
+     */
+    static class Writer implements Closeable {
+        private final File file;
+        private final DataOutputStream out;
+        private int[] offsets = new int[1024];
+        private int count;
+        private long pos = HEADER_SIZE;
+
+        Writer(File file) throws IOException {
+            this.file = file;
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            // The header is filled in by close()
+            out.write(new byte[HEADER_SIZE]);
+        }
+
+        void add(String key, String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+            if (pos + 8 + keyBytes.length + valueBytes.length > Integer.MAX_VALUE) {
+                throw new IOException("Mapped dictionary file " + file + " would be larger than 2GB");
+            }
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            offsets[count++] = (int) pos;
+            out.writeInt(keyBytes.length);
+            out.write(keyBytes);
+            out.writeInt(valueBytes.length);
+            out.write(valueBytes);
+            pos += 8 + keyBytes.length + valueBytes.length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (pos + 4L * count > Integer.MAX_VALUE) {
+                    throw new IOException("Mapped dictionary file " + file + " would be larger than 2GB");
+                }
+                for (int i = 0; i < count; i++) {
+                    out.writeInt(offsets[i]);
+                }
+            } finally {
+                out.close();
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.writeInt(MAGIC);
+                raf.writeInt(VERSION);
+                raf.writeInt(count);
+                raf.writeInt((int) pos);
+            }
+        }
+    }
+}
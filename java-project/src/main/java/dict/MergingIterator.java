@@ -0,0 +1,77 @@
+package dict;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Merges several iterators of entries sorted by key into one sorted iterator.
+ * When more than one source has the same key, only the entry from the source that comes first in the list
+ * is returned (so sources should be given newest first). Entries with null values (delete markers)
+ * are returned like any other entry.
+ */
+class MergingIterator implements Iterator<Map.Entry<String, String>> {
+
+    /**
+     * The current entry of one source.
+     */
+    private static class Head implements Comparable<Head> {
+        final int source;
+        final Iterator<? extends Map.Entry<String, String>> it;
+        Map.Entry<String, String> entry;
+
+        Head(int source, Iterator<? extends Map.Entry<String, String>> it) {
+            this.source = source;
+            this.it = it;
+            this.entry = it.next();
+        }
+
+        @Override
+        public int compareTo(Head other) {
+            int cmp = entry.getKey().compareTo(other.entry.getKey());
+            return cmp != 0 ? cmp : Integer.compare(source, other.source);
+        }
+    }
+
+    private final PriorityQueue<Head> heads = new PriorityQueue<>();
+
+    /**
+     * @param sources the sorted sources, in order of precedence
+     */
+    MergingIterator(List<? extends Iterator<? extends Map.Entry<String, String>>> sources) {
+        for (int i = 0; i < sources.size(); i++) {
+            if (sources.get(i).hasNext()) {
+                heads.add(new Head(i, sources.get(i)));
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !heads.isEmpty();
+    }
+
+    @Override
+    public Map.Entry<String, String> next() {
+        Head head = heads.poll();
+        if (head == null) {
+            throw new NoSuchElementException();
+        }
+        Map.Entry<String, String> result = head.entry;
+        advance(head);
+        // Skip the same key in sources with lower precedence
+        while (!heads.isEmpty() && heads.peek().entry.getKey().equals(result.getKey())) {
+            advance(heads.poll());
+        }
+        return result;
+    }
+
+    private void advance(Head head) {
+        if (head.it.hasNext()) {
+            head.entry = head.it.next();
+            heads.add(head);
+        }
+    }
+}
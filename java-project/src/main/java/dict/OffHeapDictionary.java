@@ -0,0 +1,451 @@
+package dict;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Implements a persistent dictionary that is held in memory outside the Java heap, so that very large
+ * dictionaries don't make the heap (and the garbage collector's work) large.
+ * <p>
+ * Words and definitions are stored as UTF-8 records in direct byte buffers (chunks of an arena), and found
+ * through an open-addressing hash table, also in a direct buffer: a slot holds the address of a record and
+ * the hash of its word, and a lookup compares the word with the record in place. A sorted index of the
+ * records, for {@link #range(String, String)}, is built (in a direct buffer, with heapsort) by the first range
+ * after a change. The heap only holds the buffer objects, whatever the size of the dictionary.
+ * <p>
+ * A changed definition is written as a new record; the arena is compacted when more than half of it is old
+ * records. Like {@link InMemoryDictionary}, the whole dictionary is read by {@link #open()} and written by
+ * {@link #close()}, in either file format; a dictionary that was not changed is not rewritten. {@link #close()}
+ * releases the buffers (their memory is returned when the garbage collector collects them; allocating direct
+ * memory past its limit triggers a collection).
+ * <p>
+ * Record layout: int keyLength, key (UTF-8), int valueLength, value (UTF-8). A record's address is its chunk
+ * index in the high 32 bits and its offset in the chunk in the low 32 bits.
+ * <p>
+ * The dictionary is not thread-safe.
+ */
+public class OffHeapDictionary implements PersistentDictionary {
+    private static final int FIRST_CHUNK = 64 << 10;
+    private static final int MAX_CHUNK = 64 << 20;
+    private static final int MIN_SLOTS = 16;
+    private static final int SLOT_SIZE = 16; // long address + 1 (0 for an empty slot), long hash
+
+    private final File dictFile;
+    private final DictionaryFormat format;
+
+    private Arena arena = new Arena();
+    private ByteBuffer slots; // the hash table, or null before the first word
+    private int slotCount;
+    private int size;
+    private ByteBuffer sorted; // the record addresses in key order, or null if the dictionary changed since
+    private boolean changed; // since the last open() or close()
+
+    public OffHeapDictionary(File dictFile) {
+        this(dictFile, DictionaryFormat.TEXT);
+    }
+
+    /**
+     * @param dictFile the dictionary file
+     * @param format   the format {@link #close()} writes the file in
+     */
+    public OffHeapDictionary(File dictFile, DictionaryFormat format) {
+        // Throw exception if the file or format is null
+        if (dictFile == null) {
+            throw new IllegalArgumentException("Dictionary file cannot be null.");
+        }
+        if (format == null) {
+            throw new IllegalArgumentException("Dictionary format cannot be null.");
+        }
+        this.dictFile = dictFile;
+        this.format = format;
+    }
+
+    @Override
+    public void open() throws IOException {
+        release();
+        // Read the file in whichever format it is (a missing file is an empty dictionary)
+        DictionaryFiles.read(dictFile, this::put);
+        // Nothing needs to be written until something changes, unless the file is in another format
+        changed = dictFile.exists() && DictionaryFiles.formatOf(dictFile) != format;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (changed) {
+            // Write the entries in key order
+            DictionaryFiles.write(dictFile, () -> range(null, null), format);
+            changed = false;
+        }
+        release();
+    }
+
+    /**
+     * @return the bytes of memory outside the heap that the dictionary holds
+     */
+    public long offHeapBytes() {
+        return arena.capacity() + (slots == null ? 0 : slots.capacity()) + (sorted == null ? 0 : sorted.capacity());
+    }
+
+    @Override
+    public String get(Object key) {
+        String word = (String) Objects.requireNonNull(key);
+        int slot = find(word, FrozenDictionary.hash(word, 0));
+        return slot < 0 ? null : arena.value(address(slot));
+    }
+
+    @Override
+    public String put(String key, String value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value, "Definitions cannot be null");
+        long hash = FrozenDictionary.hash(key, 0);
+        int slot = find(key, hash);
+        String old = null;
+        if (slot >= 0) {
+            // The old record becomes garbage
+            long address = address(slot);
+            old = arena.value(address);
+            arena.garbage += arena.recordSize(address);
+        } else {
+            if (slots == null || (size + 1) * 4L > slotCount * 3L) {
+                // Keep the table at most 3/4 full
+                resize(slots == null ? MIN_SLOTS : slotCount * 2);
+            }
+            slot = find(key, hash);
+            slot = -slot - 1;
+            slots.putLong(slot * SLOT_SIZE + 8, hash);
+            size++;
+        }
+        slots.putLong(slot * SLOT_SIZE, arena.add(Utf8.encode(key), Utf8.encode(value)) + 1);
+        sorted = null;
+        changed = true;
+        compactIfWasteful();
+        return old;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        String word = (String) Objects.requireNonNull(key);
+        return find(word, FrozenDictionary.hash(word, 0)) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String remove(Object key) {
+        String word = (String) Objects.requireNonNull(key);
+        int slot = find(word, FrozenDictionary.hash(word, 0));
+        if (slot < 0) {
+            return null;
+        }
+        long address = address(slot);
+        String old = arena.value(address);
+        arena.garbage += arena.recordSize(address);
+        removeSlot(slot);
+        size--;
+        sorted = null;
+        changed = true;
+        compactIfWasteful();
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        changed |= size > 0;
+        release();
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> range(String from, String to) {
+        if (sorted == null) {
+            sort();
+        }
+        // The iterator keeps the arena and index it started with, so later changes don't move its records
+        Arena records = arena;
+        ByteBuffer index = sorted;
+        int start = from == null ? 0 : lowerBound(records, index, Utf8.encode(from));
+        int end = to == null ? size : lowerBound(records, index, Utf8.encode(to));
+        return new Iterator<Map.Entry<String, String>>() {
+            private int i = start;
+
+            @Override
+            public boolean hasNext() {
+                return i < end;
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+                if (i >= end) {
+                    throw new NoSuchElementException();
+                }
+                long address = index.getLong(8 * i++);
+                return new AbstractMap.SimpleImmutableEntry<>(records.key(address), records.value(address));
+            }
+        };
+    }
+
+    /**
+     * Find a word in the hash table.
+     *
+     * @return the slot of the word, or -(the empty slot where it would be inserted) - 1
+     */
+    private int find(String word, long hash) {
+        if (slots == null) {
+            return -1;
+        }
+        int mask = slotCount - 1;
+        for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+            long stored = slots.getLong(slot * SLOT_SIZE);
+            if (stored == 0) {
+                return -slot - 1;
+            }
+            if (slots.getLong(slot * SLOT_SIZE + 8) == hash && arena.keyEquals(stored - 1, word)) {
+                return slot;
+            }
+        }
+    }
+
+    private long address(int slot) {
+        return slots.getLong(slot * SLOT_SIZE) - 1;
+    }
+
+    /**
+     * Empty a slot, moving the following entries of its probe sequence back so no lookup stops early
+     * (backward shift deletion, instead of tombstones).
+     */
+    private void removeSlot(int slot) {
+        int mask = slotCount - 1;
+        int hole = slot;
+        for (int next = (slot + 1) & mask; slots.getLong(next * SLOT_SIZE) != 0; next = (next + 1) & mask) {
+            int home = (int) slots.getLong(next * SLOT_SIZE + 8) & mask;
+            // The entry may move back to the hole if the hole is between its home slot and its slot
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                slots.putLong(hole * SLOT_SIZE, slots.getLong(next * SLOT_SIZE));
+                slots.putLong(hole * SLOT_SIZE + 8, slots.getLong(next * SLOT_SIZE + 8));
+                hole = next;
+            }
+        }
+        slots.putLong(hole * SLOT_SIZE, 0);
+        slots.putLong(hole * SLOT_SIZE + 8, 0);
+    }
+
+    private void resize(int newSlotCount) {
+        ByteBuffer old = slots;
+        int oldCount = slotCount;
+        slots = ByteBuffer.allocateDirect(newSlotCount * SLOT_SIZE);
+        slotCount = newSlotCount;
+        int mask = newSlotCount - 1;
+        for (int i = 0; i < oldCount; i++) {
+            long stored = old.getLong(i * SLOT_SIZE);
+            if (stored == 0) {
+                continue;
+            }
+            long hash = old.getLong(i * SLOT_SIZE + 8);
+            int slot = (int) hash & mask;
+            while (slots.getLong(slot * SLOT_SIZE) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots.putLong(slot * SLOT_SIZE, stored);
+            slots.putLong(slot * SLOT_SIZE + 8, hash);
+        }
+    }
+
+    /**
+     * Copy the live records to a new arena once most of the arena is old records.
+     */
+    private void compactIfWasteful() {
+        if (arena.garbage <= FIRST_CHUNK || arena.garbage * 2 <= arena.used) {
+            return;
+        }
+        Arena compacted = new Arena();
+        for (int slot = 0; slot < slotCount; slot++) {
+            long stored = slots.getLong(slot * SLOT_SIZE);
+            if (stored != 0) {
+                slots.putLong(slot * SLOT_SIZE, compacted.copy(arena, stored - 1) + 1);
+            }
+        }
+        arena = compacted;
+        sorted = null;
+    }
+
+    /**
+     * Build the sorted index: the record addresses of the hash table, heapsorted in place by key.
+     */
+    private void sort() {
+        ByteBuffer index = ByteBuffer.allocateDirect(Math.max(8, 8 * size));
+        int n = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            long stored = slots.getLong(slot * SLOT_SIZE);
+            if (stored != 0) {
+                index.putLong(8 * n++, stored - 1);
+            }
+        }
+        for (int i = n / 2 - 1; i >= 0; i--) {
+            siftDown(index, i, n);
+        }
+        for (int end = n - 1; end > 0; end--) {
+            swap(index, 0, end);
+            siftDown(index, 0, end);
+        }
+        sorted = index;
+    }
+
+    private void siftDown(ByteBuffer index, int i, int n) {
+        while (true) {
+            int largest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < n && compareKeys(index.getLong(8 * left), index.getLong(8 * largest)) > 0) {
+                largest = left;
+            }
+            if (right < n && compareKeys(index.getLong(8 * right), index.getLong(8 * largest)) > 0) {
+                largest = right;
+            }
+            if (largest == i) {
+                return;
+            }
+            swap(index, i, largest);
+            i = largest;
+        }
+    }
+
+    private static void swap(ByteBuffer index, int i, int j) {
+        long t = index.getLong(8 * i);
+        index.putLong(8 * i, index.getLong(8 * j));
+        index.putLong(8 * j, t);
+    }
+
+    private int compareKeys(long a, long b) {
+        ByteBuffer chunkA = arena.chunk(a);
+        ByteBuffer chunkB = arena.chunk(b);
+        int offA = (int) a;
+        int offB = (int) b;
+        return Utf8.compare(chunkA, offA + 4, chunkA.getInt(offA), chunkB, offB + 4, chunkB.getInt(offB));
+    }
+
+    /**
+     * @return the index of the first record whose key is not less than the key
+     */
+    private int lowerBound(Arena records, ByteBuffer index, byte[] key) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            long address = index.getLong(8 * mid);
+            ByteBuffer chunk = records.chunk(address);
+            int off = (int) address;
+            if (Utf8.compare(chunk, off + 4, chunk.getInt(off), key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Drop the buffers; the dictionary is empty.
+     */
+    private void release() {
+        arena = new Arena();
+        slots = null;
+        slotCount = 0;
+        size = 0;
+        sorted = null;
+    }
+
+    /**
+     * Records appended to direct buffer chunks, which double in size up to {@link #MAX_CHUNK}.
+     */
+    private static class Arena {
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+        private ByteBuffer current; // the last chunk, or null
+        private long capacity;
+        long used; // bytes of records
+        long garbage; // bytes of records no longer in the table
+
+        long add(byte[] key, byte[] value) {
+            int length = 8 + key.length + value.length;
+            ByteBuffer chunk = chunkFor(length);
+            long address = address(chunk);
+            chunk.putInt(key.length).put(key).putInt(value.length).put(value);
+            used += length;
+            return address;
+        }
+
+        /**
+         * Copy a record of another arena.
+         *
+         * @return its address in this arena
+         */
+        long copy(Arena from, long address) {
+            int length = from.recordSize(address);
+            ByteBuffer record = from.chunk(address).slice((int) address, length);
+            ByteBuffer chunk = chunkFor(length);
+            long copied = address(chunk);
+            chunk.put(record);
+            used += length;
+            return copied;
+        }
+
+        ByteBuffer chunk(long address) {
+            return chunks.get((int) (address >>> 32));
+        }
+
+        int recordSize(long address) {
+            ByteBuffer chunk = chunk(address);
+            int off = (int) address;
+            int keyLength = chunk.getInt(off);
+            return 8 + keyLength + chunk.getInt(off + 4 + keyLength);
+        }
+
+        boolean keyEquals(long address, String word) {
+            ByteBuffer chunk = chunk(address);
+            int off = (int) address;
+            return Utf8.equals(chunk, off + 4, chunk.getInt(off), word);
+        }
+
+        String key(long address) {
+            ByteBuffer chunk = chunk(address);
+            int off = (int) address;
+            return Utf8.decode(chunk, off + 4, chunk.getInt(off));
+        }
+
+        String value(long address) {
+            ByteBuffer chunk = chunk(address);
+            int off = (int) address + 4 + chunk.getInt((int) address);
+            return Utf8.decode(chunk, off + 4, chunk.getInt(off));
+        }
+
+        long capacity() {
+            return capacity;
+        }
+
+        private long address(ByteBuffer chunk) {
+            return ((long) (chunks.size() - 1) << 32) | chunk.position();
+        }
+
+        /**
+         * @return the chunk to append a record of the length to
+         */
+        private ByteBuffer chunkFor(int length) {
+            if (current == null || current.remaining() < length) {
+                int size = current == null ? FIRST_CHUNK : Math.min(MAX_CHUNK, current.capacity() * 2);
+                current = ByteBuffer.allocateDirect(Math.max(size, length));
+                chunks.add(current);
+                capacity += current.capacity();
+            }
+            return current;
+        }
+    }
+}
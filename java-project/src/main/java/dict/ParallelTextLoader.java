@@ -0,0 +1,392 @@
+package dict;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Reads a text dictionary file on several cores.
+ * <p>
+ * The file is split into chunks at line boundaries. Each chunk is parsed straight from its bytes (the words
+ * and definitions are decoded in place, without building line strings) and sorted, and the sorted chunks are
+ * merged pairwise. When a word appears more than once, the last line wins, as when the file is read in order.
+ * The result is a sorted map that a {@link java.util.TreeMap} can copy in linear time.
+ * <p>
+ * Lines end with "\n", "\r\n" or "\r", as for {@link java.io.BufferedReader#readLine()}.
+ */
+final class ParallelTextLoader {
+    static final int MIN_CHUNK_BYTES = 1 << 12;
+    static final int MAX_CHUNK_BYTES = 1 << 26;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * Sorted words and their definitions.
+     */
+    private static class Sorted {
+        final String[] words;
+        final String[] defs;
+        final int count;
+
+        Sorted(String[] words, String[] defs, int count) {
+            this.words = words;
+            this.defs = defs;
+            this.count = count;
+        }
+    }
+
+    private ParallelTextLoader() {
+    }
+
+    /**
+     * @return true if lines of files in the charset can be found by looking for '\n' and '\r' bytes
+     * (the charset that {@link DictionaryFiles#readText} reads files in)
+     */
+    static boolean supported(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII)
+                || charset.equals(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Read every entry of a text dictionary file.
+     *
+     * @param file        the file to read; it must exist
+     * @param parallelism the number of threads to use
+     * @param charset     the file's charset (see {@link #supported(Charset)})
+     * @return the entries, sorted by word
+     * @throws IOException
+     */
+    static SortedMap<String, String> read(File file, int parallelism, Charset charset) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long[] bounds = chunkBounds(channel, parallelism);
+            Sorted sorted = pool.invoke(new LoadTask(channel, charset, bounds, 0, bounds.length - 1));
+            return new SortedView(sorted);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Split the file into chunks of whole lines.
+     *
+     * @return the start of every chunk, followed by the file length
+     */
+    private static long[] chunkBounds(FileChannel channel, int parallelism) throws IOException {
+        long length = channel.size();
+        long chunks = Math.max(CHUNKS_PER_THREAD * parallelism, (length + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+        long chunkBytes = Math.max(MIN_CHUNK_BYTES, (length + chunks - 1) / chunks);
+        long[] bounds = new long[(int) ((length + chunkBytes - 1) / chunkBytes) + 2];
+        int n = 1;
+        ByteBuffer window = ByteBuffer.allocate(MIN_CHUNK_BYTES);
+        long pos = chunkBytes;
+        while (pos < length) {
+            // Move the bound to just after the next '\n' (a '\r' may be the first half of "\r\n")
+            pos = nextLine(channel, pos, window);
+            if (pos >= length) {
+                break;
+            }
+            bounds[n++] = pos;
+            pos += chunkBytes;
+        }
+        bounds[n++] = length;
+        return Arrays.copyOf(bounds, n);
+    }
+
+    private static long nextLine(FileChannel channel, long pos, ByteBuffer window) throws IOException {
+        while (true) {
+            window.clear();
+            int read = channel.read(window, pos);
+            if (read < 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (window.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += read;
+        }
+    }
+
+    /**
+     * Loads chunks [from, to): a single chunk is parsed and sorted, more are split in two halves that are
+     * loaded in parallel and merged.
+     */
+    private static class LoadTask extends RecursiveTask<Sorted> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final Charset charset;
+        private final long[] bounds;
+        private final int from;
+        private final int to;
+
+        LoadTask(FileChannel channel, Charset charset, long[] bounds, int from, int to) {
+            this.channel = channel;
+            this.charset = charset;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Sorted compute() {
+            if (to - from == 1) {
+                try {
+                    return parse(readChunk(bounds[from], bounds[to]), charset);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            int mid = (from + to) >>> 1;
+            LoadTask left = new LoadTask(channel, charset, bounds, from, mid);
+            left.fork();
+            Sorted right = new LoadTask(channel, charset, bounds, mid, to).compute();
+            return merge(left.join(), right);
+        }
+
+        private byte[] readChunk(long start, long end) throws IOException {
+            byte[] bytes = new byte[(int) (end - start)];
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, start + buf.position()) < 0) {
+                    throw new EOFException("Dictionary file changed while it was read");
+                }
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Parse the lines of a chunk, and sort them by word.
+     */
+    private static Sorted parse(byte[] bytes, Charset charset) {
+        String[] words = new String[16];
+        String[] defs = new String[16];
+        int count = 0;
+        int start = 0;
+        while (start < bytes.length) {
+            // Find the end of the line and the first ':'
+            int sep = -1;
+            int end = start;
+            while (end < bytes.length && bytes[end] != '\n' && bytes[end] != '\r') {
+                if (sep < 0 && bytes[end] == ':') {
+                    sep = end;
+                }
+                end++;
+            }
+            if (count == words.length) {
+                words = Arrays.copyOf(words, 2 * count);
+                defs = Arrays.copyOf(defs, 2 * count);
+            }
+            if (sep < 0) {
+                words[count] = new String(bytes, start, end - start, charset);
+                defs[count] = "";
+            } else {
+                words[count] = new String(bytes, start, sep - start, charset);
+                defs[count] = new String(bytes, sep + 1, end - sep - 1, charset);
+            }
+            count++;
+            // Skip the line terminator
+            if (end + 1 < bytes.length && bytes[end] == '\r' && bytes[end + 1] == '\n') {
+                end++;
+            }
+            start = end + 1;
+        }
+        return sort(words, defs, count);
+    }
+
+    /**
+     * Sort parsed lines by word, keeping only the last line of each word.
+     */
+    private static Sorted sort(String[] words, String[] defs, int count) {
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        // A stable sort keeps lines with the same word in file order
+        mergeSort(order, order.clone(), 0, count, words);
+        String[] sortedWords = new String[count];
+        String[] sortedDefs = new String[count];
+        int n = 0;
+        for (int k = 0; k < count; k++) {
+            int i = order[k];
+            if (k + 1 < count && words[order[k + 1]].equals(words[i])) {
+                continue;
+            }
+            sortedWords[n] = words[i];
+            sortedDefs[n] = defs[i];
+            n++;
+        }
+        return new Sorted(sortedWords, sortedDefs, n);
+    }
+
+    /**
+     * Sort the line numbers src[from, to) by word into dst[from, to); both must start with the same contents.
+     */
+    private static void mergeSort(int[] dst, int[] src, int from, int to, String[] words) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        // Sort each half of dst into src, then merge them back into dst
+        mergeSort(src, dst, from, mid, words);
+        mergeSort(src, dst, mid, to, words);
+        int i = from;
+        int j = mid;
+        for (int k = from; k < to; k++) {
+            if (j >= to || (i < mid && words[src[i]].compareTo(words[src[j]]) <= 0)) {
+                dst[k] = src[i++];
+            } else {
+                dst[k] = src[j++];
+            }
+        }
+    }
+
+    /**
+     * Merge two sorted chunks; where both have a word, the second (later in the file) wins.
+     */
+    private static Sorted merge(Sorted first, Sorted second) {
+        String[] words = new String[first.count + second.count];
+        String[] defs = new String[words.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < first.count || j < second.count) {
+            int cmp = i == first.count ? 1 : j == second.count ? -1 : first.words[i].compareTo(second.words[j]);
+            if (cmp < 0) {
+                words[n] = first.words[i];
+                defs[n++] = first.defs[i++];
+            } else {
+                if (cmp == 0) {
+                    i++;
+                }
+                words[n] = second.words[j];
+                defs[n++] = second.defs[j++];
+            }
+        }
+        return new Sorted(words, defs, n);
+    }
+
+    /**
+     * A read-only sorted map over the merged arrays, only meant to be copied into a TreeMap. Its iterator
+     * returns the same entry object every time, updated in place.
+     */
+    private static class SortedView extends AbstractMap<String, String> implements SortedMap<String, String> {
+        private final Sorted sorted;
+
+        SortedView(Sorted sorted) {
+            this.sorted = sorted;
+        }
+
+        @Override
+        public Set<Map.Entry<String, String>> entrySet() {
+            return new AbstractSet<Map.Entry<String, String>>() {
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    return new Iterator<Map.Entry<String, String>>() {
+                        private final ReusedEntry entry = new ReusedEntry();
+                        private int index;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < sorted.count;
+                        }
+
+                        @Override
+                        public Map.Entry<String, String> next() {
+                            if (index >= sorted.count) {
+                                throw new NoSuchElementException();
+                            }
+                            entry.key = sorted.words[index];
+                            entry.value = sorted.defs[index];
+                            index++;
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return sorted.count;
+                }
+            };
+        }
+
+        @Override
+        public Comparator<? super String> comparator() {
+            // Natural ordering, like the TreeMap it is copied into
+            return null;
+        }
+
+        @Override
+        public SortedMap<String, String> subMap(String fromKey, String toKey) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SortedMap<String, String> headMap(String toKey) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SortedMap<String, String> tailMap(String fromKey) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String firstKey() {
+            if (sorted.count == 0) {
+                throw new NoSuchElementException();
+            }
+            return sorted.words[0];
+        }
+
+        @Override
+        public String lastKey() {
+            if (sorted.count == 0) {
+                throw new NoSuchElementException();
+            }
+            return sorted.words[sorted.count - 1];
+        }
+    }
+
+    private static class ReusedEntry implements Map.Entry<String, String> {
+        String key;
+        String value;
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public String getValue() {
+            return value;
+        }
+
+        @Override
+        public String setValue(String value) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package dict;
 
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
 
 /**
  * Stores a dictionary: a map of words to definitions.
@@ -30,6 +32,15 @@ public interface PersistentDictionary {
      */
     void close() throws IOException;
 
+    /**
+     * Returns the number of bytes the last {@link #close()} wrote, for diagnosing slow flushes.
+     *
+     * @return the number of bytes, or -1 if the dictionary doesn't count them
+     */
+    default long lastFlushBytes() {
+        return -1;
+    }
+
 
     /*======= Methods to read/write definitions (a subset of Map<String,String>)  ======*/
 
@@ -102,4 +113,31 @@ public interface PersistentDictionary {
      * Removes all the mappings from this map.
      */
     void clear();
+
+
+    /*======= Ordered scans  ======*/
+
+    /**
+     * Returns the mappings whose keys are between from (inclusive) and to (exclusive), in ascending key order.
+     * The entries are produced as the iterator advances, without first collecting them.
+     * The results of changing the dictionary while iterating are unspecified.
+     *
+     * @param from the lowest key to return, or null to start at the first key
+     * @param to   the key to stop before, or null to continue to the last key
+     * @return an iterator over the mappings in the range
+     */
+    Iterator<Map.Entry<String, String>> range(String from, String to);
+
+    /**
+     * Returns the mappings whose keys start with the prefix, in ascending key order.
+     *
+     * @param prefix the prefix of the keys to return
+     * @param limit  the maximum number of mappings to return
+     * @return an iterator over at most limit mappings
+     * @throws NullPointerException     if the prefix is null
+     * @throws IllegalArgumentException if the limit is negative
+     */
+    default Iterator<Map.Entry<String, String>> prefixScan(String prefix, int limit) {
+        return DictionaryIterators.limit(range(prefix, DictionaryIterators.prefixEnd(prefix)), limit);
+    }
 }
@@ -0,0 +1,183 @@
+package dict;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable (persistent) AVL tree of words and definitions. Nodes are never modified: a change copies the
+ * nodes on the path from the root to the changed word and shares every other node with the previous tree, so
+ * it costs O(log n) new nodes, and any root, once taken, is a version of the tree that never changes.
+ * <p>
+ * The empty tree is null. Every node knows the size of its subtree, so sizes are O(1).
+ */
+final class PersistentTree {
+
+    private PersistentTree() {
+    }
+
+    static final class Node {
+        final String key;
+        final String value;
+        final Node left;
+        final Node right;
+        final int height;
+        final int size;
+
+        Node(String key, String value, Node left, Node right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(height(left), height(right));
+            this.size = 1 + size(left) + size(right);
+        }
+    }
+
+    static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    static String get(Node node, String key) {
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                return node.value;
+            }
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * @param old receives the previous definition of the word, or null
+     * @return the tree with the word defined
+     */
+    static Node put(Node node, String key, String value, String[] old) {
+        if (node == null) {
+            return new Node(key, value, null, null);
+        }
+        int cmp = key.compareTo(node.key);
+        if (cmp == 0) {
+            old[0] = node.value;
+            return new Node(key, value, node.left, node.right);
+        }
+        if (cmp < 0) {
+            return balance(node.key, node.value, put(node.left, key, value, old), node.right);
+        }
+        return balance(node.key, node.value, node.left, put(node.right, key, value, old));
+    }
+
+    /**
+     * @param old receives the removed definition, or null
+     * @return the tree without the word (the same tree if the word is not in it)
+     */
+    static Node remove(Node node, String key, String[] old) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = key.compareTo(node.key);
+        if (cmp < 0) {
+            Node left = remove(node.left, key, old);
+            return left == node.left ? node : balance(node.key, node.value, left, node.right);
+        }
+        if (cmp > 0) {
+            Node right = remove(node.right, key, old);
+            return right == node.right ? node : balance(node.key, node.value, node.left, right);
+        }
+        old[0] = node.value;
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        // Replace the node with the first word of its right subtree
+        Node min = node.right;
+        while (min.left != null) {
+            min = min.left;
+        }
+        return balance(min.key, min.value, node.left, removeMin(node.right));
+    }
+
+    private static Node removeMin(Node node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(node.key, node.value, removeMin(node.left), node.right);
+    }
+
+    /**
+     * A node with the given contents, rotated if the heights of its subtrees differ by 2.
+     */
+    private static Node balance(String key, String value, Node left, Node right) {
+        int hl = height(left);
+        int hr = height(right);
+        if (hl > hr + 1) {
+            if (height(left.left) >= height(left.right)) {
+                // Single right rotation
+                return new Node(left.key, left.value, left.left, new Node(key, value, left.right, right));
+            }
+            // Left-right double rotation
+            Node pivot = left.right;
+            return new Node(pivot.key, pivot.value, new Node(left.key, left.value, left.left, pivot.left),
+                    new Node(key, value, pivot.right, right));
+        }
+        if (hr > hl + 1) {
+            if (height(right.right) >= height(right.left)) {
+                // Single left rotation
+                return new Node(right.key, right.value, new Node(key, value, left, right.left), right.right);
+            }
+            // Right-left double rotation
+            Node pivot = right.left;
+            return new Node(pivot.key, pivot.value, new Node(key, value, left, pivot.left),
+                    new Node(right.key, right.value, pivot.right, right.right));
+        }
+        return new Node(key, value, left, right);
+    }
+
+    /**
+     * @return the entries of a version with keys between from (inclusive) and to (exclusive), in key order
+     */
+    static Iterator<Map.Entry<String, String>> range(Node root, String from, String to) {
+        return new Iterator<Map.Entry<String, String>>() {
+            // The nodes whose entry and right subtree are still to come, lowest on top
+            private final ArrayDeque<Node> stack = new ArrayDeque<>();
+
+            {
+                Node node = root;
+                while (node != null) {
+                    if (from == null || node.key.compareTo(from) >= 0) {
+                        stack.push(node);
+                        node = node.left;
+                    } else {
+                        node = node.right;
+                    }
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !stack.isEmpty() && (to == null || stack.peek().key.compareTo(to) < 0);
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Node node = stack.pop();
+                for (Node child = node.right; child != null; child = child.left) {
+                    stack.push(child);
+                }
+                return new AbstractMap.SimpleImmutableEntry<>(node.key, node.value);
+            }
+        };
+    }
+}
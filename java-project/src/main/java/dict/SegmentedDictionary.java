@@ -0,0 +1,328 @@
+package dict;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Implements a persistent dictionary that is held in memory and stored in segments: files that each hold
+ * the words of one key range. {@link #close()} only rewrites the segments whose words changed, and writes
+ * nothing at all if nothing changed.
+ * <p>
+ * The dictionary file is a small manifest listing the first word of each segment and its file (named after
+ * the dictionary file, with a <code>.segN</code> suffix, in the binary format of {@link SortedTable}).
+ * A changed segment is written to a new file, then the manifest is replaced, and only then is the old file
+ * deleted, so an interrupted close leaves the previous dictionary. Segment files that the manifest does not
+ * list are deleted by {@link #open()}.
+ * <p>
+ * Segments that grow past the segment size are split when they are written; segments that become empty are
+ * dropped. A dictionary file in the format of {@link InMemoryDictionary} is read too, and converted by the
+ * next close.
+ * <p>
+ * Manifest format: int magic ("DSEG"), int version, long next segment number, int segment count, then for
+ * each segment: int length and UTF-8 bytes of its first word, long segment number.
+ */
+public class SegmentedDictionary implements PersistentDictionary {
+    /**
+     * Default number of words per segment.
+     */
+    public static final int DEFAULT_SEGMENT_ENTRIES = 4096;
+
+    private static final int MAGIC = 0x44534547; // "DSEG"
+    private static final int VERSION = 1;
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    /**
+     * A segment file, and whether its words changed since it was written.
+     */
+    private static class Segment {
+        final long number;
+        boolean dirty;
+
+        Segment(long number, boolean dirty) {
+            this.number = number;
+            this.dirty = dirty;
+        }
+    }
+
+    private final File dictFile;
+    private final int segmentEntries;
+
+    private final TreeMap<String, String> map = new TreeMap<>();
+    // Segments by first word; the first segment starts at "", so every word has a segment
+    private TreeMap<String, Segment> segments = new TreeMap<>();
+    private final List<File> obsolete = new ArrayList<>(); // replaced segments, deleted by the next close()
+    private long nextSegment;
+    private long lastFlushBytes;
+
+    public SegmentedDictionary(File dictFile) {
+        this(dictFile, DEFAULT_SEGMENT_ENTRIES);
+    }
+
+    /**
+     * @param dictFile       the dictionary (manifest) file
+     * @param segmentEntries the number of words above which a segment is split
+     */
+    public SegmentedDictionary(File dictFile, int segmentEntries) {
+        // Throw exception if the file is null
+        if (dictFile == null) {
+            throw new IllegalArgumentException("Dictionary file cannot be null.");
+        }
+        if (segmentEntries < 1) {
+            throw new IllegalArgumentException("Segments must hold at least one word.");
+        }
+        this.dictFile = dictFile;
+        this.segmentEntries = segmentEntries;
+        segments.put("", new Segment(nextSegment++, false));
+    }
+
+    @Override
+    public void open() throws IOException {
+        map.clear();
+        segments = new TreeMap<>();
+        obsolete.clear();
+        nextSegment = 0;
+        boolean manifest = isManifest(dictFile);
+        if (manifest) {
+            readManifest();
+        }
+        // Delete segments from an unfinished close (or a deleted manifest)
+        Set<String> listed = new HashSet<>();
+        for (Segment segment : segments.values()) {
+            listed.add(segmentFile(segment.number).getName());
+        }
+        for (File file : segmentFiles()) {
+            if (!listed.contains(file.getName())) {
+                file.delete();
+            }
+        }
+        if (manifest) {
+            for (Segment segment : segments.values()) {
+                DictionaryFiles.read(segmentFile(segment.number), map::put);
+            }
+        } else {
+            // A whole dictionary file (or none) is converted to a single segment by the next close
+            DictionaryFiles.read(dictFile, map::put);
+            segments.put("", new Segment(nextSegment++, dictFile.exists()));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (segments.values().stream().noneMatch(segment -> segment.dirty)) {
+            // Nothing to write
+            lastFlushBytes = 0;
+            return;
+        }
+        long written = 0;
+        TreeMap<String, Segment> result = new TreeMap<>();
+        List<Map.Entry<String, Segment>> list = new ArrayList<>(segments.entrySet());
+        for (int i = 0; i < list.size(); i++) {
+            String first = list.get(i).getKey();
+            Segment segment = list.get(i).getValue();
+            if (!segment.dirty) {
+                result.put(first, segment);
+                continue;
+            }
+            obsolete.add(segmentFile(segment.number));
+            NavigableMap<String, String> words = i + 1 < list.size()
+                    ? map.subMap(first, true, list.get(i + 1).getKey(), false)
+                    : map.tailMap(first, true);
+            // An empty segment is dropped: its range joins the previous segment, which has no words in it
+            written += writeSegments(first, words, result);
+        }
+        if (result.isEmpty()) {
+            result.put("", new Segment(nextSegment++, false));
+        } else if (!result.firstKey().isEmpty()) {
+            // The first segment was dropped, so the next one also takes the words before it (there are none)
+            result.put("", result.pollFirstEntry().getValue());
+        }
+        segments = result;
+        written += writeManifest();
+        for (File file : obsolete) {
+            file.delete();
+        }
+        obsolete.clear();
+        lastFlushBytes = written;
+    }
+
+    @Override
+    public String get(Object key) {
+        return map.get(key);
+    }
+
+    @Override
+    public String put(String key, String value) {
+        Objects.requireNonNull(value, "Definitions cannot be null");
+        String old = map.put(key, value);
+        if (!value.equals(old)) {
+            segments.floorEntry(key).getValue().dirty = true;
+        }
+        return old;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return map.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public String remove(Object key) {
+        String old = map.remove(key);
+        if (old != null) {
+            segments.floorEntry((String) key).getValue().dirty = true;
+        }
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+        for (Segment segment : segments.values()) {
+            segment.dirty = true;
+        }
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> range(String from, String to) {
+        return DictionaryIterators.range(map, from, to);
+    }
+
+    /**
+     * @return the number of bytes the last {@link #close()} wrote, 0 if it had nothing to write
+     */
+    @Override
+    public long lastFlushBytes() {
+        return lastFlushBytes;
+    }
+
+    /**
+     * @return the number of segments
+     */
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Write the words of a changed segment to one or more new segment files, splitting it evenly if it has
+     * more than the segment size, and add the new segments to the result.
+     *
+     * @return the number of bytes written
+     */
+    private long writeSegments(String first, NavigableMap<String, String> words, TreeMap<String, Segment> result)
+            throws IOException {
+        int pieces = (words.size() + segmentEntries - 1) / segmentEntries;
+        if (pieces == 0) {
+            return 0;
+        }
+        int perPiece = (words.size() + pieces - 1) / pieces;
+        long written = 0;
+        Iterator<Map.Entry<String, String>> it = words.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, String> entry = it.next();
+            // The first piece keeps the segment's range start; later ones start at their first word
+            String start = written == 0 ? first : entry.getKey();
+            Segment segment = new Segment(nextSegment++, false);
+            File file = segmentFile(segment.number);
+            try (SortedTable.Writer writer = new SortedTable.Writer(file)) {
+                writer.add(entry.getKey(), entry.getValue());
+                for (int k = 1; k < perPiece && it.hasNext(); k++) {
+                    entry = it.next();
+                    writer.add(entry.getKey(), entry.getValue());
+                }
+            }
+            written += file.length();
+            result.put(start, segment);
+        }
+        return written;
+    }
+
+    private static boolean isManifest(File file) throws IOException {
+        if (!file.exists() || file.length() < 4) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        }
+    }
+
+    private void readManifest() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(dictFile)))) {
+            in.readInt();
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported segmented dictionary version " + version + " in " + dictFile);
+            }
+            nextSegment = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                byte[] first = new byte[in.readInt()];
+                in.readFully(first);
+                segments.put(new String(first, StandardCharsets.UTF_8), new Segment(in.readLong(), false));
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated segmented dictionary manifest " + dictFile, e);
+        }
+    }
+
+    /**
+     * Replace the manifest with one listing the current segments.
+     *
+     * @return the number of bytes written
+     */
+    private long writeManifest() throws IOException {
+        File tmp = DictionaryFiles.sibling(dictFile, ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(nextSegment);
+            out.writeInt(segments.size());
+            for (Map.Entry<String, Segment> entry : segments.entrySet()) {
+                byte[] first = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(first.length);
+                out.write(first);
+                out.writeLong(entry.getValue().number);
+            }
+        }
+        long written = tmp.length();
+        DictionaryFiles.replace(tmp, dictFile);
+        return written;
+    }
+
+    private File segmentFile(long number) {
+        return DictionaryFiles.sibling(dictFile, SEGMENT_SUFFIX + number);
+    }
+
+    /**
+     * @return the segment files of this dictionary that exist, listed or not
+     */
+    private List<File> segmentFiles() {
+        List<File> files = new ArrayList<>();
+        File dir = dictFile.getAbsoluteFile().getParentFile();
+        String prefix = dictFile.getName() + SEGMENT_SUFFIX;
+        File[] candidates = dir.listFiles();
+        if (candidates != null) {
+            for (File file : candidates) {
+                String name = file.getName();
+                if (name.startsWith(prefix) && name.length() > prefix.length()
+                        && name.substring(prefix.length()).chars().allMatch(Character::isDigit)) {
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+}
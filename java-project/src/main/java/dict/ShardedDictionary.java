@@ -0,0 +1,336 @@
+package dict;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Implements a persistent dictionary whose words are hash-partitioned across several shards, each an
+ * {@link InMemoryDictionary} with its own file and its own lock.
+ * <p>
+ * Threads that work on words of different shards don't wait for each other, {@link #open()} and
+ * {@link #close()} read and write the shard files in parallel, and close() only rewrites the shards that
+ * changed.
+ * <p>
+ * The dictionary file is a one-line manifest with the number of shards and the generation of their layout.
+ * The shard files are named after it, with a <code>.shardN</code> suffix, followed by <code>.G</code> for
+ * generations G after the first. Opening a dictionary with a different number of shards than it was written
+ * with redistributes the words, and a dictionary file in the format of {@link InMemoryDictionary} is read and
+ * split into shards. close() writes a new layout to the files of a new generation, then replaces the manifest,
+ * and only then deletes the files of the old layout, so an interrupted close leaves the previous dictionary.
+ * <p>
+ * All methods are thread-safe, but {@link #range(String, String)} iterators must not be used while the
+ * dictionary changes.
+ */
+public class ShardedDictionary implements PersistentDictionary {
+    /**
+     * Default number of shards.
+     */
+    public static final int DEFAULT_SHARDS = 16;
+
+    private static final String MANIFEST_HEADER = "SHARDS";
+    private static final String SHARD_SUFFIX = ".shard";
+    private static final ExecutorService SHARD_IO = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "dictionary-shard-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Work on one of several files, by index.
+     */
+    private interface IndexedTask {
+        void run(int index) throws IOException;
+    }
+
+    private final File dictFile;
+    private final DictionaryFormat format;
+    private final InMemoryDictionary[] shards;
+    private int generation; // the layout generation of the shard files
+    private int manifestGeneration; // the generation the manifest lists, set by readManifest()
+
+    public ShardedDictionary(File dictFile) {
+        this(dictFile, DEFAULT_SHARDS, DictionaryFormat.TEXT);
+    }
+
+    /**
+     * @param dictFile  the dictionary (manifest) file
+     * @param numShards the number of shards
+     * @param format    the format of the shard files
+     */
+    public ShardedDictionary(File dictFile, int numShards, DictionaryFormat format) {
+        // Throw exception if the file or format is null
+        if (dictFile == null) {
+            throw new IllegalArgumentException("Dictionary file cannot be null.");
+        }
+        if (format == null) {
+            throw new IllegalArgumentException("Dictionary format cannot be null.");
+        }
+        if (numShards < 1) {
+            throw new IllegalArgumentException("There must be at least one shard.");
+        }
+        this.dictFile = dictFile;
+        this.format = format;
+        this.shards = new InMemoryDictionary[numShards];
+        useGeneration(0);
+    }
+
+    @Override
+    public void open() throws IOException {
+        int written = readManifest();
+        if (written == shards.length) {
+            useGeneration(manifestGeneration);
+            inParallel(shards.length, i -> {
+                synchronized (shards[i]) {
+                    shards[i].open();
+                }
+            });
+            return;
+        }
+        // Load what was written in another layout (or a single dictionary file)
+        List<InMemoryDictionary> sources = new ArrayList<>();
+        for (int i = 0; i < written; i++) {
+            sources.add(new InMemoryDictionary(shardFile(manifestGeneration, i), format));
+        }
+        if (written == 0 && dictFile.exists()) {
+            sources.add(new InMemoryDictionary(dictFile, format));
+        }
+        inParallel(sources.size(), i -> sources.get(i).open());
+        // Spread the words over empty shards of a new generation (without a manifest, shard files are left over
+        // from a deleted dictionary); close() writes the new layout
+        useGeneration(written == 0 ? 0 : manifestGeneration + 1);
+        for (InMemoryDictionary shard : shards) {
+            synchronized (shard) {
+                shard.clear();
+            }
+        }
+        for (InMemoryDictionary source : sources) {
+            for (Map.Entry<String, String> entry : source.entrySet()) {
+                put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        inParallel(shards.length, i -> {
+            synchronized (shards[i]) {
+                shards[i].close();
+            }
+        });
+        if (readManifest() != shards.length || manifestGeneration != generation) {
+            // The layout changed: shards without words were not written, and may have files of an interrupted close
+            for (int i = 0; i < shards.length; i++) {
+                if (shards[i].isEmpty()) {
+                    shardFile(generation, i).delete();
+                }
+            }
+            writeManifest();
+            // Only the new layout is listed now
+            for (File file : shardFiles()) {
+                if (!isShardFile(file, generation)) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes the last {@link #close()} wrote to the shards, not counting the manifest
+     */
+    @Override
+    public long lastFlushBytes() {
+        long bytes = 0;
+        for (InMemoryDictionary shard : shards) {
+            synchronized (shard) {
+                bytes += shard.lastFlushBytes();
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public String get(Object key) {
+        InMemoryDictionary shard = shardOf(key);
+        synchronized (shard) {
+            return shard.get(key);
+        }
+    }
+
+    @Override
+    public String put(String key, String value) {
+        InMemoryDictionary shard = shardOf(key);
+        synchronized (shard) {
+            return shard.put(key, value);
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (InMemoryDictionary shard : shards) {
+            synchronized (shard) {
+                size += shard.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public String remove(Object key) {
+        InMemoryDictionary shard = shardOf(key);
+        synchronized (shard) {
+            return shard.remove(key);
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (InMemoryDictionary shard : shards) {
+            synchronized (shard) {
+                shard.clear();
+            }
+        }
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> range(String from, String to) {
+        // The shards hold disjoint words, so merging them only interleaves
+        List<Iterator<Map.Entry<String, String>>> sources = new ArrayList<>();
+        for (InMemoryDictionary shard : shards) {
+            synchronized (shard) {
+                sources.add(shard.range(from, to));
+            }
+        }
+        return new MergingIterator(sources);
+    }
+
+    private InMemoryDictionary shardOf(Object key) {
+        int h = key.hashCode();
+        // Spread the bits, so similar words don't pile up in one shard
+        h ^= h >>> 16;
+        h *= 0x45d9f3b;
+        h ^= h >>> 16;
+        return shards[Math.floorMod(h, shards.length)];
+    }
+
+    /**
+     * Run the task for indexes 0 to count - 1 in parallel, and wait for all of them.
+     */
+    private void inParallel(int count, IndexedTask task) throws IOException {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            futures.add(SHARD_IO.submit(() -> {
+                task.run(index);
+                return null;
+            }));
+        }
+        IOException failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading or writing shards of " + dictFile);
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof IOException ? (IOException) e.getCause()
+                            : new IOException("Shard of " + dictFile + " failed", e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Read the manifest, setting {@link #manifestGeneration}.
+     *
+     * @return the number of shards the manifest lists, or 0 if the dictionary file is not a manifest
+     */
+    private int readManifest() throws IOException {
+        manifestGeneration = 0;
+        if (!dictFile.exists()) {
+            return 0;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(dictFile))) {
+            String line = reader.readLine();
+            if (line == null || !line.startsWith(MANIFEST_HEADER + " ")) {
+                return 0;
+            }
+            // Manifests of the first generation have no generation number
+            String[] fields = line.substring(MANIFEST_HEADER.length() + 1).split(" ");
+            try {
+                if (fields.length > 1) {
+                    manifestGeneration = Integer.parseInt(fields[1]);
+                }
+                return Integer.parseInt(fields[0]);
+            } catch (NumberFormatException e) {
+                throw new IOException("Corrupt sharded dictionary manifest " + dictFile, e);
+            }
+        }
+    }
+
+    private void writeManifest() throws IOException {
+        File tmp = DictionaryFiles.sibling(dictFile, ".tmp");
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(tmp)))) {
+            writer.println(MANIFEST_HEADER + " " + shards.length + (generation == 0 ? "" : " " + generation));
+        }
+        DictionaryFiles.replace(tmp, dictFile);
+    }
+
+    /**
+     * Make the shards (empty, not opened) use the files of a layout generation.
+     */
+    private void useGeneration(int generation) {
+        this.generation = generation;
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new InMemoryDictionary(shardFile(generation, i), format);
+        }
+    }
+
+    private File shardFile(int generation, int i) {
+        return DictionaryFiles.sibling(dictFile, SHARD_SUFFIX + i + (generation == 0 ? "" : "." + generation));
+    }
+
+    private boolean isShardFile(File file, int generation) {
+        String name = file.getName();
+        for (int i = 0; i < shards.length; i++) {
+            if (name.equals(shardFile(generation, i).getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the shard files of this dictionary, of any layout
+     */
+    private List<File> shardFiles() {
+        List<File> files = new ArrayList<>();
+        String prefix = dictFile.getName() + SHARD_SUFFIX;
+        File[] candidates = dictFile.getAbsoluteFile().getParentFile().listFiles();
+        if (candidates != null) {
+            for (File file : candidates) {
+                String name = file.getName();
+                if (name.startsWith(prefix) && name.substring(prefix.length()).matches("\\d+(\\.\\d+)?")) {
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+}
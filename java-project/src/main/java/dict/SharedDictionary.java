@@ -0,0 +1,268 @@
+package dict;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A read-only persistent dictionary that many processes on one machine can use at once, paying for its memory
+ * once: every reader memory-maps the same {@link FrozenDictionary} file, so they share the pages of the
+ * operating system's file cache instead of each holding its own copy.
+ * <p>
+ * A single writer publishes new versions with {@link #publish(SortedMap, File)}: the new file is written next
+ * to the old one and renamed over it (readers that have the old file mapped keep reading it), and then a
+ * generation number in the lock file (the dictionary file with a <code>.lock</code> suffix) is incremented.
+ * Publishing holds an exclusive {@link FileLock} on the lock file, so writers take turns, and readers take a
+ * shared lock to read the generation and map the file, so they never see a generation that doesn't match
+ * the file. {@link #refresh()} maps the new version if the generation changed; with a refresh interval,
+ * accesses also check the generation when the interval has passed since the last check.
+ * <p>
+ * Dictionary files replaced without {@link #publish(SortedMap, File)} are only picked up by {@link #open()}.
+ * Reads are thread-safe.
+ */
+public class SharedDictionary implements PersistentDictionary {
+    /**
+     * File locks are held by the whole process, and overlapping locks of one process throw; threads of this
+     * process take turns on each lock file with these locks first.
+     */
+    private static final ConcurrentHashMap<String, ReentrantLock> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+    private final File dictFile;
+    private final File lockFile;
+    private final long refreshIntervalNanos;
+
+    private volatile FrozenDictionary current = new FrozenDictionary(new File(""));
+    private long generation = -1; // of the mapped version
+    private volatile long lastCheck;
+
+    /**
+     * A dictionary that only maps new versions on {@link #open()} and {@link #refresh()}.
+     */
+    public SharedDictionary(File dictFile) {
+        this(dictFile, 0);
+    }
+
+    /**
+     * @param dictFile              the dictionary file (a frozen dictionary file)
+     * @param refreshIntervalMillis the interval of the checks for a new version as the dictionary is accessed,
+     *                              or 0 for none
+     */
+    public SharedDictionary(File dictFile, long refreshIntervalMillis) {
+        // Throw exception if the file is null
+        if (dictFile == null) {
+            throw new IllegalArgumentException("Dictionary file cannot be null.");
+        }
+        if (refreshIntervalMillis < 0) {
+            throw new IllegalArgumentException("Refresh interval cannot be negative.");
+        }
+        this.dictFile = dictFile;
+        this.lockFile = DictionaryFiles.sibling(dictFile, ".lock");
+        this.refreshIntervalNanos = refreshIntervalMillis * 1_000_000;
+    }
+
+    /**
+     * Publish a new version of a shared dictionary, for the readers to map on their next refresh.
+     *
+     * @param entries  the entries of the new version
+     * @param dictFile the dictionary file
+     * @throws IOException
+     */
+    public static void publish(SortedMap<String, String> entries, File dictFile) throws IOException {
+        File lockFile = DictionaryFiles.sibling(dictFile, ".lock");
+        ReentrantLock processLock = processLock(lockFile);
+        processLock.lock();
+        try (RandomAccessFile raf = new RandomAccessFile(lockFile, "rw");
+             FileChannel channel = raf.getChannel()) {
+            FileLock lock = channel.lock();
+            try {
+                // The rename is atomic: readers map either the old file or the new one
+                FrozenDictionaryBuilder.build(entries, dictFile);
+                writeGeneration(channel, readGeneration(channel) + 1);
+                channel.force(false);
+            } finally {
+                lock.release();
+            }
+        } finally {
+            processLock.unlock();
+        }
+    }
+
+    /**
+     * Publish a new version of a shared dictionary from a dictionary file in any format.
+     *
+     * @param source   the dictionary file to publish
+     * @param dictFile the shared dictionary file
+     * @return the number of words
+     * @throws IOException
+     */
+    public static int publish(File source, File dictFile) throws IOException {
+        TreeMap<String, String> entries = new TreeMap<>();
+        DictionaryFiles.read(source, entries::put);
+        publish(entries, dictFile);
+        return entries.size();
+    }
+
+    /**
+     * Map the current version.
+     */
+    @Override
+    public synchronized void open() throws IOException {
+        generation = -1;
+        refresh();
+    }
+
+    /**
+     * Unmap the dictionary.
+     */
+    @Override
+    public synchronized void close() {
+        current.close();
+        current = new FrozenDictionary(new File(""));
+        generation = -1;
+    }
+
+    /**
+     * Map the latest published version, if it is not the mapped one.
+     *
+     * @return true if a new version was mapped
+     * @throws IOException
+     */
+    public synchronized boolean refresh() throws IOException {
+        lastCheck = System.nanoTime();
+        if (!lockFile.exists()) {
+            // Nothing was published yet; readers don't create the lock file, they may not be allowed to write
+            return map(0);
+        }
+        ReentrantLock processLock = processLock(lockFile);
+        processLock.lock();
+        try (RandomAccessFile raf = new RandomAccessFile(lockFile, "r");
+             FileChannel channel = raf.getChannel()) {
+            FileLock lock = channel.lock(0, Long.MAX_VALUE, true);
+            try {
+                // Map while the writer can't publish, so the file matches the generation
+                return map(readGeneration(channel));
+            } finally {
+                lock.release();
+            }
+        } finally {
+            processLock.unlock();
+        }
+    }
+
+    /**
+     * Map the dictionary file if its generation is not the mapped one.
+     */
+    private boolean map(long latest) throws IOException {
+        if (latest == generation) {
+            return false;
+        }
+        FrozenDictionary mapped = new FrozenDictionary(dictFile);
+        mapped.open();
+        // Readers of the old version go on reading it; it is unmapped when it is garbage collected
+        current = mapped;
+        generation = latest;
+        return true;
+    }
+
+    /**
+     * @return the generation of the mapped version (0 for a file that was never published), or -1 if the
+     * dictionary is not open
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    @Override
+    public String get(Object key) {
+        return dictionary().get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return dictionary().containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return dictionary().size();
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> range(String from, String to) {
+        return dictionary().range(from, to);
+    }
+
+    /**
+     * Not supported: new versions are published with {@link #publish(SortedMap, File)}.
+     */
+    @Override
+    public String put(String key, String value) {
+        throw readOnly();
+    }
+
+    /**
+     * Not supported: new versions are published with {@link #publish(SortedMap, File)}.
+     */
+    @Override
+    public String remove(Object key) {
+        throw readOnly();
+    }
+
+    /**
+     * Not supported: new versions are published with {@link #publish(SortedMap, File)}.
+     */
+    @Override
+    public void clear() {
+        throw readOnly();
+    }
+
+    /**
+     * @return the mapped version, after checking for a new one if the refresh interval has passed
+     */
+    private FrozenDictionary dictionary() {
+        if (refreshIntervalNanos > 0 && System.nanoTime() - lastCheck > refreshIntervalNanos) {
+            try {
+                refresh();
+            } catch (IOException e) {
+                // Keep reading the mapped version; the next check tries again
+            }
+        }
+        return current;
+    }
+
+    private static ReentrantLock processLock(File lockFile) throws IOException {
+        return PROCESS_LOCKS.computeIfAbsent(lockFile.getCanonicalPath(), path -> new ReentrantLock());
+    }
+
+    private static long readGeneration(FileChannel channel) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, buf.position()) < 0) {
+                // A new lock file: nothing was published yet
+                return 0;
+            }
+        }
+        return buf.getLong(0);
+    }
+
+    private static void writeGeneration(FileChannel channel, long generation) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8).putLong(0, generation);
+        while (buf.hasRemaining()) {
+            channel.write(buf, buf.position());
+        }
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Shared dictionaries are read-only; publish new versions with "
+                + SharedDictionary.class.getSimpleName() + ".publish");
+    }
+}
@@ -0,0 +1,460 @@
+package dict;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The binary dictionary file format: a sorted table of length-prefixed UTF-8 entries with a sparse key index
+ * in a footer and a checksum.
+ * <p>
+ * Layout (lengths and offsets are unsigned varints, fixed-size numbers are big-endian):
+ * <pre>
+ * header:  4 bytes magic (0x00 'D' 'C' 'T'), 1 byte version
+ * entries: keyLength, key, valueLength + 1, value  -- sorted by key; valueLength + 1 == 0 marks a removed word
+ * index:   count, then (keyLength, key, entryOffset) for every {@link #INDEX_INTERVAL}th entry
+ * trailer: long entryCount, long indexOffset, int CRC32 of everything before the trailer, int magic
+ * </pre>
+ * Keys may contain any character, including ':' and line breaks. The leading zero byte of the magic
+ * can't start a line of the text format in practice, so the two formats are told apart by it.
+ */
+final class SortedTable {
+    static final int MAGIC = 0x00444354; // "\0DCT"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 5;
+    static final int TRAILER_SIZE = 24;
+
+    /**
+     * Number of entries between consecutive index keys.
+     */
+    static final int INDEX_INTERVAL = 64;
+
+    private SortedTable() {
+    }
+
+    /**
+     * Check whether the file starts with the binary format's magic number.
+     */
+    static boolean isTable(File file) throws IOException {
+        if (!file.exists() || file.length() < HEADER_SIZE + TRAILER_SIZE) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        }
+    }
+
+    /**
+     * Writes a table from entries given in strictly ascending key order.
+     */
+    static class Writer implements Closeable {
+        private final CheckedOutputStream checked;
+        private final DataOutputStream out;
+        private final List<byte[]> indexKeys = new ArrayList<>();
+        private long[] indexOffsets = new long[16];
+        private long count;
+        private long pos;
+        private String lastKey;
+
+        Writer(File file) throws IOException {
+            checked = new CheckedOutputStream(new FileOutputStream(file), new CRC32());
+            out = new DataOutputStream(new BufferedOutputStream(checked, 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            pos = HEADER_SIZE;
+        }
+
+        /**
+         * Append an entry.
+         *
+         * @param key   the word; must be greater than the previous word
+         * @param value the definition, or null to write a delete marker
+         */
+        void add(String key, String value) throws IOException {
+            if (lastKey != null && lastKey.compareTo(key) >= 0) {
+                throw new IllegalArgumentException("Keys must be added in ascending order: '" + key + "' after '" + lastKey + "'");
+            }
+            lastKey = key;
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            if (count % INDEX_INTERVAL == 0) {
+                int n = indexKeys.size();
+                if (n == indexOffsets.length) {
+                    indexOffsets = Arrays.copyOf(indexOffsets, n * 2);
+                }
+                indexKeys.add(keyBytes);
+                indexOffsets[n] = pos;
+            }
+            pos += writeBytes(out, keyBytes);
+            if (value == null) {
+                pos += writeVarLong(out, 0);
+            } else {
+                byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+                pos += writeVarLong(out, valueBytes.length + 1L);
+                out.write(valueBytes);
+                pos += valueBytes.length;
+            }
+            count++;
+        }
+
+        /**
+         * @return the number of bytes written so far (not counting the footer)
+         */
+        long bytesWritten() {
+            return pos;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                long indexOffset = pos;
+                writeVarLong(out, indexKeys.size());
+                for (int i = 0; i < indexKeys.size(); i++) {
+                    writeBytes(out, indexKeys.get(i));
+                    writeVarLong(out, indexOffsets[i]);
+                }
+                out.flush();
+                // The checksum covers everything before the trailer
+                int crc = (int) checked.getChecksum().getValue();
+                out.writeLong(count);
+                out.writeLong(indexOffset);
+                out.writeInt(crc);
+                out.writeInt(MAGIC);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Reads a table. Point lookups use the sparse index, which is loaded into memory when the reader is opened.
+     */
+    static class Reader implements Closeable, Iterable<Map.Entry<String, String>> {
+        private final File file;
+        private final RandomAccessFile raf;
+        private final long entryCount;
+        private final long indexOffset;
+        private final int crc;
+        private final String[] indexKeys;
+        private final long[] indexOffsets;
+
+        Reader(File file) throws IOException {
+            this.file = file;
+            raf = new RandomAccessFile(file, "r");
+            try {
+                long length = raf.length();
+                if (length < HEADER_SIZE + TRAILER_SIZE || raf.readInt() != MAGIC) {
+                    throw new IOException(file + " is not a binary dictionary file");
+                }
+                int version = raf.readUnsignedByte();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported binary dictionary version " + version + " in " + file);
+                }
+                raf.seek(length - TRAILER_SIZE);
+                entryCount = raf.readLong();
+                indexOffset = raf.readLong();
+                crc = raf.readInt();
+                if (raf.readInt() != MAGIC || indexOffset < HEADER_SIZE || indexOffset > length - TRAILER_SIZE) {
+                    throw new IOException("Corrupt trailer in binary dictionary file " + file);
+                }
+                // Load the sparse index
+                byte[] index = new byte[(int) (length - TRAILER_SIZE - indexOffset)];
+                raf.seek(indexOffset);
+                raf.readFully(index);
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(index));
+                int n = (int) readVarLong(in);
+                indexKeys = new String[n];
+                indexOffsets = new long[n];
+                for (int i = 0; i < n; i++) {
+                    indexKeys[i] = new String(readBytes(in), StandardCharsets.UTF_8);
+                    indexOffsets[i] = readVarLong(in);
+                }
+            } catch (IOException | RuntimeException e) {
+                raf.close();
+                throw e;
+            }
+        }
+
+        long entryCount() {
+            return entryCount;
+        }
+
+        /**
+         * Look up a word.
+         *
+         * @return null if the table has no entry for the word, otherwise its entry
+         * (whose value is null for a delete marker)
+         */
+        Map.Entry<String, String> find(String key) throws IOException {
+            // Find the last index key that is <= key
+            int i = Arrays.binarySearch(indexKeys, key);
+            if (i < 0) {
+                i = -i - 2;
+                if (i < 0) {
+                    return null;
+                }
+            }
+            // Scan the block
+            DataInputStream in = readBlock(i);
+            while (in.available() > 0) {
+                String word = new String(readBytes(in), StandardCharsets.UTF_8);
+                String value = readValue(in);
+                int cmp = word.compareTo(key);
+                if (cmp == 0) {
+                    return new AbstractMap.SimpleImmutableEntry<>(word, value);
+                }
+                if (cmp > 0) {
+                    break;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Iterate over all entries (including delete markers) in key order, verifying the checksum
+         * once the last entry has been read.
+         */
+        @Override
+        public Iterator<Map.Entry<String, String>> iterator() {
+            try {
+                return new EntryIterator();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Iterate over the entries (including delete markers) from the first key that is not less than from
+         * (or from the first key if from is null), in key order. The entries are read a block of the sparse
+         * index at a time as the iterator advances, through this reader's file, so an iterator that is not
+         * exhausted holds no file open; it fails once the reader is closed. The checksum is not verified.
+         */
+        Iterator<Map.Entry<String, String>> iterator(String from) {
+            int block = 0;
+            if (from != null && indexKeys.length > 0) {
+                // Start at the block of the last index key that is <= from
+                int i = Arrays.binarySearch(indexKeys, from);
+                block = i >= 0 ? i : Math.max(0, -i - 2);
+            }
+            try {
+                return new RangeIterator(block, from);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * @return the entries from the i-th index key up to the next one
+         */
+        private DataInputStream readBlock(int i) throws IOException {
+            long start = indexOffsets[i];
+            long end = i + 1 < indexOffsets.length ? indexOffsets[i + 1] : indexOffset;
+            byte[] block = new byte[(int) (end - start)];
+            synchronized (raf) {
+                raf.seek(start);
+                raf.readFully(block);
+            }
+            return new DataInputStream(new ByteArrayInputStream(block));
+        }
+
+        @Override
+        public void close() throws IOException {
+            raf.close();
+        }
+
+        private class RangeIterator implements Iterator<Map.Entry<String, String>> {
+            private int block; // the index of the block after the one in in
+            private DataInputStream in;
+            private Map.Entry<String, String> next;
+
+            RangeIterator(int block, String from) throws IOException {
+                this.block = block;
+                // Skip the entries of the first block that come before from
+                do {
+                    next = read();
+                } while (next != null && from != null && next.getKey().compareTo(from) < 0);
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<String, String> result = next;
+                try {
+                    next = read();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not read binary dictionary file " + file, e);
+                }
+                return result;
+            }
+
+            /**
+             * @return the next entry, or null after the last one
+             */
+            private Map.Entry<String, String> read() throws IOException {
+                while (in == null || in.available() == 0) {
+                    if (block >= indexOffsets.length) {
+                        return null;
+                    }
+                    in = readBlock(block++);
+                }
+                String key = new String(readBytes(in), StandardCharsets.UTF_8);
+                return new AbstractMap.SimpleImmutableEntry<>(key, readValue(in));
+            }
+        }
+
+        private class EntryIterator implements Iterator<Map.Entry<String, String>> {
+            private final CheckedInputStream checked;
+            private final DataInputStream in;
+            private long remaining = entryCount;
+
+            EntryIterator() throws IOException {
+                // The checksum covers everything up to the trailer
+                InputStream body = new BoundedInputStream(new FileInputStream(file), file.length() - TRAILER_SIZE);
+                checked = new CheckedInputStream(body, new CRC32());
+                in = new DataInputStream(new BufferedInputStream(checked, 1 << 16));
+                in.skipBytes(HEADER_SIZE);
+                if (remaining == 0) {
+                    verify();
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+                if (remaining == 0) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    String key = new String(readBytes(in), StandardCharsets.UTF_8);
+                    String value = readValue(in);
+                    if (--remaining == 0) {
+                        verify();
+                    }
+                    return new AbstractMap.SimpleImmutableEntry<>(key, value);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not read binary dictionary file " + file, e);
+                }
+            }
+
+            private void verify() throws IOException {
+                // Run the index through the checksum too, then compare with the trailer
+                byte[] skip = new byte[8192];
+                while (in.read(skip) >= 0) {
+                    // keep reading
+                }
+                in.close();
+                if ((int) checked.getChecksum().getValue() != crc) {
+                    throw new IOException("Checksum mismatch in binary dictionary file " + file);
+                }
+            }
+        }
+    }
+
+    /**
+     * An input stream that ends after a given number of bytes.
+     */
+    static class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+    }
+
+    static String readValue(DataInput in) throws IOException {
+        long len = readVarLong(in);
+        if (len == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[(int) (len - 1)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static byte[] readBytes(DataInput in) throws IOException {
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    static int writeBytes(DataOutput out, byte[] bytes) throws IOException {
+        int n = writeVarLong(out, bytes.length);
+        out.write(bytes);
+        return n + bytes.length;
+    }
+
+    /**
+     * Write an unsigned varint (7 bits per byte, low bits first).
+     *
+     * @return the number of bytes written
+     */
+    static int writeVarLong(DataOutput out, long value) throws IOException {
+        int n = 1;
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+            n++;
+        }
+        out.writeByte((int) value);
+        return n;
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -0,0 +1,379 @@
+package dict;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Implements a persistent dictionary that is held in memory in a radix tree (a compressed trie), for fast
+ * prefix scans: {@link #prefixScan(String, int)} walks down |prefix| characters and then visits only the
+ * matching words, and {@link #range(String, String)} skips the subtrees that lie before its first key.
+ * <p>
+ * Each node holds the characters of one edge (runs of single-child nodes are merged into one edge) and its
+ * children are kept sorted by their first character, so visiting the tree depth-first returns the words in
+ * key order.
+ * <p>
+ * Like {@link InMemoryDictionary}, the whole dictionary is read by {@link #open()} and written by
+ * {@link #close()}, in either file format.
+ */
+public class TrieDictionary implements PersistentDictionary {
+
+    /**
+     * A node of the tree. The word of a node is the concatenation of the labels from the root down to it.
+     */
+    private static class Node {
+        String label;
+        String value; // null if no word ends here
+        Node[] children = NO_CHILDREN;
+        int childCount;
+
+        Node(String label, String value) {
+            this.label = label;
+            this.value = value;
+        }
+    }
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private final File dictFile;
+    private final DictionaryFormat format;
+
+    private Node root = new Node("", null);
+    private int size;
+
+    public TrieDictionary(File dictFile) {
+        this(dictFile, DictionaryFormat.TEXT);
+    }
+
+    /**
+     * @param dictFile the dictionary file
+     * @param format   the format {@link #close()} writes the file in
+     */
+    public TrieDictionary(File dictFile, DictionaryFormat format) {
+        // Throw exception if the file or format is null
+        if (dictFile == null) {
+            throw new IllegalArgumentException("Dictionary file cannot be null.");
+        }
+        if (format == null) {
+            throw new IllegalArgumentException("Dictionary format cannot be null.");
+        }
+        this.dictFile = dictFile;
+        this.format = format;
+    }
+
+    @Override
+    public void open() throws IOException {
+        // Clear the current dictionary content
+        clear();
+        // Read the file in whichever format it is (a missing file is an empty dictionary)
+        DictionaryFiles.read(dictFile, this::put);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Write the entries in key order
+        DictionaryFiles.write(dictFile, () -> range(null, null), format);
+    }
+
+    @Override
+    public String get(Object key) {
+        String word = (String) Objects.requireNonNull(key);
+        Node node = root;
+        int i = 0;
+        while (i < word.length()) {
+            int index = findChild(node, word.charAt(i));
+            if (index < 0) {
+                return null;
+            }
+            node = node.children[index];
+            if (!word.startsWith(node.label, i)) {
+                return null;
+            }
+            i += node.label.length();
+        }
+        return node.value;
+    }
+
+    @Override
+    public String put(String key, String value) {
+        Objects.requireNonNull(value, "Definitions cannot be null");
+        Node node = root;
+        int i = 0;
+        while (i < key.length()) {
+            int index = findChild(node, key.charAt(i));
+            if (index < 0) {
+                // The rest of the word becomes a new leaf
+                insertChild(node, -index - 1, new Node(key.substring(i), value));
+                size++;
+                return null;
+            }
+            Node child = node.children[index];
+            int common = commonPrefixLength(child.label, key, i);
+            if (common < child.label.length()) {
+                // Split the edge where the word leaves it
+                Node middle = new Node(child.label.substring(0, common), null);
+                child.label = child.label.substring(common);
+                insertChild(middle, 0, child);
+                node.children[index] = middle;
+                child = middle;
+            }
+            node = child;
+            i += common;
+        }
+        String old = node.value;
+        node.value = value;
+        if (old == null) {
+            size++;
+        }
+        return old;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String remove(Object key) {
+        String word = (String) Objects.requireNonNull(key);
+        // Find the node, remembering its parent and grandparent for the clean-up
+        Node grandparent = null;
+        Node parent = null;
+        Node node = root;
+        int i = 0;
+        while (i < word.length()) {
+            int index = findChild(node, word.charAt(i));
+            if (index < 0 || !word.startsWith(node.children[index].label, i)) {
+                return null;
+            }
+            grandparent = parent;
+            parent = node;
+            node = node.children[index];
+            i += node.label.length();
+        }
+        String old = node.value;
+        if (old == null) {
+            return null;
+        }
+        node.value = null;
+        size--;
+        if (parent == null) {
+            // The root stays, even without a word
+            return old;
+        }
+        if (node.childCount == 0) {
+            removeChild(parent, node);
+            // The parent may now be a single-child node without a word
+            if (grandparent != null && parent.value == null && parent.childCount == 1) {
+                mergeWithChild(grandparent, parent);
+            }
+        } else if (node.childCount == 1) {
+            mergeWithChild(parent, node);
+        }
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        root = new Node("", null);
+        size = 0;
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> range(String from, String to) {
+        if (from != null && to != null && from.compareTo(to) >= 0) {
+            return Collections.emptyIterator();
+        }
+        return new TrieIterator(root, "", from, to);
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> prefixScan(String prefix, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit cannot be negative.");
+        }
+        // Walk down to the node whose subtree holds exactly the words that start with the prefix
+        Node node = root;
+        int i = 0; // the length of the word of the node's parent
+        while (i + node.label.length() < prefix.length()) {
+            i += node.label.length();
+            int index = findChild(node, prefix.charAt(i));
+            if (index < 0) {
+                return Collections.emptyIterator();
+            }
+            node = node.children[index];
+            // The label must match the rest of the prefix, or start with it
+            int common = commonPrefixLength(node.label, prefix, i);
+            if (common < node.label.length() && i + common < prefix.length()) {
+                return Collections.emptyIterator();
+            }
+        }
+        String word = prefix.substring(0, i) + node.label;
+        return DictionaryIterators.limit(new TrieIterator(node, word, null, null), limit);
+    }
+
+    /**
+     * Binary search the children of the node by first character.
+     *
+     * @return the index of the child, or (-(insertion point) - 1) if there is none
+     */
+    private static int findChild(Node node, char c) {
+        int lo = 0;
+        int hi = node.childCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char first = node.children[mid].label.charAt(0);
+            if (first < c) {
+                lo = mid + 1;
+            } else if (first > c) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -lo - 1;
+    }
+
+    private static void insertChild(Node node, int index, Node child) {
+        if (node.childCount == node.children.length) {
+            node.children = Arrays.copyOf(node.children, Math.max(2, 2 * node.childCount));
+        }
+        System.arraycopy(node.children, index, node.children, index + 1, node.childCount - index);
+        node.children[index] = child;
+        node.childCount++;
+    }
+
+    private static void removeChild(Node node, Node child) {
+        int index = findChild(node, child.label.charAt(0));
+        System.arraycopy(node.children, index + 1, node.children, index, node.childCount - index - 1);
+        node.children[--node.childCount] = null;
+    }
+
+    /**
+     * Replace a node that has no word and a single child by that child, joining their labels.
+     */
+    private static void mergeWithChild(Node parent, Node node) {
+        Node child = node.children[0];
+        child.label = node.label + child.label;
+        parent.children[findChild(parent, node.label.charAt(0))] = child;
+    }
+
+    /**
+     * @return the length of the common prefix of the label and the word starting at the given offset
+     */
+    private static int commonPrefixLength(String label, String word, int offset) {
+        int n = Math.min(label.length(), word.length() - offset);
+        int i = 0;
+        while (i < n && label.charAt(i) == word.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Visits a subtree depth-first, returning the words in key order. Subtrees whose words all come before
+     * from are skipped without being visited, and the iteration stops at the first word that is not less than to.
+     */
+    private static class TrieIterator implements Iterator<Map.Entry<String, String>> {
+        /**
+         * A node on the current path, with the length of its word and the next child to visit
+         * (-1 before the node's own word has been considered).
+         */
+        private static class Frame {
+            final Node node;
+            final int wordLength;
+            int child = -1;
+
+            Frame(Node node, int wordLength) {
+                this.node = node;
+                this.wordLength = wordLength;
+            }
+        }
+
+        private final ArrayDeque<Frame> stack = new ArrayDeque<>();
+        private final StringBuilder word;
+        private final String from;
+        private final String to;
+        private Map.Entry<String, String> next;
+
+        TrieIterator(Node start, String startWord, String from, String to) {
+            this.word = new StringBuilder(startWord);
+            this.from = from;
+            this.to = to;
+            stack.push(new Frame(start, startWord.length()));
+            next = advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, String> result = next;
+            next = advance();
+            return result;
+        }
+
+        private Map.Entry<String, String> advance() {
+            while (!stack.isEmpty()) {
+                Frame frame = stack.peek();
+                word.setLength(frame.wordLength);
+                if (frame.child < 0) {
+                    frame.child = 0;
+                    if (frame.node.value != null && (from == null || CharSequence.compare(word, from) >= 0)) {
+                        if (to != null && CharSequence.compare(word, to) >= 0) {
+                            stack.clear();
+                            return null;
+                        }
+                        return new AbstractMap.SimpleImmutableEntry<>(word.toString(), frame.node.value);
+                    }
+                } else if (frame.child < frame.node.childCount) {
+                    Node child = frame.node.children[frame.child++];
+                    word.append(child.label);
+                    if (from != null && CharSequence.compare(word, from) < 0 && !isPrefix(word, from)) {
+                        // Every word in the subtree comes before from
+                        continue;
+                    }
+                    if (to != null && CharSequence.compare(word, to) >= 0) {
+                        // Every later word is at least to
+                        stack.clear();
+                        return null;
+                    }
+                    stack.push(new Frame(child, word.length()));
+                } else {
+                    stack.pop();
+                }
+            }
+            return null;
+        }
+
+        private static boolean isPrefix(CharSequence prefix, String s) {
+            if (prefix.length() > s.length()) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                if (prefix.charAt(i) != s.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
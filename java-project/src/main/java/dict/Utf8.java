@@ -0,0 +1,151 @@
+package dict;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Helpers for keys that are stored as UTF-8 bytes.
+ * <p>
+ * Byte comparisons here order keys exactly like {@link String#compareTo(String)}, so files sorted by
+ * these helpers can be searched with a String, and vice versa. Plain UTF-8 byte order is code point
+ * order, which differs from String (UTF-16) order only for characters in U+E000..U+FFFF against
+ * supplementary characters; the lead bytes are remapped to fix that.
+ */
+final class Utf8 {
+
+    private Utf8() {
+    }
+
+    static byte[] encode(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String decode(ByteBuffer buf, int off, int len) {
+        byte[] bytes = new byte[len];
+        buf.get(off, bytes, 0, len);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compare len bytes of buf at off with the key bytes, in String order.
+     *
+     * @return a negative number, zero or a positive number as the stored bytes are less than, equal to or
+     * greater than the key
+     */
+    static int compare(ByteBuffer buf, int off, int len, byte[] key) {
+        int n = Math.min(len, key.length);
+        for (int i = 0; i < n; i++) {
+            int a = buf.get(off + i) & 0xff;
+            int b = key[i] & 0xff;
+            if (a != b) {
+                return order(a) - order(b);
+            }
+        }
+        return len - key.length;
+    }
+
+    /**
+     * Compare aLen bytes of buffer a at aOff with bLen bytes of buffer b at bOff, in String order.
+     */
+    static int compare(ByteBuffer a, int aOff, int aLen, ByteBuffer b, int bOff, int bLen) {
+        int n = Math.min(aLen, bLen);
+        for (int i = 0; i < n; i++) {
+            int x = a.get(aOff + i) & 0xff;
+            int y = b.get(bOff + i) & 0xff;
+            if (x != y) {
+                return order(x) - order(y);
+            }
+        }
+        return aLen - bLen;
+    }
+
+    /**
+     * Check whether len bytes of buf at off are the UTF-8 encoding of s (as {@link #encode(String)} encodes it),
+     * without encoding s.
+     */
+    static boolean equals(ByteBuffer buf, int off, int len, String s) {
+        int pos = off;
+        int end = off + len;
+        for (int i = 0; i < s.length(); i++) {
+            int c = s.charAt(i);
+            if (c < 0x80) {
+                if (pos >= end || buf.get(pos++) != c) {
+                    return false;
+                }
+                continue;
+            }
+            int bytes;
+            int cp = c;
+            if (c < 0x800) {
+                bytes = 2;
+            } else if (!Character.isSurrogate((char) c)) {
+                bytes = 3;
+            } else if (Character.isHighSurrogate((char) c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                cp = Character.toCodePoint((char) c, s.charAt(++i));
+                bytes = 4;
+            } else {
+                // An unpaired surrogate is encoded as '?'
+                if (pos >= end || buf.get(pos++) != '?') {
+                    return false;
+                }
+                continue;
+            }
+            if (end - pos < bytes) {
+                return false;
+            }
+            // Lead byte, then 6 bits per continuation byte
+            int lead = bytes == 2 ? 0xc0 | cp >> 6 : bytes == 3 ? 0xe0 | cp >> 12 : 0xf0 | cp >> 18;
+            if ((buf.get(pos++) & 0xff) != lead) {
+                return false;
+            }
+            for (int shift = 6 * (bytes - 2); shift >= 0; shift -= 6) {
+                if ((buf.get(pos++) & 0xff) != (0x80 | (cp >> shift & 0x3f))) {
+                    return false;
+                }
+            }
+        }
+        return pos == end;
+    }
+
+    /**
+     * Compare len bytes of an array at off with the key bytes, in String order.
+     */
+    static int compare(byte[] bytes, int off, int len, byte[] key) {
+        return compare(bytes, off, len, key, 0, key.length);
+    }
+
+    /**
+     * Compare aLen bytes of a at aOff with bLen bytes of b at bOff, in String order.
+     */
+    static int compare(byte[] a, int aOff, int aLen, byte[] b, int bOff, int bLen) {
+        int n = Math.min(aLen, bLen);
+        for (int i = 0; i < n; i++) {
+            int x = a[aOff + i] & 0xff;
+            int y = b[bOff + i] & 0xff;
+            if (x != y) {
+                return order(x) - order(y);
+            }
+        }
+        return aLen - bLen;
+    }
+
+    /**
+     * Compare two UTF-8 byte arrays in String order.
+     */
+    static int compare(byte[] a, byte[] b) {
+        return compare(a, 0, a.length, b);
+    }
+
+    /**
+     * The first differing byte of two valid UTF-8 strings is either a lead byte of both, or a continuation byte
+     * of both that follows the same lead byte. Only lead bytes need remapping: 0xEE/0xEF (U+E000..U+FFFF) must sort
+     * after 0xF0..0xF4 (supplementary characters, which are surrogate pairs in a String).
+     */
+    private static int order(int b) {
+        if (b < 0xee) {
+            return b;
+        }
+        return b >= 0xf0 ? b - 2 : b + 5;
+    }
+}
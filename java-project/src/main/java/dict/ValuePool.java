@@ -0,0 +1,70 @@
+package dict;
+
+import java.util.HashMap;
+
+/**
+ * A reference-counted pool of definitions: equal definitions added to the pool share one String, which is
+ * dropped from the pool when the last entry using it releases it.
+ */
+final class ValuePool {
+    /**
+     * A pooled definition and the number of entries that use it.
+     */
+    private static class Ref {
+        final String value;
+        int count;
+
+        Ref(String value) {
+            this.value = value;
+        }
+    }
+
+    private final HashMap<String, Ref> refs = new HashMap<>();
+
+    /**
+     * Add a use of a definition.
+     *
+     * @return the pooled String equal to the value
+     */
+    String acquire(String value) {
+        Ref ref = refs.get(value);
+        if (ref == null) {
+            ref = new Ref(value);
+            refs.put(value, ref);
+        }
+        ref.count++;
+        return ref.value;
+    }
+
+    /**
+     * Remove a use of a pooled definition, dropping it from the pool if it was the last.
+     */
+    void release(String value) {
+        Ref ref = refs.get(value);
+        if (ref == null) {
+            throw new IllegalStateException("Definition is not in the pool: " + value);
+        }
+        if (--ref.count == 0) {
+            refs.remove(value);
+        }
+    }
+
+    /**
+     * @return the number of uses of a definition
+     */
+    int count(String value) {
+        Ref ref = refs.get(value);
+        return ref == null ? 0 : ref.count;
+    }
+
+    /**
+     * @return the number of distinct definitions
+     */
+    int size() {
+        return refs.size();
+    }
+
+    void clear() {
+        refs.clear();
+    }
+}
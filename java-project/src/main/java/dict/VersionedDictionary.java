@@ -0,0 +1,140 @@
+package dict;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Implements a persistent dictionary, held in memory, whose {@link #snapshot()} returns an immutable
+ * point-in-time view in O(1), for long exports and scans that must not block or race with the writers.
+ * <p>
+ * The entries are kept in a persistent AVL tree ({@link PersistentTree}): a change builds a new version of the
+ * tree that shares all but O(log n) nodes with the previous one, and publishes its root. A snapshot is just a
+ * root, so taking one copies nothing, and versions that are no longer referenced are garbage collected.
+ * Each {@link #range(String, String)} also iterates the version it started with.
+ * <p>
+ * Like {@link InMemoryDictionary}, the whole dictionary is read by {@link #open()} and written by
+ * {@link #close()}, only if it changed; close() writes a snapshot, so writers may go on meanwhile.
+ * <p>
+ * All methods are thread-safe; reads don't lock.
+ */
+public class VersionedDictionary implements PersistentDictionary {
+    private final File dictFile;
+    private final DictionaryFormat format;
+    private final Object fileLock = new Object();
+
+    private volatile PersistentTree.Node root; // the current version
+    private long version; // number of changes
+    private long persistedVersion; // the version in the file
+
+    public VersionedDictionary(File dictFile) {
+        this(dictFile, DictionaryFormat.TEXT);
+    }
+
+    /**
+     * @param dictFile the dictionary file
+     * @param format   the format {@link #close()} writes the file in
+     */
+    public VersionedDictionary(File dictFile, DictionaryFormat format) {
+        // Throw exception if the file or format is null
+        if (dictFile == null) {
+            throw new IllegalArgumentException("Dictionary file cannot be null.");
+        }
+        if (format == null) {
+            throw new IllegalArgumentException("Dictionary format cannot be null.");
+        }
+        this.dictFile = dictFile;
+        this.format = format;
+    }
+
+    @Override
+    public synchronized void open() throws IOException {
+        String[] old = new String[1];
+        PersistentTree.Node[] loaded = new PersistentTree.Node[1];
+        // Read the file in whichever format it is (a missing file is an empty dictionary)
+        DictionaryFiles.read(dictFile, (word, def) -> loaded[0] = PersistentTree.put(loaded[0], word, def, old));
+        root = loaded[0];
+        version++;
+        // Nothing needs to be written until something changes, unless the file is in another format
+        persistedVersion = dictFile.exists() && DictionaryFiles.formatOf(dictFile) != format ? -1 : version;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // One writer of the file at a time, so an older snapshot can't overwrite a newer one
+        synchronized (fileLock) {
+            PersistentTree.Node snapshot;
+            long snapshotVersion;
+            synchronized (this) {
+                if (persistedVersion == version) {
+                    // Nothing to write
+                    return;
+                }
+                snapshot = root;
+                snapshotVersion = version;
+            }
+            // Write without holding the dictionary's lock, so writers go on
+            new DictionarySnapshot(snapshot).writeTo(dictFile, format);
+            synchronized (this) {
+                persistedVersion = snapshotVersion;
+            }
+        }
+    }
+
+    /**
+     * @return an immutable view of the dictionary as it is now
+     */
+    public DictionarySnapshot snapshot() {
+        return new DictionarySnapshot(root);
+    }
+
+    @Override
+    public String get(Object key) {
+        return PersistentTree.get(root, (String) Objects.requireNonNull(key));
+    }
+
+    @Override
+    public synchronized String put(String key, String value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value, "Definitions cannot be null");
+        String[] old = new String[1];
+        root = PersistentTree.put(root, key, value, old);
+        version++;
+        return old[0];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return PersistentTree.size(root);
+    }
+
+    @Override
+    public synchronized String remove(Object key) {
+        String[] old = new String[1];
+        root = PersistentTree.remove(root, (String) Objects.requireNonNull(key), old);
+        if (old[0] != null) {
+            version++;
+        }
+        return old[0];
+    }
+
+    @Override
+    public synchronized void clear() {
+        if (root != null) {
+            root = null;
+            version++;
+        }
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> range(String from, String to) {
+        return PersistentTree.range(root, from, to);
+    }
+}
@@ -1,13 +1,28 @@
 package files;
 
-import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 
 public class RandomAccess {
+    /**
+     * The default memory budget of the external merge sorts, in bytes.
+     */
+    public static final int DEFAULT_MEMORY_BUDGET = 8 << 20;
+
+    /**
+     * The smallest memory budget of the external merge sorts, in bytes.
+     */
+    public static final int MIN_MEMORY_BUDGET = 64;
+
+    // Merge buffers smaller than this aren't worth another input per merge pass
+    private static final int MERGE_BUFFER_SIZE = 4096;
+    private static final int MAX_MERGE_INPUTS = 256;
     /**
      * Treat the file as an array of (unsigned) 8-bit values and sort them
      * in-place using a bubble-sort algorithm.
      * You may not read the whole file into memory!
+     * This seeks for every comparison; for files beyond a few KB use {@link #sortBytes(RandomAccessFile, int)}.
      *
      * @param file
      */
@@ -37,6 +52,7 @@ public class RandomAccess {
      * Treat the file as an array of unsigned 24-bit values (stored MSB first) and sort
      * them in-place using a bubble-sort algorithm.
      * You may not read the whole file into memory!
+     * This seeks for every comparison; for files beyond a few KB use {@link #sortTriBytes(RandomAccessFile, int)}.
      *
      * @param file
      * @throws IOException
@@ -90,4 +106,226 @@ public class RandomAccess {
             }
         }
     }
+
+    /**
+     * Treat the file as an array of (unsigned) 8-bit values and sort them with an external merge sort
+     * that uses at most about memoryBudget bytes of memory: sorted runs are merged through temporary files.
+     *
+     * @param file
+     * @param memoryBudget the memory the sort may use, in bytes (at least {@link #MIN_MEMORY_BUDGET})
+     * @throws IOException
+     */
+    public static void sortBytes(RandomAccessFile file, int memoryBudget) throws IOException {
+        externalSort(file, 1, memoryBudget);
+    }
+
+    /**
+     * Treat the file as an array of unsigned 24-bit values (stored MSB first) and sort them with an external
+     * merge sort that uses at most about memoryBudget bytes of memory: sorted runs are merged through temporary
+     * files. Bytes after the last whole 24-bit value are left in place.
+     *
+     * @param file
+     * @param memoryBudget the memory the sort may use, in bytes (at least {@link #MIN_MEMORY_BUDGET})
+     * @throws IOException
+     */
+    public static void sortTriBytes(RandomAccessFile file, int memoryBudget) throws IOException {
+        externalSort(file, 3, memoryBudget);
+    }
+
+    /**
+     * Sort the file as an array of unsigned big-endian values of width bytes, never holding more of it in
+     * memory than the budget allows.
+     * <p>
+     * The file is read sequentially in runs that fit in the budget (with their decoded values), and each run
+     * is sorted in memory and written to a temporary file. The runs are then merged, up to
+     * {@link #MAX_MERGE_INPUTS} at a time through buffered streams, in as many passes as needed, and the last
+     * merge writes the result back over the file. A file that fits in a single run is sorted without
+     * temporary files.
+     */
+    private static void externalSort(RandomAccessFile file, int width, int memoryBudget) throws IOException {
+        if (memoryBudget < MIN_MEMORY_BUDGET) {
+            throw new IllegalArgumentException("Memory budget must be at least " + MIN_MEMORY_BUDGET + " bytes.");
+        }
+        long count = file.length() / width;
+        if (count <= 1) {
+            return;
+        }
+        // Each value of a run takes its bytes plus an int while it is sorted
+        int runLength = memoryBudget / (width + 4);
+        ArrayDeque<File> runs = new ArrayDeque<>();
+        try {
+            byte[] bytes = new byte[(int) Math.min(count, runLength) * width];
+            int[] values = new int[(int) Math.min(count, runLength)];
+            file.seek(0);
+            for (long start = 0; start < count; start += runLength) {
+                int n = (int) Math.min(runLength, count - start);
+                file.readFully(bytes, 0, n * width);
+                for (int i = 0; i < n; i++) {
+                    values[i] = decode(bytes, i * width, width);
+                }
+                Arrays.sort(values, 0, n);
+                for (int i = 0; i < n; i++) {
+                    encode(values[i], bytes, i * width, width);
+                }
+                if (n == count) {
+                    // A single run: write it back, nothing to merge
+                    file.seek(0);
+                    file.write(bytes, 0, n * width);
+                    return;
+                }
+                File run = File.createTempFile("sort", ".run");
+                runs.add(run);
+                try (OutputStream out = new FileOutputStream(run)) {
+                    out.write(bytes, 0, n * width);
+                }
+            }
+            // Free the run buffers for the merge buffers
+            bytes = null;
+            values = null;
+
+            // Merge passes, until the runs can be merged into the file at once
+            int inputs = Math.max(2, Math.min(MAX_MERGE_INPUTS, memoryBudget / MERGE_BUFFER_SIZE - 1));
+            int bufferSize = Math.max(width, memoryBudget / (inputs + 1));
+            while (runs.size() > inputs) {
+                File[] group = new File[inputs];
+                for (int i = 0; i < inputs; i++) {
+                    group[i] = runs.poll();
+                }
+                File merged = File.createTempFile("sort", ".run");
+                runs.add(merged);
+                try (OutputStream out = new BufferedOutputStream(new FileOutputStream(merged), bufferSize)) {
+                    merge(group, width, out, bufferSize);
+                }
+                for (File run : group) {
+                    run.delete();
+                }
+            }
+            file.seek(0);
+            try (OutputStream out = new BufferedOutputStream(new RandomAccessOutputStream(file), bufferSize)) {
+                merge(runs.toArray(new File[0]), width, out, bufferSize);
+            }
+        } finally {
+            for (File run : runs) {
+                run.delete();
+            }
+        }
+    }
+
+    /**
+     * Merge sorted runs of values into the output, choosing the next value with a binary heap of the runs.
+     */
+    private static void merge(File[] runs, int width, OutputStream out, int bufferSize) throws IOException {
+        InputStream[] inputs = new InputStream[runs.length];
+        try {
+            int[] heads = new int[runs.length]; // the next value of each run
+            int[] heap = new int[runs.length]; // indices of the runs that have values, by their heads
+            int size = 0;
+            byte[] value = new byte[width];
+            for (int i = 0; i < runs.length; i++) {
+                inputs[i] = new BufferedInputStream(new FileInputStream(runs[i]), bufferSize);
+                if (readValue(inputs[i], value)) {
+                    heads[i] = decode(value, 0, width);
+                    heap[size++] = i;
+                }
+            }
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(heap, heads, i, size);
+            }
+            while (size > 0) {
+                int run = heap[0];
+                encode(heads[run], value, 0, width);
+                out.write(value);
+                if (readValue(inputs[run], value)) {
+                    heads[run] = decode(value, 0, width);
+                } else {
+                    // The run is done
+                    heap[0] = heap[--size];
+                }
+                siftDown(heap, heads, 0, size);
+            }
+        } finally {
+            for (InputStream in : inputs) {
+                if (in != null) {
+                    in.close();
+                }
+            }
+        }
+    }
+
+    private static void siftDown(int[] heap, int[] heads, int i, int size) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && heads[heap[left]] < heads[heap[smallest]]) {
+                smallest = left;
+            }
+            if (right < size && heads[heap[right]] < heads[heap[smallest]]) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            int t = heap[i];
+            heap[i] = heap[smallest];
+            heap[smallest] = t;
+            i = smallest;
+        }
+    }
+
+    /**
+     * Read a whole value from the stream.
+     *
+     * @return false at the end of the stream
+     */
+    private static boolean readValue(InputStream in, byte[] value) throws IOException {
+        int n = 0;
+        while (n < value.length) {
+            int read = in.read(value, n, value.length - n);
+            if (read < 0) {
+                if (n > 0) {
+                    throw new EOFException("Truncated run file");
+                }
+                return false;
+            }
+            n += read;
+        }
+        return true;
+    }
+
+    private static int decode(byte[] bytes, int off, int width) {
+        int value = 0;
+        for (int i = 0; i < width; i++) {
+            value = (value << 8) | (bytes[off + i] & 0xff);
+        }
+        return value;
+    }
+
+    private static void encode(int value, byte[] bytes, int off, int width) {
+        for (int i = width - 1; i >= 0; i--) {
+            bytes[off + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    /**
+     * Writes sequentially to a random access file, from its current position.
+     */
+    private static class RandomAccessOutputStream extends OutputStream {
+        private final RandomAccessFile file;
+
+        RandomAccessOutputStream(RandomAccessFile file) {
+            this.file = file;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            file.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            file.write(b, off, len);
+        }
+    }
 }
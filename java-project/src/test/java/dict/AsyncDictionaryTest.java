@@ -0,0 +1,46 @@
+package dict;
+
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class AsyncDictionaryTest extends PersistentDictionaryTest {
+	@Override
+    PersistentDictionary getDictionary(File file) throws IOException {
+		// Flush often, so the tests run with background flushes going on
+		return new AsyncDictionary(dictFile, DictionaryFormat.TEXT, 5);
+	}
+
+	/**
+	 * A flush writes the changes made before it started, while later changes go on in memory.
+	 */
+	@Test
+	public void writesDuringFlushTest() throws Exception {
+		dictFile.delete();
+		AsyncDictionary dict = new AsyncDictionary(dictFile);
+		dict.open();
+		fillMap(dict, testWords, testDefs);
+		CompletableFuture<Void> flush = dict.flushAsync();
+		dict.put("later", "not in the first flush");
+		dict.remove(testWords[0]);
+		assertNull(dict.get(testWords[0]));
+		flush.get();
+
+		InMemoryDictionary persisted = new InMemoryDictionary(dictFile);
+		persisted.open();
+		assertEquals(testWords.length, persisted.size());
+		assertNull(persisted.get("later"));
+
+		dict.close();
+		persisted.open();
+		assertEquals("not in the first flush", persisted.get("later"));
+		assertNull(persisted.get(testWords[0]));
+		dictFile.delete();
+	}
+}
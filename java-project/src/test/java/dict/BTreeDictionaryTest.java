@@ -0,0 +1,47 @@
+package dict;
+
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.TreeMap;
+
+public class BTreeDictionaryTest extends PersistentDictionaryTest {
+	@Override
+    PersistentDictionary getDictionary(File file) throws IOException {
+		// Small pages and a tiny buffer pool, so the tests split nodes and evict dirty pages
+		return new BTreeDictionary(dictFile, 1024, 8);
+	}
+
+	/**
+	 * Reopening must undo changes, even those whose pages were already evicted to the file.
+	 */
+	@Test
+	public void reopenUndoesChangesTest() throws Exception {
+		TreeMap<String, String> expected = new TreeMap<String, String>();
+		String[] words = randomStrings(MAX_SIZE, MAX_LEN);
+		String[] defs = randomStrings(MAX_SIZE, MAX_LEN);
+		fillMap(expected, words, defs);
+
+		dictFile.delete();
+		PersistentDictionary dict = getDictionary(dictFile);
+		dict.open();
+		fillMap(dict, words, defs);
+		dict.close();
+
+		dict.open();
+		fillMap(dict, randomStrings(MAX_SIZE, MAX_LEN), randomStrings(MAX_SIZE, MAX_LEN));
+		for (String word : words) {
+			dict.remove(word);
+		}
+		dict.open();
+		testEquality("Reopen after changes", expected, dict);
+
+		dict.clear();
+		dict.open();
+		testEquality("Reopen after clear", expected, dict);
+		dict.close();
+		dictFile.delete();
+	}
+}
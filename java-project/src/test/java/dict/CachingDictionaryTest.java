@@ -0,0 +1,53 @@
+package dict;
+
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CachingDictionaryTest extends PersistentDictionaryTest {
+	@Override
+    PersistentDictionary getDictionary(File file) throws IOException {
+		// A cache much smaller than the tests' dictionaries, so entries are evicted and read back
+		return new CachingDictionary(new BTreeDictionary(dictFile, 1024, 8), 16);
+	}
+
+	/**
+	 * Frequently used words should stay cached while a scan of other words goes through.
+	 */
+	@Test
+	public void hotSetTest() throws Exception {
+		dictFile.delete();
+		CachingDictionary dict = new CachingDictionary(new BTreeDictionary(dictFile), 100);
+		dict.open();
+		for (int i = 0; i < 1000; ++i) {
+			dict.put("word" + i, "def" + i);
+		}
+		assertTrue(dict.evictionCount() > 0);
+		assertTrue(dict.cachedEntries() <= 100);
+
+		for (int round = 0; round < 40; ++round) {
+			for (int i = 0; i < 50; ++i) {
+				assertEquals("def" + i, dict.get("word" + i));
+			}
+			// One-off lookups of other words
+			for (int i = 0; i < 20; ++i) {
+				dict.get("word" + (100 + round * 20 + i));
+			}
+		}
+		assertTrue("Hit ratio too low: " + dict.hitRatio(), dict.hitRatio() > 0.5);
+		assertTrue(dict.cachedBytes() > 0);
+		dict.close();
+
+		dict = new CachingDictionary(new BTreeDictionary(dictFile), 100);
+		dict.open();
+		assertEquals(1000, dict.size());
+		assertEquals("def999", dict.get("word999"));
+		dict.close();
+		dictFile.delete();
+	}
+}
@@ -0,0 +1,40 @@
+package dict;
+
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompactDictionaryTest extends PersistentDictionaryTest {
+	@Override
+    PersistentDictionary getDictionary(File file) throws IOException {
+		return new CompactDictionary(dictFile);
+	}
+
+	@Test
+	public void heapBytesTest() throws Exception {
+		dictFile.delete();
+		CompactDictionary dict = new CompactDictionary(dictFile);
+		dict.open();
+		// Enough words for several merges of the overlay
+		int numWords = 50000;
+		for (int i = 0; i < numWords; ++i) {
+			dict.put(String.format("word%06d", (i * 7919) % numWords), "definition " + i);
+		}
+		assertEquals(numWords, dict.size());
+		assertEquals("definition 1", dict.get("word007919"));
+		dict.close();
+
+		dict = new CompactDictionary(dictFile);
+		dict.open();
+		assertEquals("definition 1", dict.get("word007919"));
+		// About 30 bytes of UTF-8 per entry, plus the record position
+		assertTrue("Heap use is " + dict.heapBytes(), dict.heapBytes() < numWords * 48L);
+		dict.close();
+		dictFile.delete();
+	}
+}
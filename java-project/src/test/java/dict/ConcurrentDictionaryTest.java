@@ -0,0 +1,155 @@
+package dict;
+
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentDictionaryTest extends PersistentDictionaryTest {
+	public final static int NUM_THREADS = 4;
+	public final static int WORDS_PER_THREAD = 2000;
+
+	@Override
+    PersistentDictionary getDictionary(File file) throws IOException {
+		return new ConcurrentDictionary(dictFile);
+	}
+
+	/**
+	 * Several writers, with a flush in the middle, must not lose or corrupt entries.
+	 */
+	@Test
+	public void concurrentWritersTest() throws Exception {
+		dictFile.delete();
+		PersistentDictionary shared = getDictionary(dictFile);
+		shared.open();
+
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < NUM_THREADS; ++t) {
+			final int id = t;
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < WORDS_PER_THREAD; ++i) {
+					shared.put("w" + id + "-" + i, "def" + i);
+					if (i % 2 == 1) {
+						shared.remove("w" + id + "-" + (i - 1));
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		shared.close();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(NUM_THREADS * WORDS_PER_THREAD / 2, shared.size());
+		shared.close();
+
+		PersistentDictionary dict = getDictionary(dictFile);
+		dict.open();
+		assertEquals(NUM_THREADS * WORDS_PER_THREAD / 2, dict.size());
+		assertEquals("def1", dict.get("w0-1"));
+		dict.close();
+		dictFile.delete();
+	}
+
+	/**
+	 * Closes from several threads, while a writer goes on, each write a whole file.
+	 */
+	@Test
+	public void concurrentClosesTest() throws Exception {
+		dictFile.delete();
+		PersistentDictionary shared = getDictionary(dictFile);
+		shared.open();
+		for (int i = 0; i < WORDS_PER_THREAD; ++i) {
+			shared.put("base" + i, "def" + i);
+		}
+		List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+		List<Thread> threads = new ArrayList<>();
+		threads.add(new Thread(() -> {
+			for (int i = 0; i < WORDS_PER_THREAD; ++i) {
+				shared.put("new" + i, "def" + i);
+			}
+		}));
+		for (int t = 0; t < NUM_THREADS; ++t) {
+			threads.add(new Thread(() -> {
+				try {
+					for (int i = 0; i < 5; ++i) {
+						shared.close();
+					}
+				} catch (Throwable e) {
+					errors.add(e);
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(new ArrayList<Throwable>(), errors);
+
+		PersistentDictionary dict = getDictionary(dictFile);
+		dict.open();
+		// Every word put before the closes, and some of the others
+		for (int i = 0; i < WORDS_PER_THREAD; ++i) {
+			assertEquals("def" + i, dict.get("base" + i));
+		}
+		shared.close();
+		dict.open();
+		assertEquals(2 * WORDS_PER_THREAD, dict.size());
+		dict.close();
+		dictFile.delete();
+	}
+
+	/**
+	 * A close while a writer goes on writes a state the dictionary was in, not a mix of older and newer
+	 * definitions.
+	 */
+	@Test
+	public void consistentCloseTest() throws Exception {
+		dictFile.delete();
+		PersistentDictionary shared = getDictionary(dictFile);
+		shared.open();
+		// Words between "a" and "z", so writing the file takes a while
+		for (int i = 0; i < 50 * WORDS_PER_THREAD; ++i) {
+			shared.put("m" + i, "def" + i);
+		}
+		shared.put("a", "0");
+		shared.put("z", "0");
+		AtomicBoolean done = new AtomicBoolean();
+		Thread writer = new Thread(() -> {
+			// "a" is changed before "z", so the definition of "a" is never lower than the one of "z"
+			for (int i = 1; !done.get(); ++i) {
+				shared.put("a", Integer.toString(i));
+				shared.put("z", Integer.toString(i));
+			}
+		});
+		writer.start();
+		try {
+			for (int i = 0; i < 20; ++i) {
+				shared.close();
+				Map<String, String> written = new HashMap<>();
+				DictionaryFiles.read(dictFile, written::put);
+				int a = Integer.parseInt(written.get("a"));
+				int z = Integer.parseInt(written.get("z"));
+				assertTrue("Wrote a = " + a + " and z = " + z, a >= z);
+			}
+		} finally {
+			done.set(true);
+			writer.join();
+		}
+		dictFile.delete();
+	}
+}
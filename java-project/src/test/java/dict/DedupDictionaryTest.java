@@ -0,0 +1,81 @@
+package dict;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DedupDictionaryTest extends PersistentDictionaryTest {
+	@Override
+    PersistentDictionary getDictionary(File file) throws IOException {
+		return new DedupDictionary(dictFile);
+	}
+
+	/**
+	 * Shared definitions are stored once in memory and in the file, and the file is read by other dictionaries.
+	 */
+	@Test
+	public void dedupTest() throws Exception {
+		dictFile.delete();
+		DedupDictionary dict = new DedupDictionary(dictFile);
+		dict.open();
+		TreeMap<String, String> expected = new TreeMap<>();
+		for (int i = 0; i < 20000; ++i) {
+			String def = i % 10 == 0 ? "" : "a fairly long shared definition number " + rnd.nextInt(50);
+			expected.put("word" + i, def);
+			// A new String each time, so only the pool makes them shared
+			dict.put("word" + i, new String(def));
+		}
+		assertEquals(51, dict.distinctValues());
+		assertSame(dict.get("word0"), dict.get("word10"));
+		dict.close();
+
+		File binaryFile = DictionaryFiles.sibling(dictFile, ".bin");
+		DictionaryFiles.write(binaryFile, expected.entrySet(), DictionaryFormat.BINARY);
+		assertTrue(dictFile.length() + " bytes, binary " + binaryFile.length(),
+				dictFile.length() * 2 < binaryFile.length());
+		binaryFile.delete();
+
+		InMemoryDictionary other = new InMemoryDictionary(dictFile, DictionaryFormat.DEDUP);
+		other.open();
+		assertEquals(expected, other);
+		other.close();
+
+		dict = new DedupDictionary(dictFile);
+		dict.open();
+		assertEquals(51, dict.distinctValues());
+		assertSame(dict.get("word0"), dict.get("word20"));
+		dict.close();
+		dictFile.delete();
+	}
+
+	/**
+	 * A definition leaves the pool when its last word is removed or redefined.
+	 */
+	@Test
+	public void referenceCountTest() throws Exception {
+		dictFile.delete();
+		DedupDictionary dict = new DedupDictionary(dictFile);
+		dict.open();
+		dict.put("cat", "animal");
+		dict.put("dog", "animal");
+		dict.put("rose", "flower");
+		assertEquals(2, dict.distinctValues());
+		dict.remove("cat");
+		assertEquals(2, dict.distinctValues());
+		dict.put("dog", "pet");
+		assertEquals(2, dict.distinctValues());
+		dict.put("rose", "pet");
+		assertEquals(1, dict.distinctValues());
+		dict.clear();
+		assertEquals(0, dict.distinctValues());
+		dict.close();
+		dictFile.delete();
+	}
+}
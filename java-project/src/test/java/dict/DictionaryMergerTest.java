@@ -0,0 +1,132 @@
+package dict;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test merging a text base dictionary with binary deltas.
+ */
+public class DictionaryMergerTest {
+	File base;
+	File delta1;
+	File delta2;
+	File output;
+	TreeMap<String, String> baseWords;
+	TreeMap<String, String> changes1;
+	TreeMap<String, String> changes2;
+
+	@Before
+	public void setup() throws IOException {
+		base = File.createTempFile("DictTest", ".txt");
+		delta1 = File.createTempFile("DictTest", ".delta");
+		delta2 = File.createTempFile("DictTest", ".delta");
+		output = File.createTempFile("DictTest", ".out");
+		Random rnd = new Random(19);
+		baseWords = randomWords(rnd, 3000, null);
+		InMemoryDictionary dict = new InMemoryDictionary(base);
+		dict.open();
+		dict.putAll(baseWords);
+		dict.close();
+		changes1 = randomWords(rnd, 500, baseWords);
+		writeTable(delta1, changes1);
+		changes2 = randomWords(rnd, 500, baseWords);
+		writeTable(delta2, changes2);
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : new File[]{base, delta1, delta2, output}) {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void mergeTest() throws Exception {
+		long words = DictionaryMerger.merge(Arrays.asList(base, delta1, delta2), output, DictionaryFormat.TEXT);
+		TreeMap<String, String> expected = apply(apply(baseWords, changes1), changes2);
+		assertEquals(expected.size(), words);
+		assertEquals(expected, read(output));
+	}
+
+	/**
+	 * Deltas merged with their delete markers, then merged into the base, give the same dictionary.
+	 */
+	@Test
+	public void mergeDeltasTest() throws Exception {
+		DictionaryMerger.merge(Arrays.asList(delta1, delta2), output, DictionaryFormat.BINARY, true);
+		// Merge into the base in place
+		DictionaryMerger.merge(Arrays.asList(base, output), base, DictionaryFormat.BINARY);
+		assertEquals(apply(apply(baseWords, changes1), changes2), read(base));
+	}
+
+	@Test
+	public void missingInputTest() throws Exception {
+		delta1.delete();
+		DictionaryMerger.merge(Arrays.asList(delta1, base), output, DictionaryFormat.BINARY);
+		assertEquals(baseWords, read(output));
+	}
+
+	@Test(expected = IOException.class)
+	public void unsortedTextTest() throws Exception {
+		try (FileWriter writer = new FileWriter(base)) {
+			writer.write("b:second\na:first\n");
+		}
+		DictionaryMerger.merge(Arrays.asList(base, delta1), output, DictionaryFormat.TEXT);
+	}
+
+	/**
+	 * Random words; with existing words, about half of them change or remove (null) existing words.
+	 */
+	private static TreeMap<String, String> randomWords(Random rnd, int count, TreeMap<String, String> existing) {
+		TreeMap<String, String> words = new TreeMap<>();
+		String[] keys = existing == null ? null : existing.keySet().toArray(new String[0]);
+		for (int i = 0; i < count; ++i) {
+			String word;
+			if (keys != null && rnd.nextBoolean()) {
+				word = keys[rnd.nextInt(keys.length)];
+			} else {
+				word = Integer.toString(rnd.nextInt(1_000_000), 36);
+			}
+			words.put(word, keys != null && rnd.nextInt(4) == 0 ? null : "definition " + rnd.nextInt());
+		}
+		return words;
+	}
+
+	private static TreeMap<String, String> apply(TreeMap<String, String> words, TreeMap<String, String> changes) {
+		TreeMap<String, String> result = new TreeMap<>(words);
+		for (Map.Entry<String, String> change : changes.entrySet()) {
+			if (change.getValue() == null) {
+				result.remove(change.getKey());
+			} else {
+				result.put(change.getKey(), change.getValue());
+			}
+		}
+		return result;
+	}
+
+	private static void writeTable(File file, TreeMap<String, String> entries) throws IOException {
+		try (SortedTable.Writer writer = new SortedTable.Writer(file)) {
+			for (Map.Entry<String, String> entry : entries.entrySet()) {
+				writer.add(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	private static TreeMap<String, String> read(File file) throws IOException {
+		TreeMap<String, String> words = new TreeMap<>();
+		DictionaryFiles.read(file, words::put);
+		return words;
+	}
+}
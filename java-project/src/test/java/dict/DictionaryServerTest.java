@@ -0,0 +1,289 @@
+package dict;
+
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class DictionaryServerTest extends PersistentDictionaryTest {
+	@Override
+    PersistentDictionary getDictionary(File file) throws IOException {
+		return new ServedDictionary(new InMemoryDictionary(dictFile));
+	}
+
+	/**
+	 * Many requests in flight on one connection get their own responses.
+	 */
+	@Test
+	public void pipeliningTest() throws Exception {
+		dictFile.delete();
+		ServedDictionary dict = new ServedDictionary(new InMemoryDictionary(dictFile));
+		dict.open();
+		List<CompletableFuture<String>> puts = new ArrayList<>();
+		for (int i = 0; i < 20000; ++i) {
+			puts.add(dict.client.putAsync("word" + i, "def " + i));
+		}
+		for (CompletableFuture<String> put : puts) {
+			assertNull(put.join());
+		}
+		List<CompletableFuture<String>> gets = new ArrayList<>();
+		for (int i = 0; i < 20000; ++i) {
+			gets.add(dict.client.getAsync("word" + i));
+		}
+		for (int i = 0; i < 20000; ++i) {
+			assertEquals("def " + i, gets.get(i).join());
+		}
+		assertEquals(20000, dict.size());
+		dict.close();
+		dictFile.delete();
+	}
+
+	/**
+	 * Pipelined requests whose responses exceed what the server queues for a connection: the server stops
+	 * reading until the client takes responses, which it must do while it is still sending.
+	 */
+	@Test(timeout = 60000)
+	public void backpressureTest() throws Exception {
+		dictFile.delete();
+		ServedDictionary dict = new ServedDictionary(new InMemoryDictionary(dictFile));
+		dict.open();
+		char[] chars = new char[10000];
+		Arrays.fill(chars, 'x');
+		String def = new String(chars);
+		// Several times the output the server queues, from threads keeping the client busy sending
+		int count = 4 * DictionaryServer.MAX_PENDING_OUTPUT / def.length();
+		List<Thread> senders = new ArrayList<>();
+		List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+		for (int t = 0; t < 4; ++t) {
+			String word = "word" + t;
+			senders.add(new Thread(() -> {
+				try {
+					List<CompletableFuture<String>> puts = new ArrayList<>();
+					for (int i = 0; i < count; ++i) {
+						// Each put returns the previous definition, so every response is as long as the definition
+						puts.add(dict.client.putAsync(word, def));
+					}
+					assertNull(puts.get(0).join());
+					for (int i = 1; i < count; ++i) {
+						assertEquals(def, puts.get(i).join());
+					}
+				} catch (Throwable e) {
+					errors.add(e);
+				}
+			}));
+		}
+		for (Thread sender : senders) {
+			sender.start();
+		}
+		for (Thread sender : senders) {
+			sender.join();
+		}
+		assertEquals(new ArrayList<Throwable>(), errors);
+		assertEquals(4, dict.size());
+		dict.close();
+		dictFile.delete();
+	}
+
+	/**
+	 * A multi-get returns the definitions in the order of the words, with nulls for missing words.
+	 */
+	@Test
+	public void multiGetTest() throws Exception {
+		dictFile.delete();
+		ServedDictionary dict = new ServedDictionary(new InMemoryDictionary(dictFile));
+		dict.open();
+		dict.put("cat", "meows");
+		dict.put("dog", "barks");
+		assertEquals(Arrays.asList("barks", null, "meows", "barks"),
+				dict.client.getAll(Arrays.asList("dog", "cow", "cat", "dog")));
+		assertEquals(new ArrayList<String>(), dict.client.getAll(new ArrayList<>()));
+		dict.close();
+		dictFile.delete();
+	}
+
+	/**
+	 * Threads sharing a client, and clients sharing a server, see the same dictionary.
+	 */
+	@Test
+	public void concurrentClientsTest() throws Exception {
+		dictFile.delete();
+		ServedDictionary dict = new ServedDictionary(new InMemoryDictionary(dictFile));
+		dict.open();
+		DictionaryClient other = new DictionaryClient(dict.server.port());
+		other.open();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; ++t) {
+			PersistentDictionary client = t % 2 == 0 ? dict.client : other;
+			int thread = t;
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 2000; ++i) {
+					String word = "t" + thread + "w" + i;
+					client.put(word, "def " + i);
+					assertEquals("def " + i, client.get(word));
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(8000, other.size());
+		assertEquals("def 1999", dict.get("t3w1999"));
+		other.close();
+		dict.close();
+		dictFile.delete();
+	}
+
+	/**
+	 * A range longer than a page is fetched in several requests.
+	 */
+	@Test
+	public void pagedRangeTest() throws Exception {
+		dictFile.delete();
+		ServedDictionary dict = new ServedDictionary(new InMemoryDictionary(dictFile));
+		dict.open();
+		TreeMap<String, String> expected = new TreeMap<>();
+		for (int i = 0; i < DictionaryClient.RANGE_PAGE * 3 + 7; ++i) {
+			String word = Integer.toString(rnd.nextInt(1_000_000_000), 36);
+			expected.put(word, "def " + i);
+			dict.put(word, "def " + i);
+		}
+		TreeMap<String, String> scanned = new TreeMap<>();
+		Iterator<Map.Entry<String, String>> it = dict.range(null, null);
+		while (it.hasNext()) {
+			Map.Entry<String, String> entry = it.next();
+			scanned.put(entry.getKey(), entry.getValue());
+		}
+		assertEquals(expected, scanned);
+		dict.close();
+		dictFile.delete();
+	}
+
+	/**
+	 * Exceptions of the served dictionary are thrown by the client, and the connection goes on.
+	 */
+	@Test
+	public void remoteExceptionTest() throws Exception {
+		dictFile.delete();
+		InMemoryDictionary words = new InMemoryDictionary(dictFile);
+		words.open();
+		words.put("cat", "meows");
+		words.close();
+		File frozenFile = DictionaryFiles.sibling(dictFile, ".frozen");
+		FrozenDictionaryBuilder.build(dictFile, frozenFile);
+		FrozenDictionary frozen = new FrozenDictionary(frozenFile);
+		frozen.open();
+		DictionaryServer server = new DictionaryServer(frozen, 0);
+		DictionaryClient client = new DictionaryClient(server.port());
+		client.open();
+		try {
+			client.put("dog", "barks");
+			throw new AssertionError("put on a frozen dictionary");
+		} catch (UnsupportedOperationException e) {
+			// Expected
+		}
+		assertEquals("meows", client.get("cat"));
+		assertFalse(client.containsKey("dog"));
+		client.close();
+		server.close();
+		frozen.close();
+		frozenFile.delete();
+		dictFile.delete();
+	}
+
+	/**
+	 * A dictionary served to a client while it is open; used directly otherwise.
+	 */
+	static class ServedDictionary implements PersistentDictionary {
+		final InMemoryDictionary dict;
+		DictionaryServer server;
+		DictionaryClient client;
+
+		ServedDictionary(InMemoryDictionary dict) {
+			this.dict = dict;
+		}
+
+		private PersistentDictionary target() {
+			return client != null ? client : dict;
+		}
+
+		@Override
+		public void open() throws IOException {
+			disconnect();
+			dict.open();
+			server = new DictionaryServer(dict, 0);
+			client = new DictionaryClient(server.port());
+			client.open();
+		}
+
+		@Override
+		public void close() throws IOException {
+			disconnect();
+			dict.close();
+		}
+
+		private void disconnect() throws IOException {
+			if (client != null) {
+				client.close();
+				server.close();
+				client = null;
+				server = null;
+			}
+		}
+
+		@Override
+		public String get(Object key) {
+			return target().get(key);
+		}
+
+		@Override
+		public String put(String key, String value) {
+			return target().put(key, value);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return target().containsKey(key);
+		}
+
+		@Override
+		public int size() {
+			return target().size();
+		}
+
+		@Override
+		public String remove(Object key) {
+			return target().remove(key);
+		}
+
+		@Override
+		public void clear() {
+			target().clear();
+		}
+
+		@Override
+		public Iterator<Map.Entry<String, String>> range(String from, String to) {
+			return target().range(from, to);
+		}
+
+		@Override
+		public Iterator<Map.Entry<String, String>> prefixScan(String prefix, int limit) {
+			return target().prefixScan(prefix, limit);
+		}
+	}
+}
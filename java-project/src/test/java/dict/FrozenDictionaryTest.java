@@ -0,0 +1,171 @@
+package dict;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the frozen dictionary. It is read-only, so it is built from a dictionary written by
+ * {@link InMemoryDictionary} rather than tested with {@link PersistentDictionaryTest}.
+ */
+public class FrozenDictionaryTest {
+	File sourceFile;
+	File dictFile;
+	TreeMap<String, String> expected;
+
+	@Before
+	public void setup() throws IOException {
+		sourceFile = File.createTempFile("DictTest", ".txt");
+		dictFile = File.createTempFile("DictTest", ".frozen");
+		Random rnd = new Random(19);
+		expected = new TreeMap<>();
+		expected.put("", "empty word");
+		for (int i = 0; i < 20000; ++i) {
+			expected.put(randomString(rnd, 1 + rnd.nextInt(16)), randomString(rnd, rnd.nextInt(40)));
+		}
+		InMemoryDictionary source = new InMemoryDictionary(sourceFile);
+		source.open();
+		source.putAll(expected);
+		source.close();
+		// The text format is written in the platform charset, so these only go into built maps
+		expected.put("caf\u00e9", "\u00fcnicode");
+		expected.put("\ud83d\ude00", "supplementary");
+		expected.put("\uffef", "before supplementary in UTF-8 order");
+	}
+
+	@After
+	public void tearDown() {
+		sourceFile.delete();
+		dictFile.delete();
+	}
+
+	@Test
+	public void buildFromFileTest() throws Exception {
+		InMemoryDictionary source = new InMemoryDictionary(sourceFile);
+		source.open();
+		assertEquals(source.size(), FrozenDictionaryBuilder.build(sourceFile, dictFile));
+		FrozenDictionary dict = new FrozenDictionary(dictFile);
+		dict.open();
+		assertEquals(source.size(), dict.size());
+		for (Map.Entry<String, String> entry : source.entrySet()) {
+			assertEquals(entry.getValue(), dict.get(entry.getKey()));
+		}
+		dict.close();
+	}
+
+	@Test
+	public void lookupTest() throws Exception {
+		FrozenDictionaryBuilder.build(expected, dictFile);
+		FrozenDictionary dict = new FrozenDictionary(dictFile);
+		dict.open();
+		assertEquals(expected.size(), dict.size());
+		for (Map.Entry<String, String> entry : expected.entrySet()) {
+			assertEquals(entry.getValue(), dict.get(entry.getKey()));
+			assertTrue(dict.containsKey(entry.getKey()));
+		}
+		Random rnd = new Random(7);
+		for (int i = 0; i < 20000; ++i) {
+			String word = randomString(rnd, 1 + rnd.nextInt(17));
+			assertEquals(expected.get(word), dict.get(word));
+		}
+		// Words that extend existing ones share most of their bytes
+		for (String word : expected.keySet()) {
+			assertFalse(dict.containsKey(word + "~"));
+		}
+		dict.close();
+	}
+
+	@Test
+	public void rangeTest() throws Exception {
+		FrozenDictionaryBuilder.build(expected, dictFile);
+		FrozenDictionary dict = new FrozenDictionary(dictFile);
+		dict.open();
+		assertRange(expected, dict.range(null, null));
+		assertRange(expected.subMap("b", "m"), dict.range("b", "m"));
+		assertRange(expected.tailMap("x"), dict.range("x", null));
+		assertRange(expected.subMap("q", true, "q", false), dict.prefixScan("q", 0));
+		assertRange(expected.subMap("q", "r"), dict.prefixScan("q", Integer.MAX_VALUE));
+		dict.close();
+	}
+
+	@Test
+	public void emptyTest() throws Exception {
+		FrozenDictionary dict = new FrozenDictionary(dictFile);
+		dictFile.delete();
+		dict.open();
+		assertEquals(0, dict.size());
+		assertNull(dict.get("word"));
+
+		FrozenDictionaryBuilder.build(new TreeMap<>(), dictFile);
+		dict.open();
+		assertEquals(0, dict.size());
+		assertNull(dict.get("word"));
+		assertFalse(dict.range(null, null).hasNext());
+		dict.close();
+	}
+
+	/**
+	 * A rebuilt file replaces the open one, which is only read again on reopening; iterators go on
+	 * reading the file they started with.
+	 */
+	@Test
+	public void rebuildTest() throws Exception {
+		FrozenDictionaryBuilder.build(expected, dictFile);
+		FrozenDictionary dict = new FrozenDictionary(dictFile);
+		dict.open();
+		Iterator<Map.Entry<String, String>> it = dict.range(null, null);
+		assertEquals("", it.next().getKey());
+		TreeMap<String, String> rebuilt = new TreeMap<>();
+		rebuilt.put("new", "word");
+		FrozenDictionaryBuilder.build(rebuilt, dictFile);
+		assertEquals(expected.get(""), dict.get(""));
+		dict.open();
+		assertEquals(1, dict.size());
+		assertEquals("word", dict.get("new"));
+		assertNull(dict.get(""));
+		assertRange(expected.tailMap("", false), it);
+		dict.close();
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void readOnlyTest() throws Exception {
+		FrozenDictionaryBuilder.build(expected, dictFile);
+		FrozenDictionary dict = new FrozenDictionary(dictFile);
+		dict.open();
+		dict.put("word", "definition");
+	}
+
+	@Test(expected = IOException.class)
+	public void wrongFormatTest() throws Exception {
+		new FrozenDictionary(sourceFile).open();
+	}
+
+	private static void assertRange(Map<String, String> expected, Iterator<Map.Entry<String, String>> actual) {
+		for (Map.Entry<String, String> entry : expected.entrySet()) {
+			assertTrue(actual.hasNext());
+			assertEquals(entry, actual.next());
+		}
+		assertFalse(actual.hasNext());
+	}
+
+	private static String randomString(Random rnd, int length) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; ++i) {
+			chars[i] = (char) ('a' + rnd.nextInt(26));
+		}
+		return new String(chars);
+	}
+}
@@ -0,0 +1,139 @@
+package dict;
+
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FuzzyDictionaryTest extends PersistentDictionaryTest {
+	@Override
+    PersistentDictionary getDictionary(File file) throws IOException {
+		return new FuzzyDictionary(new InMemoryDictionary(dictFile));
+	}
+
+	/**
+	 * Fuzzy lookups find the same words as comparing the word with every word, and only compare it with some.
+	 */
+	@Test
+	public void fuzzyLookupTest() throws Exception {
+		dictFile.delete();
+		FuzzyDictionary dict = (FuzzyDictionary) getDictionary(dictFile);
+		dict.open();
+		TreeMap<String, String> expected = new TreeMap<>();
+		for (int i = 0; i < 5000; ++i) {
+			String word = randomWord(4 + rnd.nextInt(6));
+			expected.put(word, "def " + i);
+			dict.put(word, "def " + i);
+		}
+		// Remove enough words to rebuild the tree
+		for (int i = 0; i < 3000; ++i) {
+			String word = expected.firstKey();
+			expected.remove(word);
+			dict.remove(word);
+		}
+		checkLookups(dict, expected);
+		dict.close();
+
+		// The index is built again by open()
+		dict = (FuzzyDictionary) getDictionary(dictFile);
+		dict.open();
+		checkLookups(dict, expected);
+		dict.close();
+		dictFile.delete();
+	}
+
+	private void checkLookups(FuzzyDictionary dict, TreeMap<String, String> expected) {
+		for (int i = 0; i < 200; ++i) {
+			String word = i % 2 == 0 ? randomWord(4 + rnd.nextInt(6)) : typo(expected.ceilingKey(randomWord(3)));
+			int maxDistance = i % 3;
+			assertEquals(bruteForce(expected, word, maxDistance, 10), dict.fuzzyLookup(word, maxDistance, 10));
+			if (maxDistance == 1) {
+				assertTrue(dict.visited + " visited", dict.visited < expected.size() / 2);
+			}
+		}
+	}
+
+	@Test
+	public void fuzzyChangesTest() throws Exception {
+		dictFile.delete();
+		FuzzyDictionary dict = (FuzzyDictionary) getDictionary(dictFile);
+		dict.open();
+		dict.put("color", "American");
+		dict.put("colour", "British");
+		dict.put("cooler", "Colder");
+		assertEquals(2, dict.fuzzyLookup("colur", 1, 5).size());
+		assertEquals("color", dict.fuzzyLookup("colur", 1, 5).get(0).getKey());
+		assertEquals(1, dict.fuzzyLookup("colur", 1, 1).size());
+		dict.remove("color");
+		assertEquals("colour", dict.fuzzyLookup("colur", 1, 5).get(0).getKey());
+		dict.put("color", "again");
+		assertEquals("again", dict.fuzzyLookup("color", 0, 5).get(0).getValue());
+		dict.clear();
+		assertEquals(0, dict.fuzzyLookup("color", 3, 5).size());
+		dict.close();
+		dictFile.delete();
+	}
+
+	private String randomWord(int length) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; ++i) {
+			chars[i] = (char) ('a' + rnd.nextInt(26));
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Change, insert or delete a character.
+	 */
+	private String typo(String word) {
+		if (word == null) {
+			return "";
+		}
+		int pos = rnd.nextInt(word.length());
+		switch (rnd.nextInt(3)) {
+		case 0:
+			return word.substring(0, pos) + 'x' + word.substring(pos + 1);
+		case 1:
+			return word.substring(0, pos) + 'x' + word.substring(pos);
+		default:
+			return word.substring(0, pos) + word.substring(pos + 1);
+		}
+	}
+
+	private static List<Map.Entry<String, String>> bruteForce(TreeMap<String, String> words, String word,
+			int maxDistance, int limit) {
+		List<Map.Entry<String, String>> matches = new ArrayList<>();
+		for (Map.Entry<String, String> entry : words.entrySet()) {
+			if (levenshtein(word, entry.getKey()) <= maxDistance) {
+				matches.add(entry);
+			}
+		}
+		// Stable sort: words at the same distance stay in String order
+		matches.sort(Comparator.comparingInt(entry -> levenshtein(word, entry.getKey())));
+		return matches.subList(0, Math.min(limit, matches.size()));
+	}
+
+	private static int levenshtein(String a, String b) {
+		int[][] d = new int[a.length() + 1][b.length() + 1];
+		for (int i = 0; i <= a.length(); ++i) {
+			for (int j = 0; j <= b.length(); ++j) {
+				if (i == 0 || j == 0) {
+					d[i][j] = i + j;
+				} else {
+					d[i][j] = Math.min(d[i - 1][j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1),
+							Math.min(d[i - 1][j], d[i][j - 1]) + 1);
+				}
+			}
+		}
+		return d[a.length()][b.length()];
+	}
+}
@@ -0,0 +1,90 @@
+package dict;
+
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InMemoryBinaryDictionaryTest extends PersistentDictionaryTest {
+	@Override
+    PersistentDictionary getDictionary(File file) throws IOException {
+		return new InMemoryDictionary(dictFile, DictionaryFormat.BINARY);
+	}
+
+	/**
+	 * Words with ':' and line breaks can't be stored in the text format, but can in the binary one.
+	 */
+	@Test
+	public void separatorsInWordsTest() throws Exception {
+		String[] words = { "a:b", "line\nbreak", "\r\n", ":" };
+		String[] defs = { "colon", "x:y\nz", "", "::" };
+
+		dictFile.delete();
+		PersistentDictionary dict = getDictionary(dictFile);
+		dict.open();
+		fillMap(dict, words, defs);
+		dict.close();
+
+		dict = getDictionary(dictFile);
+		dict.open();
+		assertEquals(words.length, dict.size());
+		for (int i = 0; i < words.length; ++i) {
+			assertEquals(defs[i], dict.get(words[i]));
+		}
+		dict.close();
+		dictFile.delete();
+	}
+
+	/**
+	 * A text dictionary is read, and written back in the binary format.
+	 */
+	@Test
+	public void legacyFormatTest() throws Exception {
+		dictFile.delete();
+		PersistentDictionary dict = new InMemoryDictionary(dictFile);
+		dict.open();
+		fillMap(dict, testWords, testDefs);
+		dict.close();
+
+		dict = getDictionary(dictFile);
+		dict.open();
+		assertEquals(testWords.length, dict.size());
+		dict.close();
+		assertTrue(SortedTable.isTable(dictFile));
+
+		dict = new InMemoryDictionary(dictFile);
+		dict.open();
+		for (int i = 0; i < testWords.length; ++i) {
+			assertEquals(testDefs[i], dict.get(testWords[i]));
+		}
+		dict.close();
+		dictFile.delete();
+	}
+
+	@Test(expected = IOException.class)
+	public void corruptFileTest() throws Exception {
+		dictFile.delete();
+		PersistentDictionary dict = getDictionary(dictFile);
+		dict.open();
+		fillMap(dict, testWords, testDefs);
+		dict.close();
+
+		// Flip a byte in the middle of the entries
+		try (RandomAccessFile raf = new RandomAccessFile(dictFile, "rw")) {
+			raf.seek(SortedTable.HEADER_SIZE + 3);
+			int b = raf.read();
+			raf.seek(SortedTable.HEADER_SIZE + 3);
+			raf.write(b ^ 0x20);
+		}
+		try {
+			getDictionary(dictFile).open();
+		} finally {
+			dictFile.delete();
+		}
+	}
+}
@@ -1,12 +1,38 @@
 package dict;
 
 
+import org.junit.Test;
+
 import java.io.File;
 import java.io.IOException;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 public class InMemoryDictionaryTest extends PersistentDictionaryTest {
 	@Override
     PersistentDictionary getDictionary(File file) throws IOException {
 		return new InMemoryDictionary(dictFile);
 	}
+
+	/**
+	 * A session without changes doesn't write the file.
+	 */
+	@Test
+	public void readOnlySessionTest() throws Exception {
+		dictFile.delete();
+		InMemoryDictionary dict = new InMemoryDictionary(dictFile);
+		dict.open();
+		fillMap(dict, testWords, testDefs);
+		dict.close();
+		assertTrue(dict.lastFlushBytes() > 0);
+
+		dict = new InMemoryDictionary(dictFile);
+		dict.open();
+		assertEquals(testDefs[0], dict.get(testWords[0]));
+		dict.remove("not a word");
+		dict.close();
+		assertEquals(0, dict.lastFlushBytes());
+		dictFile.delete();
+	}
 }
@@ -0,0 +1,50 @@
+package dict;
+
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import static org.junit.Assert.assertEquals;
+
+public class InMemoryParallelDictionaryTest extends PersistentDictionaryTest {
+	@Override
+    PersistentDictionary getDictionary(File file) throws IOException {
+		return new InMemoryDictionary(dictFile, DictionaryFormat.TEXT, 4);
+	}
+
+	/**
+	 * A file of many chunks, with every kind of line break, lines without ':', empty lines and words that
+	 * appear more than once, loads the same as when it is read in order.
+	 */
+	@Test
+	public void sameAsSequentialTest() throws Exception {
+		String[] breaks = { "\n", "\r\n", "\r" };
+		dictFile.delete();
+		try (Writer writer = new FileWriter(dictFile)) {
+			for (int i = 0; i < 20000; ++i) {
+				int word = rnd.nextInt(5000);
+				if (i % 97 == 0) {
+					writer.write("word" + word);
+				} else if (i % 101 == 0) {
+					writer.write("");
+				} else {
+					writer.write("word" + word + ":def " + i + ":more");
+				}
+				writer.write(breaks[rnd.nextInt(breaks.length)]);
+			}
+			writer.write("last:unterminated");
+		}
+
+		InMemoryDictionary sequential = new InMemoryDictionary(dictFile);
+		sequential.open();
+		PersistentDictionary parallel = getDictionary(dictFile);
+		parallel.open();
+		testEquality("Parallel load", sequential, parallel);
+		assertEquals("unterminated", parallel.get("last"));
+		dictFile.delete();
+	}
+}
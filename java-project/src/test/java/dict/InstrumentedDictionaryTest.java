@@ -0,0 +1,141 @@
+package dict;
+
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InstrumentedDictionaryTest extends PersistentDictionaryTest {
+	@Override
+    PersistentDictionary getDictionary(File file) throws IOException {
+		return new InstrumentedDictionary(new InMemoryDictionary(dictFile), dictFile);
+	}
+
+	@Test
+	public void metricsTest() throws Exception {
+		dictFile.delete();
+		InstrumentedDictionary dict = (InstrumentedDictionary) getDictionary(dictFile);
+		dict.open();
+		fillMap(dict, testWords, testDefs);
+		dict.get(testWords[0]);
+		dict.get("not a word");
+		dict.remove(testWords[1]);
+		dict.close();
+
+		DictionaryMetrics metrics = dict.metrics();
+		assertEquals(testWords.length, metrics.getPutLatency().getCount());
+		assertEquals(2, metrics.getGetLatency().getCount());
+		assertEquals(1, metrics.getHits());
+		assertEquals(1, metrics.getMisses());
+		assertEquals(1, metrics.getRemoveLatency().getCount());
+		assertEquals(1, metrics.getCloseLatency().getCount());
+		assertEquals(testWords.length - 1, metrics.getEntryCount());
+		assertEquals(dictFile.length(), metrics.getBytesWritten());
+
+		dict.open();
+		assertEquals(dictFile.length(), metrics.getBytesRead());
+		assertEquals(testWords.length - 1, metrics.getEntryCount());
+		dict.close();
+		// Nothing changed, so nothing was written
+		assertEquals(dictFile.length(), metrics.getBytesWritten());
+		dictFile.delete();
+	}
+
+	/**
+	 * The bytes written are the encoded bytes of the file, not its characters.
+	 */
+	@Test
+	public void encodedBytesTest() throws Exception {
+		dictFile.delete();
+		InstrumentedDictionary dict = (InstrumentedDictionary) getDictionary(dictFile);
+		dict.open();
+		dict.put("caf\u00e9", "cr\u00e8me br\u00fbl\u00e9e");
+		dict.put("\u8f9e\u66f8", "\u8a00\u8449\u306e\u610f\u5473");
+		dict.close();
+		assertEquals(dictFile.length(), dict.metrics().getBytesWritten());
+		dictFile.delete();
+	}
+
+	/**
+	 * Appending a record to a log counts the record, not the whole log.
+	 */
+	@Test
+	public void appendedBytesTest() throws Exception {
+		dictFile.delete();
+		File logFile = DictionaryFiles.sibling(dictFile, ".log");
+		InstrumentedDictionary dict = new InstrumentedDictionary(new LogStructuredDictionary(dictFile), dictFile);
+		dict.open();
+		fillMap(dict, testWords, testDefs);
+		dict.close();
+		long logBytes = logFile.length();
+		assertEquals(dictFile.length() + logBytes, dict.metrics().getBytesWritten());
+
+		dict.open();
+		dict.put("one more word", "appended");
+		dict.close();
+		long appended = logFile.length() - logBytes;
+		assertTrue(appended < 100);
+		assertEquals(dictFile.length() + logFile.length(), dict.metrics().getBytesWritten());
+		logFile.delete();
+		dictFile.delete();
+	}
+
+	@Test
+	public void mbeanTest() throws Exception {
+		dictFile.delete();
+		InstrumentedDictionary dict = (InstrumentedDictionary) getDictionary(dictFile);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = dict.registerMBean("test " + dictFile.getName());
+		try {
+			dict.open();
+			dict.put("word", "definition");
+			dict.get("word");
+			CompositeData latency = (CompositeData) server.getAttribute(name, "GetLatency");
+			assertEquals(1L, latency.get("count"));
+			assertEquals(1L, server.getAttribute(name, "EntryCount"));
+			server.invoke(name, "reset", null, null);
+			assertEquals(0L, dict.metrics().getHits());
+			dict.close();
+		} finally {
+			dict.unregisterMBean();
+		}
+		assertFalse(server.isRegistered(name));
+		dictFile.delete();
+	}
+
+	/**
+	 * Percentiles are within the 1/16 precision of the buckets.
+	 */
+	@Test
+	public void histogramTest() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long v = 1; v <= 100_000; v++) {
+			histogram.record(v * 100);
+		}
+		assertEquals(100_000, histogram.count());
+		for (double percentile : new double[]{1, 50, 90, 99, 99.9, 100}) {
+			double expected = percentile * 100_000;
+			long actual = histogram.valueAtPercentile(percentile);
+			assertTrue(percentile + ": " + actual, actual >= expected && actual <= expected * (1 + 1.0 / 16));
+		}
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(5_000_050, snapshot.getMeanNanos(), 1);
+		assertEquals(histogram.valueAtPercentile(100), snapshot.getMaxNanos());
+
+		for (long v = 0; v < 1L << 40; v = v * 3 + 1) {
+			int bucket = LatencyHistogram.bucketOf(v);
+			assertTrue(LatencyHistogram.lowestValue(bucket) <= v && v <= LatencyHistogram.highestValue(bucket));
+		}
+		histogram.reset();
+		assertEquals(0, histogram.snapshot().getCount());
+	}
+}
@@ -0,0 +1,89 @@
+package dict;
+
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LogStructuredDictionaryTest extends PersistentDictionaryTest {
+	@Override
+    PersistentDictionary getDictionary(File file) throws IOException {
+		// A small threshold, so the extended tests also exercise log compaction
+		return new LogStructuredDictionary(dictFile, 4096);
+	}
+
+	/**
+	 * A session that is closed from time to time, but never reopened, keeps its log compacted.
+	 */
+	@Test
+	public void sessionCompactionTest() throws Exception {
+		dictFile.delete();
+		File logFile = DictionaryFiles.sibling(dictFile, ".log");
+		LogStructuredDictionary dict = new LogStructuredDictionary(dictFile, 4096);
+		dict.open();
+		for (int round = 0; round < 50; ++round) {
+			for (int i = 0; i < 100; ++i) {
+				dict.put("word" + i, "definition " + round);
+			}
+			dict.close();
+			assertTrue("The log grew to " + logFile.length() + " bytes",
+					logFile.length() <= Math.max(4096, dictFile.length()));
+		}
+		dict.open();
+		assertEquals(100, dict.size());
+		assertEquals("definition 49", dict.get("word7"));
+		dict.close();
+		logFile.delete();
+		dictFile.delete();
+	}
+
+	/**
+	 * A record torn by a crash, and the records after the last commit, are dropped when the log is replayed.
+	 */
+	@Test
+	public void tornLogTest() throws Exception {
+		dictFile.delete();
+		File logFile = DictionaryFiles.sibling(dictFile, ".log");
+		LogStructuredDictionary dict = new LogStructuredDictionary(dictFile);
+		dict.open();
+		dict.put("committed", "yes");
+		dict.close();
+		long committed = logFile.length();
+
+		// Complete records without a commit, as a crash in the middle of a session leaves them
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(logFile, true))) {
+			byte[] key = "uncommitted".getBytes(StandardCharsets.UTF_8);
+			out.write(1); // put
+			out.writeInt(key.length);
+			out.write(key);
+			out.writeInt(2);
+			out.write(new byte[]{'n', 'o'});
+			out.write(3); // clear
+			// The start of a put record: the operation and part of the key length
+			out.write(new byte[]{1, 0, 0});
+		}
+
+		dict.open();
+		assertEquals(1, dict.size());
+		assertEquals("yes", dict.get("committed"));
+		assertNull(dict.get("uncommitted"));
+		assertEquals(committed, logFile.length());
+		// New records follow the last commit
+		dict.put("after", "crash");
+		dict.close();
+		dict.open();
+		assertEquals(2, dict.size());
+		assertEquals("crash", dict.get("after"));
+		dict.close();
+		logFile.delete();
+		dictFile.delete();
+	}
+}
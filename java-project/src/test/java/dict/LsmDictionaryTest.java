@@ -0,0 +1,134 @@
+package dict;
+
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LsmDictionaryTest extends PersistentDictionaryTest {
+	@Override
+    PersistentDictionary getDictionary(File file) throws IOException {
+		// A tiny memtable and few runs, so the tests write many runs and compact them
+		return new LsmDictionary(dictFile, 4096, 3);
+	}
+
+	/**
+	 * Lookups of missing words should mostly be answered by the Bloom filters.
+	 */
+	@Test
+	public void bloomFilterTest() throws Exception {
+		dictFile.delete();
+		LsmDictionary dict = new LsmDictionary(dictFile, 4096, 3, 0.01);
+		dict.open();
+		for (int i = 0; i < 1000; ++i) {
+			dict.put("word" + i, "def" + i);
+		}
+		dict.close();
+
+		dict = new LsmDictionary(dictFile, 4096, 3, 0.01);
+		dict.open();
+		for (int i = 0; i < 1000; ++i) {
+			assertNull(dict.get("missing" + i));
+		}
+		long lookups = dict.bloomNegatives() + dict.bloomPositives();
+		assertTrue("Too many false positives: " + dict.bloomFalsePositives() + " of " + lookups,
+				dict.bloomFalsePositives() < lookups / 20);
+		assertEquals(dict.bloomPositives(), dict.bloomFalsePositives());
+
+		for (int i = 0; i < 1000; ++i) {
+			assertEquals("def" + i, dict.get("word" + i));
+		}
+		dict.close();
+		dictFile.delete();
+	}
+
+	/**
+	 * Ranges abandoned before their end, like bounded prefix scans, leave no files open, and a range
+	 * still reading runs that a compaction merged away goes on.
+	 */
+	@Test
+	public void abandonedRangeTest() throws Exception {
+		dictFile.delete();
+		LsmDictionary dict = new LsmDictionary(dictFile, 4096, 3);
+		dict.open();
+		for (int i = 0; i < 1000; ++i) {
+			dict.put(String.format("word%04d", i), "def" + i);
+		}
+		File fds = new File("/proc/self/fd");
+		int before = fds.isDirectory() ? fds.list().length : 0;
+		for (int i = 0; i < 500; ++i) {
+			Iterator<Map.Entry<String, String>> it = dict.prefixScan("word0", 3);
+			assertEquals("word0000", it.next().getKey());
+		}
+		if (fds.isDirectory()) {
+			assertTrue("Open files went from " + before + " to " + fds.list().length,
+					fds.list().length < before + 10);
+		}
+
+		// Only the runs are read: the range doesn't allow changes to the memtable it started with
+		dict.close();
+		dict.open();
+		Iterator<Map.Entry<String, String>> it = dict.range(null, null);
+		assertEquals("word0000", it.next().getKey());
+		for (int i = 1000; i < 3000; ++i) {
+			// Enough runs for compactions
+			dict.put(String.format("word%04d", i), "def" + i);
+		}
+		int count = 1;
+		while (it.hasNext()) {
+			it.next();
+			count++;
+		}
+		assertTrue(count >= 1000);
+		dict.close();
+		dictFile.delete();
+	}
+
+	/**
+	 * Changes that don't look words up agree with put and remove, and the number of words is counted again.
+	 */
+	@Test
+	public void blindWriteTest() throws Exception {
+		dictFile.delete();
+		LsmDictionary dict = new LsmDictionary(dictFile, 4096, 3);
+		dict.open();
+		TreeMap<String, String> expected = new TreeMap<>();
+		for (int i = 0; i < 3000; ++i) {
+			String word = "w" + rnd.nextInt(1000);
+			if (rnd.nextInt(4) == 0) {
+				expected.remove(word);
+				dict.delete(word);
+			} else {
+				expected.put(word, "def" + i);
+				dict.write(word, "def" + i);
+			}
+		}
+		assertEquals(expected.size(), dict.size());
+		// The count is kept while the memtable holds the words
+		dict.write("w0", "again");
+		dict.write("w0", "and again");
+		expected.put("w0", "and again");
+		assertEquals(expected.size(), dict.size());
+		dict.delete("w1");
+		expected.remove("w1");
+		dict.close();
+
+		// An unknown count is persisted as unknown
+		dict = new LsmDictionary(dictFile, 4096, 3);
+		dict.open();
+		assertEquals(expected.size(), dict.size());
+		for (int i = 0; i < 1000; ++i) {
+			assertEquals(expected.get("w" + i), dict.get("w" + i));
+		}
+		dict.close();
+		dictFile.delete();
+	}
+}
@@ -0,0 +1,86 @@
+package dict;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapDictionaryTest extends PersistentDictionaryTest {
+	@Override
+    PersistentDictionary getDictionary(File file) throws IOException {
+		return new OffHeapDictionary(dictFile);
+	}
+
+	/**
+	 * Random puts, changes and removes, with enough garbage for compactions, agree with a TreeMap.
+	 */
+	@Test
+	public void churnTest() throws Exception {
+		dictFile.delete();
+		OffHeapDictionary dict = new OffHeapDictionary(dictFile, DictionaryFormat.BINARY);
+		dict.open();
+		TreeMap<String, String> expected = new TreeMap<>();
+		for (int i = 0; i < 100000; ++i) {
+			String word = "w" + rnd.nextInt(5000);
+			if (rnd.nextInt(3) == 0) {
+				assertEquals(expected.remove(word), dict.remove(word));
+			} else {
+				String def = "definition " + i;
+				assertEquals(expected.put(word, def), dict.put(word, def));
+			}
+			if (i % 20000 == 0) {
+				// Scans in between changes rebuild the sorted index
+				assertEquals(expected, scan(dict.range(null, null)));
+			}
+		}
+		assertEquals(expected.size(), dict.size());
+		for (int i = 0; i < 5000; ++i) {
+			assertEquals(expected.get("w" + i), dict.get("w" + i));
+		}
+		assertEquals(expected.subMap("w1", "w3"), scan(dict.range("w1", "w3")));
+		dict.close();
+
+		dict = new OffHeapDictionary(dictFile, DictionaryFormat.BINARY);
+		dict.open();
+		assertEquals(expected, scan(dict.range(null, null)));
+		dict.close();
+		dictFile.delete();
+	}
+
+	@Test
+	public void offHeapBytesTest() throws Exception {
+		dictFile.delete();
+		OffHeapDictionary dict = new OffHeapDictionary(dictFile);
+		dict.open();
+		assertEquals(0, dict.offHeapBytes());
+		for (int i = 0; i < 50000; ++i) {
+			dict.put(String.format("word%06d", i), "definition " + i);
+		}
+		// About 30 bytes of records and 16 bytes of hash table per entry, with the spare capacity
+		assertTrue("Off-heap use is " + dict.offHeapBytes(), dict.offHeapBytes() > 50000 * 46L);
+		assertTrue("Off-heap use is " + dict.offHeapBytes(), dict.offHeapBytes() < 50000 * 128L);
+		dict.close();
+		// Closing releases the buffers
+		assertEquals(0, dict.offHeapBytes());
+		dictFile.delete();
+	}
+
+	private static TreeMap<String, String> scan(Iterator<Map.Entry<String, String>> it) {
+		TreeMap<String, String> entries = new TreeMap<>();
+		String previous = null;
+		while (it.hasNext()) {
+			Map.Entry<String, String> entry = it.next();
+			assertTrue(previous == null || previous.compareTo(entry.getKey()) < 0);
+			previous = entry.getKey();
+			entries.put(entry.getKey(), entry.getValue());
+		}
+		return entries;
+	}
+}
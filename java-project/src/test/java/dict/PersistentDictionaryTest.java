@@ -7,11 +7,14 @@ import org.junit.Test;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Random;
 import java.util.TreeMap;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 
 /**
@@ -482,4 +485,97 @@ public abstract class PersistentDictionaryTest {
 		testEquality("Multiple add/remove, open/close cycles", expected, dict);
 	}
 
+	/**
+	 * Compare the entries returned by a scan with the expected entries, in order.
+	 */
+	void testScan(String msg, Map<String, String> expected,
+			Iterator<Map.Entry<String, String>> it) {
+		for (Map.Entry<String, String> entry : expected.entrySet()) {
+			assertEquals(msg + ": Scan ended early", true, it.hasNext());
+			assertEquals(msg + ": Wrong entry", entry, it.next());
+		}
+		assertFalse(msg + ": Scan returned extra entries", it.hasNext());
+	}
+
+	@Test
+	public void rangeTest() throws Exception {
+		TreeMap<String, String> expected = new TreeMap<String, String>();
+		String[] testWords = randomStrings(MAX_SIZE, MAX_LEN);
+		String[] testDefs = randomStrings(MAX_SIZE, MAX_LEN);
+		fillMap(expected, testWords, testDefs);
+
+		dictFile.delete();
+		PersistentDictionary dict = getDictionary(dictFile);
+		dict.open();
+		fillMap(dict, testWords, testDefs);
+		dict.close();
+
+		// Mix persisted entries with changes since the last close
+		dict = getDictionary(dictFile);
+		dict.open();
+		for (String word : testWords) {
+			if (rnd.nextDouble() < 0.3) {
+				expected.remove(word);
+				dict.remove(word);
+			}
+		}
+		String[] addWords = randomStrings(MAX_SIZE / 4, MAX_LEN);
+		String[] addDefs = randomStrings(MAX_SIZE / 4, MAX_LEN);
+		fillMap(expected, addWords, addDefs);
+		fillMap(dict, addWords, addDefs);
+
+		testScan("Full range", expected, dict.range(null, null));
+		for (int i = 0; i < NUM_EXTENDED; ++i) {
+			String[] bounds = randomStrings(2, 3);
+			String from = bounds[0];
+			String to = bounds[1];
+			NavigableMap<String, String> sub = from.compareTo(to) < 0
+					? expected.subMap(from, true, to, false)
+					: new TreeMap<String, String>();
+			testScan("Range [" + from + ", " + to + ")", sub, dict.range(from, to));
+			testScan("Range from " + from, expected.tailMap(from, true), dict.range(from, null));
+			testScan("Range to " + to, expected.headMap(to, false), dict.range(null, to));
+		}
+
+		dict.close();
+		dictFile.delete();
+	}
+
+	@Test
+	public void prefixScanTest() throws Exception {
+		TreeMap<String, String> expected = new TreeMap<String, String>();
+		String[] testWords = { "car", "card", "care", "cared", "cars", "cat", "ca", "dog", "", "c" };
+		String[] testDefs = randomStrings(testWords.length, MAX_LEN);
+		fillMap(expected, testWords, testDefs);
+
+		dictFile.delete();
+		PersistentDictionary dict = getDictionary(dictFile);
+		dict.open();
+		fillMap(dict, testWords, testDefs);
+		dict.close();
+		dict = getDictionary(dictFile);
+		dict.open();
+		expected.remove("cars");
+		dict.remove("cars");
+
+		String[] prefixes = { "", "c", "ca", "car", "care", "cart", "d", "x", "cared!" };
+		for (String prefix : prefixes) {
+			TreeMap<String, String> matches = new TreeMap<String, String>();
+			for (Map.Entry<String, String> entry : expected.entrySet()) {
+				if (entry.getKey().startsWith(prefix)) {
+					matches.put(entry.getKey(), entry.getValue());
+				}
+			}
+			testScan("Prefix " + prefix, matches, dict.prefixScan(prefix, Integer.MAX_VALUE));
+			// Only the first two
+			while (matches.size() > 2) {
+				matches.pollLastEntry();
+			}
+			testScan("Prefix " + prefix + " limited", matches, dict.prefixScan(prefix, 2));
+		}
+
+		dict.close();
+		dictFile.delete();
+	}
+
 }
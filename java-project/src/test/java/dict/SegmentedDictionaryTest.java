@@ -0,0 +1,52 @@
+package dict;
+
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentedDictionaryTest extends PersistentDictionaryTest {
+	@Override
+    PersistentDictionary getDictionary(File file) throws IOException {
+		return new SegmentedDictionary(dictFile, 16);
+	}
+
+	/**
+	 * Changing one word only rewrites its segment, and a read-only session writes nothing.
+	 */
+	@Test
+	public void incrementalFlushTest() throws Exception {
+		dictFile.delete();
+		SegmentedDictionary dict = new SegmentedDictionary(dictFile, 16);
+		dict.open();
+		for (int i = 0; i < 1000; ++i) {
+			dict.put(String.format("word%04d", i), "definition " + i);
+		}
+		dict.close();
+		long fullFlush = dict.lastFlushBytes();
+		assertTrue(dict.segmentCount() > 1);
+
+		dict = new SegmentedDictionary(dictFile, 16);
+		dict.open();
+		assertEquals("definition 500", dict.get("word0500"));
+		dict.close();
+		assertEquals(0, dict.lastFlushBytes());
+
+		dict.open();
+		dict.put("word0500", "changed");
+		dict.close();
+		assertTrue("Wrote " + dict.lastFlushBytes() + " of " + fullFlush, dict.lastFlushBytes() < fullFlush / 4);
+
+		dict = new SegmentedDictionary(dictFile, 16);
+		dict.open();
+		assertEquals(1000, dict.size());
+		assertEquals("changed", dict.get("word0500"));
+		dict.clear();
+		dict.close();
+		dictFile.delete();
+	}
+}
@@ -0,0 +1,83 @@
+package dict;
+
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.TreeMap;
+
+import static org.junit.Assert.fail;
+
+public class ShardedDictionaryTest extends PersistentDictionaryTest {
+	@Override
+    PersistentDictionary getDictionary(File file) throws IOException {
+		return new ShardedDictionary(dictFile, 4, DictionaryFormat.TEXT);
+	}
+
+	/**
+	 * Opening a dictionary with another number of shards, or a plain dictionary file, keeps all the words.
+	 */
+	@Test
+	public void reshardTest() throws Exception {
+		TreeMap<String, String> expected = new TreeMap<String, String>();
+		String[] words = randomStrings(MAX_SIZE, MAX_LEN);
+		String[] defs = randomStrings(MAX_SIZE, MAX_LEN);
+		fillMap(expected, words, defs);
+
+		dictFile.delete();
+		InMemoryDictionary plain = new InMemoryDictionary(dictFile);
+		plain.open();
+		fillMap(plain, words, defs);
+		plain.close();
+
+		int[] layouts = { 4, 7, 2, 2 };
+		for (int numShards : layouts) {
+			PersistentDictionary dict = new ShardedDictionary(dictFile, numShards, DictionaryFormat.TEXT);
+			dict.open();
+			testEquality("Opened with " + numShards + " shards", expected, dict);
+			dict.close();
+		}
+		dictFile.delete();
+	}
+
+	/**
+	 * A close that fails before replacing the manifest leaves the dictionary in its previous layout.
+	 */
+	@Test
+	public void interruptedReshardTest() throws Exception {
+		TreeMap<String, String> expected = new TreeMap<String, String>();
+		String[] words = randomStrings(MAX_SIZE, MAX_LEN);
+		String[] defs = randomStrings(MAX_SIZE, MAX_LEN);
+		fillMap(expected, words, defs);
+
+		dictFile.delete();
+		PersistentDictionary dict = new ShardedDictionary(dictFile, 4, DictionaryFormat.TEXT);
+		dict.open();
+		fillMap(dict, words, defs);
+		dict.close();
+
+		// The new manifest can't be written: the new layout's shards are written, but not listed
+		File tmp = DictionaryFiles.sibling(dictFile, ".tmp");
+		tmp.mkdir();
+		dict = new ShardedDictionary(dictFile, 7, DictionaryFormat.TEXT);
+		dict.open();
+		try {
+			dict.close();
+			fail("The manifest was written");
+		} catch (IOException e) {
+			// Expected
+		}
+		tmp.delete();
+
+		dict = new ShardedDictionary(dictFile, 4, DictionaryFormat.TEXT);
+		dict.open();
+		testEquality("After an interrupted close", expected, dict);
+		dict.close();
+		dict = new ShardedDictionary(dictFile, 7, DictionaryFormat.TEXT);
+		dict.open();
+		testEquality("Resharded", expected, dict);
+		dict.close();
+		dictFile.delete();
+	}
+}
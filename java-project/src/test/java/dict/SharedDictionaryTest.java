@@ -0,0 +1,153 @@
+package dict;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test readers of a shared dictionary picking up versions published by a writer, in this process and in another.
+ */
+public class SharedDictionaryTest {
+	File dictFile;
+
+	@Before
+	public void setup() throws IOException {
+		dictFile = File.createTempFile("DictTest", ".shared");
+		dictFile.delete();
+	}
+
+	@After
+	public void tearDown() {
+		dictFile.delete();
+		DictionaryFiles.sibling(dictFile, ".lock").delete();
+	}
+
+	@Test
+	public void publishTest() throws Exception {
+		SharedDictionary.publish(version(1), dictFile);
+		SharedDictionary first = new SharedDictionary(dictFile);
+		SharedDictionary second = new SharedDictionary(dictFile);
+		first.open();
+		second.open();
+		assertEquals(1, first.generation());
+		assertEquals("definition 1", first.get("word42"));
+		assertEquals(1000, second.size());
+
+		SharedDictionary.publish(version(2), dictFile);
+		// The old version stays mapped until a refresh
+		assertEquals("definition 1", first.get("word42"));
+		assertTrue(first.refresh());
+		assertFalse(first.refresh());
+		assertEquals(2, first.generation());
+		assertEquals("definition 2", first.get("word42"));
+		assertEquals(2000, first.size());
+		assertEquals(1000, second.size());
+		first.close();
+		second.close();
+	}
+
+	@Test
+	public void refreshIntervalTest() throws Exception {
+		SharedDictionary.publish(version(1), dictFile);
+		SharedDictionary dict = new SharedDictionary(dictFile, 1);
+		dict.open();
+		SharedDictionary.publish(version(2), dictFile);
+		Thread.sleep(5);
+		// An access after the interval maps the new version
+		assertEquals("definition 2", dict.get("word1500"));
+		dict.close();
+	}
+
+	@Test
+	public void readOnlyTest() throws Exception {
+		SharedDictionary dict = new SharedDictionary(dictFile);
+		// Nothing published yet: an empty dictionary
+		dict.open();
+		assertEquals(0, dict.size());
+		assertNull(dict.get("word1"));
+		try {
+			dict.put("word1", "definition");
+			throw new AssertionError("put on a shared dictionary");
+		} catch (UnsupportedOperationException e) {
+			// Expected
+		}
+		dict.close();
+	}
+
+	/**
+	 * A writer in another process publishes while this process reads; every read sees a whole version.
+	 */
+	@Test
+	public void otherProcessTest() throws Exception {
+		SharedDictionary.publish(version(1), dictFile);
+		SharedDictionary dict = new SharedDictionary(dictFile, 1);
+		dict.open();
+		String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+		Process writer = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+				Publisher.class.getName(), dictFile.getPath()).inheritIO().start();
+		AtomicReference<String> torn = new AtomicReference<>();
+		List<Long> generations = new ArrayList<>();
+		while (writer.isAlive()) {
+			// Each read sees a whole version (a refresh may come between two reads)
+			String def = dict.get("word7");
+			int size = dict.size();
+			if (!def.matches("definition [1-5]") || size % 1000 != 0) {
+				torn.set(def + ", " + size + " words");
+			}
+			long generation = dict.generation();
+			if (generations.isEmpty() || generations.get(generations.size() - 1) != generation) {
+				generations.add(generation);
+			}
+		}
+		assertTrue(writer.waitFor(1, TimeUnit.MINUTES));
+		assertEquals(0, writer.exitValue());
+		assertNull(torn.get());
+		for (int i = 1; i < generations.size(); ++i) {
+			assertTrue(generations + " in order", generations.get(i - 1) < generations.get(i));
+		}
+		dict.refresh();
+		assertEquals(6, dict.generation());
+		assertEquals("definition 5", dict.get("word7"));
+		dict.close();
+	}
+
+	/**
+	 * Publishes versions 2 to 5 (generations 2 to 6) of the dictionary given as the argument.
+	 */
+	public static class Publisher {
+		public static void main(String[] args) throws Exception {
+			File dictFile = new File(args[0]);
+			for (int version = 2; version <= 5; version++) {
+				SharedDictionary.publish(version(version), dictFile);
+				Thread.sleep(50);
+			}
+			// A version with the same contents is still a new generation
+			SharedDictionary.publish(version(5), dictFile);
+		}
+	}
+
+	/**
+	 * 1000 words per version, defined by the version number.
+	 */
+	static TreeMap<String, String> version(int version) {
+		TreeMap<String, String> entries = new TreeMap<>();
+		for (int i = 0; i < 1000 * version; ++i) {
+			entries.put("word" + i, "definition " + version);
+		}
+		return entries;
+	}
+}
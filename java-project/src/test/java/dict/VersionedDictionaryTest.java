@@ -0,0 +1,114 @@
+package dict;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class VersionedDictionaryTest extends PersistentDictionaryTest {
+	@Override
+    PersistentDictionary getDictionary(File file) throws IOException {
+		return new VersionedDictionary(dictFile);
+	}
+
+	/**
+	 * A snapshot keeps the entries it was taken with, whatever changes after it.
+	 */
+	@Test
+	public void snapshotTest() throws Exception {
+		dictFile.delete();
+		VersionedDictionary dict = new VersionedDictionary(dictFile);
+		dict.open();
+		TreeMap<String, String> expected = new TreeMap<>();
+		for (int i = 0; i < 5000; ++i) {
+			String word = "w" + rnd.nextInt(3000);
+			expected.put(word, "def " + i);
+			dict.put(word, "def " + i);
+		}
+		DictionarySnapshot snapshot = dict.snapshot();
+		TreeMap<String, String> before = new TreeMap<>(expected);
+		// Changes after the snapshot, with enough removes to rebalance the tree
+		for (int i = 0; i < 5000; ++i) {
+			String word = "w" + rnd.nextInt(3000);
+			if (rnd.nextBoolean()) {
+				assertEquals(expected.remove(word), dict.remove(word));
+			} else {
+				assertEquals(expected.put(word, "new " + i), dict.put(word, "new " + i));
+			}
+		}
+		assertEquals(before.size(), snapshot.size());
+		assertEquals(before, scan(snapshot.range(null, null)));
+		assertEquals(before.subMap("w1", "w2"), scan(snapshot.range("w1", "w2")));
+		assertEquals(before.get("w17"), snapshot.get("w17"));
+		assertEquals(expected, scan(dict.range(null, null)));
+		assertEquals(expected.size(), dict.size());
+
+		dict.clear();
+		assertEquals(before.size(), snapshot.size());
+		assertNull(dict.snapshot().get("w17"));
+		dict.close();
+		dictFile.delete();
+	}
+
+	/**
+	 * A snapshot is iterated while another thread writes, and sees none of the writes.
+	 */
+	@Test
+	public void concurrentSnapshotTest() throws Exception {
+		dictFile.delete();
+		VersionedDictionary dict = new VersionedDictionary(dictFile);
+		dict.open();
+		for (int i = 0; i < 20000; ++i) {
+			dict.put(String.format("word%05d", i), "def " + i);
+		}
+		AtomicBoolean done = new AtomicBoolean();
+		Thread writer = new Thread(() -> {
+			int i = 0;
+			while (!done.get()) {
+				String word = String.format("word%05d", i++ % 20000);
+				dict.remove(word);
+				dict.put(word, "changed");
+			}
+		});
+		writer.start();
+		try {
+			for (int round = 0; round < 5; ++round) {
+				DictionarySnapshot snapshot = dict.snapshot();
+				int size = snapshot.size();
+				int count = 0;
+				Iterator<Map.Entry<String, String>> it = snapshot.range(null, null);
+				TreeMap<String, String> seen = new TreeMap<>();
+				while (it.hasNext()) {
+					Map.Entry<String, String> entry = it.next();
+					seen.put(entry.getKey(), entry.getValue());
+					count++;
+				}
+				assertEquals(size, count);
+				// Iterating again gives the same entries
+				assertEquals(seen, scan(snapshot.range(null, null)));
+			}
+		} finally {
+			done.set(true);
+			writer.join();
+		}
+		dict.close();
+		dictFile.delete();
+	}
+
+	private static TreeMap<String, String> scan(Iterator<Map.Entry<String, String>> it) {
+		TreeMap<String, String> entries = new TreeMap<>();
+		while (it.hasNext()) {
+			Map.Entry<String, String> entry = it.next();
+			entries.put(entry.getKey(), entry.getValue());
+		}
+		return entries;
+	}
+}
@@ -132,4 +132,79 @@ public class RandomAccessTest {
 
 		}
 	}
+
+	@Test
+	public void testSortBytesExternal() throws IOException {
+		// Budgets for a single run, for one merge, and for several merge passes
+		int[] budgets = { RandomAccess.DEFAULT_MEMORY_BUDGET, 16 << 10, RandomAccess.MIN_MEMORY_BUDGET };
+		for (int budget : budgets) {
+			File temp = File.createTempFile("sortBytes", "byt");
+			RandomAccessFile file = new RandomAccessFile(temp, "rw");
+
+			int len = 20000 + rnd.nextInt(1000);
+			byte[] origBytes = new byte[len];
+			rnd.nextBytes(origBytes);
+			file.write(origBytes);
+
+			RandomAccess.sortBytes(file, budget);
+
+			file.seek(0);
+			byte[] actualBytes = new byte[len];
+			file.readFully(actualBytes);
+			file.close();
+
+			// Sort as unsigned
+			int unsignedBytes[] = new int[origBytes.length];
+			for (int j = 0; j < origBytes.length; ++j) {
+				unsignedBytes[j] = ((int) origBytes[j]) & 0xff;
+			}
+			java.util.Arrays.sort(unsignedBytes);
+			byte sortedBytes[] = new byte[origBytes.length];
+			for (int j = 0; j < origBytes.length; ++j) {
+				sortedBytes[j] = (byte) unsignedBytes[j];
+			}
+
+			assertArrayEquals("External sort with a budget of " + budget + " failed", sortedBytes, actualBytes);
+			temp.delete();
+		}
+	}
+
+	@Test
+	public void testSortTriBytesExternal() throws IOException {
+		int[] budgets = { RandomAccess.DEFAULT_MEMORY_BUDGET, 16 << 10, RandomAccess.MIN_MEMORY_BUDGET };
+		for (int budget : budgets) {
+			File temp = File.createTempFile("sortTriBytes", "byt");
+			RandomAccessFile file = new RandomAccessFile(temp, "rw");
+
+			int len = 3 * (20000 + rnd.nextInt(1000));
+			byte[] origBytes = new byte[len];
+			rnd.nextBytes(origBytes);
+			file.write(origBytes);
+
+			RandomAccess.sortTriBytes(file, budget);
+
+			file.seek(0);
+			byte[] actualBytes = new byte[len];
+			file.readFully(actualBytes);
+			file.close();
+
+			// Sort as unsigned
+			int unsignedTris[] = new int[origBytes.length / 3];
+			for (int j = 0; j < unsignedTris.length; ++j) {
+				unsignedTris[j] = ((((int) origBytes[3*j]) & 0xff) << 16) |
+						((((int) origBytes[3*j+1]) & 0xff) << 8) |
+						((((int) origBytes[3*j+2]) & 0xff));
+			}
+			java.util.Arrays.sort(unsignedTris);
+			byte sortedBytes[] = new byte[origBytes.length];
+			for (int j = 0; j < unsignedTris.length; ++j) {
+				sortedBytes[3*j] = (byte) (unsignedTris[j] >>> 16);
+				sortedBytes[3*j+1] = (byte) (unsignedTris[j] >>> 8);
+				sortedBytes[3*j+2] = (byte) (unsignedTris[j]);
+			}
+
+			assertArrayEquals("External sort with a budget of " + budget + " failed", sortedBytes, actualBytes);
+			temp.delete();
+		}
+	}
 }